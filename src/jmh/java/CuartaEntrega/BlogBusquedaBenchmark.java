@@ -0,0 +1,117 @@
+package CuartaEntrega;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * BlogApp.IndiceBusqueda con 10k y 1M posts de texto sintético: un vocabulario de 20.000
+ * palabras con frecuencias de Zipf, títulos de 6 palabras y contenidos de 40.
+ *
+ * Consultas: un término raro, uno intermedio, dos términos frecuentes (recorren una parte
+ * grande del índice) y una mezcla con acentos. "comentar" mide la actualización incremental.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class BlogBusquedaBenchmark {
+
+    private static final int VOCABULARIO = 20_000;
+
+    @Param({"10000", "1000000"})
+    int posts;
+
+    BlogApp.IndiceBusqueda indice;
+    String[] palabras;
+    String raro, intermedio, frecuentes, conAcentos;
+    final AtomicLong siguienteComentario = new AtomicLong();
+
+    @Setup
+    public void preparar() {
+        Random aleatorio = new Random(42);
+        palabras = new String[VOCABULARIO];
+        for (int i = 0; i < VOCABULARIO; i++) {
+            palabras[i] = palabra(i);
+        }
+        // Distribución de Zipf (s = 1) por la inversa de la acumulada
+        double[] acumulada = new double[VOCABULARIO];
+        double suma = 0;
+        for (int i = 0; i < VOCABULARIO; i++) {
+            suma += 1.0 / (i + 1);
+            acumulada[i] = suma;
+        }
+        indice = new BlogApp.IndiceBusqueda();
+        StringBuilder titulo = new StringBuilder();
+        StringBuilder contenido = new StringBuilder();
+        for (long id = 1; id <= posts; id++) {
+            titulo.setLength(0);
+            contenido.setLength(0);
+            for (int w = 0; w < 6; w++) titulo.append(palabras[zipf(aleatorio, acumulada, suma)]).append(' ');
+            for (int w = 0; w < 40; w++) contenido.append(palabras[zipf(aleatorio, acumulada, suma)]).append(' ');
+            indice.crear(id, titulo.toString(), contenido.toString());
+        }
+        raro = palabras[VOCABULARIO - 7];
+        intermedio = palabras[500];
+        frecuentes = palabras[0] + " " + palabras[1];
+        conAcentos = palabras[5].replace('a', 'á').toUpperCase() + " " + palabras[40] + " " + palabras[2000];
+    }
+
+    private static int zipf(Random aleatorio, double[] acumulada, double suma) {
+        int i = java.util.Arrays.binarySearch(acumulada, aleatorio.nextDouble() * suma);
+        return Math.min(i < 0 ? -i - 1 : i, acumulada.length - 1);
+    }
+
+    /** Palabras pronunciables y distintas: base 20 con sílabas. */
+    private static String palabra(int n) {
+        String[] silabas = {"ca", "lo", "me", "ri", "tu", "sa", "ne", "po", "di", "gue",
+                            "ba", "fi", "jo", "lu", "ma", "ni", "pe", "ro", "si", "ta"};
+        StringBuilder sb = new StringBuilder("x");
+        do {
+            sb.append(silabas[n % silabas.length]);
+            n /= silabas.length;
+        } while (n > 0);
+        return sb.toString();
+    }
+
+    @Benchmark
+    public List<BlogApp.IndiceBusqueda.Coincidencia> terminoRaro() {
+        return indice.buscar(raro, 20);
+    }
+
+    @Benchmark
+    public List<BlogApp.IndiceBusqueda.Coincidencia> terminoIntermedio() {
+        return indice.buscar(intermedio, 20);
+    }
+
+    @Benchmark
+    public List<BlogApp.IndiceBusqueda.Coincidencia> terminosFrecuentes() {
+        return indice.buscar(frecuentes, 20);
+    }
+
+    @Benchmark
+    public List<BlogApp.IndiceBusqueda.Coincidencia> mezclaConAcentos() {
+        return indice.buscar(conAcentos, 20);
+    }
+
+    @Benchmark
+    public void comentar() {
+        long n = siguienteComentario.incrementAndGet();
+        indice.añadir(1 + n % posts, palabras[(int) (n % 300)] + " " + palabras[(int) (n % VOCABULARIO)]);
+    }
+}
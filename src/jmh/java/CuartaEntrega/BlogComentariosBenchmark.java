@@ -0,0 +1,148 @@
+package CuartaEntrega;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Prueba de estrés del registro de comentarios de un post muy popular: 15 hilos comentando
+ * a la vez mientras otro pagina con el cursor (limit=50) y otro pide siempre la última página.
+ *
+ * "registro" usa BlogApp.RegistroComentarios; "sincronizada" es la referencia de una
+ * ArrayList con Collections.synchronizedList (la lista anterior ni siquiera eso).
+ *
+ * Al final de cada iteración se comprueba el registro: ningún comentario perdido ni repetido
+ * y ninguna casilla vacía en el prefijo visible. Un fallo aborta el benchmark.
+ */
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlogComentariosBenchmark {
+
+    private static final int PAGINA = 50;
+
+    BlogApp.RegistroComentarios registro;
+    List<BlogApp.Comentario> sincronizada;
+    final AtomicLong ids = new AtomicLong();
+
+    @Setup(Level.Iteration)
+    public void preparar() {
+        registro = new BlogApp.RegistroComentarios();
+        sincronizada = Collections.synchronizedList(new ArrayList<>());
+        ids.set(0);
+    }
+
+    @TearDown(Level.Iteration)
+    public void comprobar() {
+        if (registro.tamaño() == 0) return; // iteración del otro grupo
+        List<BlogApp.Comentario> todos = registro.desde(0, Integer.MAX_VALUE);
+        long creados = ids.get();
+        if (todos.size() != creados || registro.tamaño() != creados) {
+            throw new IllegalStateException("Se crearon " + creados + " comentarios y el registro tiene "
+                    + todos.size() + " visibles y " + registro.tamaño() + " escritos");
+        }
+        BitSet vistos = new BitSet((int) creados);
+        for (BlogApp.Comentario c : todos) {
+            int id = (int) (c.id - 1);
+            if (vistos.get(id)) throw new IllegalStateException("Comentario repetido: " + c.id);
+            vistos.set(id);
+        }
+    }
+
+    /** Cursor propio de cada hilo lector. */
+    @State(Scope.Thread)
+    public static class Lector {
+        int cursor;
+
+        @Setup(Level.Iteration)
+        public void reiniciar() {
+            cursor = 0;
+        }
+    }
+
+    private BlogApp.Comentario nuevo() {
+        return new BlogApp.Comentario(ids.incrementAndGet(), "lector", "Me ha gustado mucho el artículo");
+    }
+
+    // --- Registro por trozos sin cerrojos ---
+
+    @Benchmark
+    @Group("registro")
+    @GroupThreads(15)
+    public int comentar() {
+        return registro.agregar(nuevo());
+    }
+
+    @Benchmark
+    @Group("registro")
+    @GroupThreads(1)
+    public int paginar(Lector lector) {
+        List<BlogApp.Comentario> pagina = registro.desde(lector.cursor, PAGINA);
+        for (BlogApp.Comentario c : pagina) {
+            if (c == null) throw new IllegalStateException("Casilla vacía en la posición " + lector.cursor);
+        }
+        lector.cursor += pagina.size();
+        return pagina.size();
+    }
+
+    @Benchmark
+    @Group("registro")
+    @GroupThreads(1)
+    public int ultimaPagina() {
+        int tamaño = registro.tamaño();
+        return registro.desde(Math.max(0, tamaño - PAGINA), PAGINA).size();
+    }
+
+    // --- Referencia: lista sincronizada ---
+
+    @Benchmark
+    @Group("sincronizada")
+    @GroupThreads(15)
+    public boolean comentarSincronizada() {
+        return sincronizada.add(nuevo());
+    }
+
+    @Benchmark
+    @Group("sincronizada")
+    @GroupThreads(1)
+    public int paginarSincronizada(Lector lector) {
+        List<BlogApp.Comentario> pagina;
+        synchronized (sincronizada) {
+            int hasta = Math.min(lector.cursor + PAGINA, sincronizada.size());
+            pagina = new ArrayList<>(sincronizada.subList(lector.cursor, hasta));
+        }
+        lector.cursor += pagina.size();
+        return pagina.size();
+    }
+
+    @Benchmark
+    @Group("sincronizada")
+    @GroupThreads(1)
+    public int ultimaPaginaSincronizada() {
+        synchronized (sincronizada) {
+            int tamaño = sincronizada.size();
+            return new ArrayList<>(sincronizada.subList(Math.max(0, tamaño - PAGINA), tamaño)).size();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package CuartaEntrega;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /posts completo (ObjectMapper, como ctx.json) frente a las proyecciones:
+ * ?vista=resumen y ?fields=id,titulo. 1000 posts de ~1,5 KB con 0-40 comentarios.
+ *
+ * La salida se descarta contando bytes. Al preparar se imprime el tamaño de cada respuesta
+ * en el cable (sin compresión), p. ej. "Bytes por respuesta: completo=..., resumen=...".
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlogProyeccionBenchmark {
+
+    @Param({"1000"})
+    int posts;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private List<BlogApp.Post> lista;
+
+    /** Salida que solo cuenta lo escrito. */
+    static final class Contador extends OutputStream {
+        long bytes;
+
+        @Override
+        public void write(int b) {
+            bytes++;
+        }
+
+        @Override
+        public void write(byte[] b, int desde, int longitud) {
+            bytes += longitud;
+        }
+    }
+
+    @Setup
+    public void preparar() {
+        Random aleatorio = new Random(42);
+        String parrafo = "Lorem ipsum dolor sit amet, la canción del año y el pingüino de la montaña. ";
+        lista = new ArrayList<>(posts);
+        long comentarios = 1;
+        for (long id = 1; id <= posts; id++) {
+            BlogApp.Post p = new BlogApp.Post("Título del post " + id, parrafo.repeat(20), "autor" + (id % 50));
+            p.id = id;
+            for (int c = aleatorio.nextInt(41); c > 0; c--) {
+                p.comentarios.agregar(new BlogApp.Comentario(comentarios++, "lector" + c, "Comentario de ejemplo número " + c));
+            }
+            lista.add(p);
+        }
+        try {
+            System.out.println("Bytes por respuesta: completo=" + completo() + ", resumen=" + resumen()
+                    + ", idYTitulo=" + idYTitulo() + ", todosLosCampos=" + todosLosCampos());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Benchmark
+    public long completo() throws IOException {
+        Contador salida = new Contador();
+        mapper.writeValue(salida, lista);
+        return salida.bytes;
+    }
+
+    @Benchmark
+    public long resumen() throws IOException {
+        Contador salida = new Contador();
+        BlogApp.Proyeccion.escribir(lista, BlogApp.Proyeccion.RESUMEN, salida);
+        return salida.bytes;
+    }
+
+    @Benchmark
+    public long idYTitulo() throws IOException {
+        Contador salida = new Contador();
+        BlogApp.Proyeccion.escribir(lista, BlogApp.Proyeccion.campos("id,titulo", null), salida);
+        return salida.bytes;
+    }
+
+    @Benchmark
+    public long todosLosCampos() throws IOException {
+        Contador salida = new Contador();
+        Set<BlogApp.Proyeccion.Campo> todos = BlogApp.Proyeccion.campos(
+                "id,titulo,contenido,autor,fechaPublicacion,comentarios", null);
+        BlogApp.Proyeccion.escribir(lista, todos, salida);
+        return salida.bytes;
+    }
+}
@@ -0,0 +1,119 @@
+package CuartaEntrega;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de un intervalo de /estadisticas/stream con 1.000 y 10.000 paneles conectados y
+ * 100k ventas registradas: "difundir" calcula las estadísticas una vez y entrega el mismo
+ * evento a todas las conexiones (salidas falsas que descartan los bytes), frente a
+ * "sondeo", donde cada panel pide /estadisticas y se calcula y serializa una vez por panel.
+ *
+ * "difundirConLentos" deja sin escribir la mitad de las conexiones: el evento nuevo
+ * sustituye al pendiente y la memoria por conexión no crece.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DifusorEstadisticasBenchmark {
+
+    private static final String[] PRODUCTOS = {
+        "Laptop", "Mouse", "Teclado", "Monitor", "Auriculares", "Webcam", "Impresora", "Router"
+    };
+
+    @Param({"1000", "10000"})
+    int paneles;
+
+    VentaApp.DifusorEstadisticas difusor;
+    VentaApp.DifusorEstadisticas difusorConLentos;
+    final ObjectMapper mapper = new ObjectMapper();
+
+    /** Salida no bloqueante que descarta lo escrito; "lista" = false simula un cliente lento. */
+    static final class Salida extends ServletOutputStream {
+        final boolean lista;
+
+        Salida(boolean lista) {
+            this.lista = lista;
+        }
+
+        @Override
+        public boolean isReady() {
+            return lista;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener listener) {
+        }
+
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int desde, int longitud) {
+        }
+    }
+
+    @Setup
+    public void preparar() {
+        Random aleatorio = new Random(42);
+        LocalDate inicio = LocalDate.of(2024, 1, 1);
+        if (VentaApp.VentaService.tabla.filas() == 0) {
+            for (int i = 0; i < 100_000; i++) {
+                VentaApp.Venta v = new VentaApp.Venta(PRODUCTOS[aleatorio.nextInt(PRODUCTOS.length)],
+                        1 + aleatorio.nextInt(5), 10 + aleatorio.nextInt(1000));
+                v.fecha = inicio.plusDays(aleatorio.nextInt(365)).toString();
+                VentaApp.VentaService.registrar(v);
+            }
+        }
+        // Intervalo de una hora: el reloj propio no interfiere, los ciclos los lanza el benchmark
+        difusor = new VentaApp.DifusorEstadisticas(3_600_000, 3_600_000,
+                () -> VentaApp.VentaService.calcularEstadisticas(null, null));
+        difusorConLentos = new VentaApp.DifusorEstadisticas(3_600_000, 3_600_000,
+                () -> VentaApp.VentaService.calcularEstadisticas(null, null));
+        for (int i = 0; i < paneles; i++) {
+            difusor.conectar(new Salida(true), new CompletableFuture<>());
+            difusorConLentos.conectar(new Salida(i % 2 == 0), new CompletableFuture<>());
+        }
+    }
+
+    @Benchmark
+    public void difundir() {
+        difusor.publicar();
+        difusor.difundir();
+    }
+
+    @Benchmark
+    public void difundirConLentos() {
+        difusorConLentos.publicar();
+        difusorConLentos.difundir();
+    }
+
+    @Benchmark
+    public void sondeo(Blackhole bh) throws Exception {
+        for (int i = 0; i < paneles; i++) {
+            bh.consume(mapper.writeValueAsBytes(VentaApp.VentaService.calcularEstadisticas(null, null)));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package CuartaEntrega;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import models.Producto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializar y volver a leer con Jackson los modelos de las apps
+ * (lo que hace Javalin en cada ctx.json / ctx.bodyAsClass).
+ * Tarea está en el paquete por defecto, así que se carga por reflexión.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonRoundTripBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private Producto producto;
+    private VentaApp.Venta venta;
+    private BlogApp.Post post;
+    private Class<?> claseTarea;
+    private Object tarea;
+
+    @Setup
+    public void preparar() throws ReflectiveOperationException {
+        producto = new Producto(1, "Laptop", 1200.0);
+        venta = new VentaApp.Venta("Laptop", 2, 1200.0);
+        venta.id = 1L;
+        post = new BlogApp.Post("Título del post", "Contenido del post con algo de texto ".repeat(10), "autor");
+        post.id = 1L;
+        for (long i = 1; i <= 10; i++) {
+            post.comentarios.agregar(new BlogApp.Comentario(i, "lector" + i, "Comentario número " + i));
+        }
+        claseTarea = Class.forName("GestionTareasApp$Tarea");
+        var constructor = claseTarea.getDeclaredConstructor(Long.class, String.class, String.class);
+        constructor.setAccessible(true);
+        tarea = constructor.newInstance(1L, "Comprar pan", "Ir a la panadería antes de las 8");
+    }
+
+    @Benchmark
+    public Object producto() throws IOException {
+        return mapper.readValue(mapper.writeValueAsBytes(producto), Producto.class);
+    }
+
+    @Benchmark
+    public Object venta() throws IOException {
+        return mapper.readValue(mapper.writeValueAsBytes(venta), VentaApp.Venta.class);
+    }
+
+    @Benchmark
+    public Object post() throws IOException {
+        return mapper.readValue(mapper.writeValueAsBytes(post), BlogApp.Post.class);
+    }
+
+    @Benchmark
+    public Object tarea() throws IOException {
+        return mapper.readValue(mapper.writeValueAsBytes(tarea), claseTarea);
+    }
+}
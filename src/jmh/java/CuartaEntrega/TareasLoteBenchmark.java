@@ -0,0 +1,124 @@
+package CuartaEntrega;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.javalin.Javalin;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Completar N tareas (como al cerrar un sprint) por HTTP sobre GestionTareasApp arrancada en
+ * un puerto libre: N peticiones PATCH /tareas/{id}/completar ("porElemento") frente a un solo
+ * POST /tareas/_batch con N operaciones, sin y con "atomica".
+ *
+ * Las tareas se crean una vez con un lote; completar una tarea ya completada hace el mismo
+ * trabajo y responde igual, así que cada invocación repite las mismas N operaciones.
+ * GestionTareasApp está en el paquete por defecto, así que se arranca por reflexión.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TareasLoteBenchmark {
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    @Param({"10", "100", "500"})
+    int operaciones;
+
+    private Javalin app;
+    private HttpClient cliente;
+    private String base;
+    private List<Long> ids;
+    private byte[] lote, loteAtomico;
+
+    @Setup
+    public void preparar() throws Exception {
+        app = (Javalin) Class.forName("GestionTareasApp").getMethod("crearApp").invoke(null);
+        app.start(0);
+        base = "http://localhost:" + app.port();
+        cliente = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+
+        List<Map<String, Object>> crear = new ArrayList<>();
+        for (int i = 0; i < operaciones; i++) {
+            crear.add(Map.of("op", "crear", "tarea", Map.of("titulo", "Tarea " + i, "descripcion", "Del sprint")));
+        }
+        JsonNode creadas = mapper.readTree(enviar(post(cuerpo(false, crear))).body());
+        ids = new ArrayList<>();
+        for (JsonNode r : creadas.get("resultados")) ids.add(r.get("id").asLong());
+
+        List<Map<String, Object>> completar = new ArrayList<>();
+        for (long id : ids) completar.add(Map.of("op", "completar", "id", id));
+        lote = cuerpo(false, completar);
+        loteAtomico = cuerpo(true, completar);
+    }
+
+    @TearDown
+    public void detener() {
+        app.stop();
+    }
+
+    private byte[] cuerpo(boolean atomica, List<Map<String, Object>> operaciones) throws IOException {
+        Map<String, Object> cuerpo = new LinkedHashMap<>();
+        cuerpo.put("atomica", atomica);
+        cuerpo.put("operaciones", operaciones);
+        return mapper.writeValueAsBytes(cuerpo);
+    }
+
+    private HttpRequest post(byte[] cuerpo) {
+        return HttpRequest.newBuilder(URI.create(base + "/tareas/_batch"))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofByteArray(cuerpo)).build();
+    }
+
+    private HttpResponse<byte[]> enviar(HttpRequest peticion) throws IOException, InterruptedException {
+        HttpResponse<byte[]> respuesta = cliente.send(peticion, HttpResponse.BodyHandlers.ofByteArray());
+        if (respuesta.statusCode() != 200) {
+            throw new IllegalStateException(peticion.uri() + " -> " + respuesta.statusCode());
+        }
+        return respuesta;
+    }
+
+    @Benchmark
+    public int porElemento() throws Exception {
+        int bytes = 0;
+        for (long id : ids) {
+            bytes += enviar(HttpRequest.newBuilder(URI.create(base + "/tareas/" + id + "/completar"))
+                .method("PATCH", HttpRequest.BodyPublishers.noBody()).build()).body().length;
+        }
+        return bytes;
+    }
+
+    @Benchmark
+    public int lote() throws Exception {
+        return enviar(post(lote)).body().length;
+    }
+
+    @Benchmark
+    public int loteAtomico() throws Exception {
+        return enviar(post(loteAtomico)).body().length;
+    }
+}
@@ -0,0 +1,100 @@
+package CuartaEntrega;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * GET /estadisticas/aprox (productos distintos, top 10 por unidades y mediana/p95/p99 del
+ * importe) con 1M ventas de 5.000 productos con frecuencias de Zipf repartidas en un año,
+ * frente al cálculo exacto con streams sobre las ventas del rango ("exacta*").
+ *
+ * Sin fechas se leen los bocetos globales; un mes funde 31 bocetos diarios y un año 366.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class VentaAproxBenchmark {
+
+    private static final int PRODUCTOS = 5000;
+
+    @Param({"1000000"})
+    int ventas;
+
+    @Setup
+    public void preparar() {
+        Random aleatorio = new Random(42);
+        double[] acumulada = new double[PRODUCTOS];
+        double suma = 0;
+        for (int i = 0; i < PRODUCTOS; i++) {
+            suma += 1.0 / Math.pow(i + 1, 1.1);
+            acumulada[i] = suma;
+        }
+        LocalDate inicio = LocalDate.of(2024, 1, 1);
+        String[] fechas = new String[366];
+        for (int d = 0; d < fechas.length; d++) fechas[d] = inicio.plusDays(d).toString();
+        for (int i = 0; i < ventas; i++) {
+            int p = Arrays.binarySearch(acumulada, aleatorio.nextDouble() * suma);
+            p = Math.min(p < 0 ? -p - 1 : p, PRODUCTOS - 1);
+            VentaApp.Venta v = new VentaApp.Venta("Producto-" + p, 1 + aleatorio.nextInt(5),
+                    Math.round(Math.exp(3 + aleatorio.nextGaussian()) * 100) / 100.0);
+            v.fecha = fechas[aleatorio.nextInt(fechas.length)];
+            VentaApp.VentaService.registrar(v);
+        }
+    }
+
+    @Benchmark
+    public VentaApp.EstadisticasAproximadas aproxTodas() {
+        return VentaApp.VentaService.calcularAproximadas(null, null, 10);
+    }
+
+    @Benchmark
+    public VentaApp.EstadisticasAproximadas aproxUnMes() {
+        return VentaApp.VentaService.calcularAproximadas("2024-03-01", "2024-03-31", 10);
+    }
+
+    @Benchmark
+    public VentaApp.EstadisticasAproximadas aproxAnual() {
+        return VentaApp.VentaService.calcularAproximadas("2024-01-01", "2024-12-31", 10);
+    }
+
+    @Benchmark
+    public Object[] exactaUnMes() {
+        return exacta(VentaApp.VentaService.obtenerRango("2024-03-01", "2024-03-31"));
+    }
+
+    @Benchmark
+    public Object[] exactaTodas() {
+        return exacta(VentaApp.VentaService.obtenerTodas());
+    }
+
+    private static Object[] exacta(List<VentaApp.Venta> lista) {
+        Map<String, Long> unidades = lista.stream().collect(Collectors.groupingBy(
+                v -> v.producto.toLowerCase(Locale.ROOT), Collectors.summingLong(v -> v.cantidad)));
+        List<Map.Entry<String, Long>> top = unidades.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed()).limit(10).collect(Collectors.toList());
+        double[] importes = lista.stream().mapToDouble(v -> v.total).sorted().toArray();
+        return new Object[] {unidades.size(), top, importes[importes.length / 2],
+                             importes[(int) (importes.length * 0.95)], importes[(int) (importes.length * 0.99)]};
+    }
+}
@@ -0,0 +1,108 @@
+package CuartaEntrega;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * VentaService.calcularEstadisticas con 10k, 1M y 10M ventas repartidas en un año.
+ * VentaService es estático: cada valor de "ventas" corre en su propio fork.
+ * "recorriendo*" es el cálculo original sobre todas las ventas, como referencia.
+ * "ventasUnMes" lista un mes con el índice temporal frente a filtrar todas las ventas;
+ * "porProducto" usa el índice de productos frente al filtro con equalsIgnoreCase.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class VentaEstadisticasBenchmark {
+
+    private static final String[] PRODUCTOS = {
+        "Laptop", "Mouse", "Teclado", "Monitor", "Auriculares", "Webcam", "Impresora", "Router"
+    };
+    private static final LocalDate INICIO = LocalDate.of(2024, 1, 1);
+
+    @Param({"10000", "1000000", "10000000"})
+    int ventas;
+
+    @Setup
+    public void preparar() {
+        Random aleatorio = new Random(42);
+        String[] fechas = new String[365];
+        for (int d = 0; d < fechas.length; d++) {
+            fechas[d] = INICIO.plusDays(d).toString();
+        }
+        for (int i = 0; i < ventas; i++) {
+            VentaApp.Venta v = new VentaApp.Venta(PRODUCTOS[aleatorio.nextInt(PRODUCTOS.length)],
+                    1 + aleatorio.nextInt(5), 10 + aleatorio.nextInt(1000));
+            v.fecha = fechas[aleatorio.nextInt(fechas.length)];
+            VentaApp.VentaService.registrar(v);
+        }
+    }
+
+    @Benchmark
+    public VentaApp.Estadisticas todas() {
+        return VentaApp.VentaService.calcularEstadisticas(null, null);
+    }
+
+    @Benchmark
+    public VentaApp.Estadisticas unMes() {
+        return VentaApp.VentaService.calcularEstadisticas("2024-03-01", "2024-03-31");
+    }
+
+    @Benchmark
+    public VentaApp.Estadisticas recorriendoTodas() {
+        return VentaApp.VentaService.calcularEstadisticasRecorriendo(null, null);
+    }
+
+    @Benchmark
+    public VentaApp.Estadisticas recorriendoUnMes() {
+        return VentaApp.VentaService.calcularEstadisticasRecorriendo("2024-03-01", "2024-03-31");
+    }
+
+    @Benchmark
+    public List<VentaApp.Venta> ventasUnMes() {
+        return VentaApp.VentaService.obtenerRango("2024-03-01", "2024-03-31");
+    }
+
+    @Benchmark
+    public long recorriendoVentasUnMes() {
+        return VentaApp.VentaService.obtenerTodas().stream()
+                .filter(v -> v.fecha.compareTo("2024-03-01") >= 0 && v.fecha.compareTo("2024-03-31") <= 0)
+                .count();
+    }
+
+    @Benchmark
+    public List<VentaApp.Venta> porProducto() {
+        return VentaApp.VentaService.paginaPorProducto("mouse", 0, 100);
+    }
+
+    @Benchmark
+    public VentaApp.TotalesProducto totalesProducto() {
+        return VentaApp.VentaService.totalesProducto("mouse");
+    }
+
+    @Benchmark
+    public List<VentaApp.Venta> recorriendoPorProducto() {
+        return VentaApp.VentaService.obtenerTodas().stream()
+                .filter(v -> v.producto.equalsIgnoreCase("mouse"))
+                .limit(100)
+                .collect(Collectors.toList());
+    }
+}
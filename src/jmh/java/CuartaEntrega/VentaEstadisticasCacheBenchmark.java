@@ -0,0 +1,107 @@
+package CuartaEntrega;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /estadisticas?fecha_inicio=&fecha_fin= con 1M ventas repartidas en dos años y los
+ * rangos fijos de un panel (meses, trimestres, año y dos años), con y sin
+ * VentaApp.CacheEstadisticas.
+ *
+ * "mezcla*" registra una venta en un día al azar cada 100 lecturas: la venta solo invalida
+ * los rangos que contienen su día y el resto sigue sirviéndose de la caché.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class VentaEstadisticasCacheBenchmark {
+
+    private static final String[] PRODUCTOS = {
+        "Laptop", "Mouse", "Teclado", "Monitor", "Auriculares", "Webcam", "Impresora", "Router"
+    };
+    private static final String[][] RANGOS = {
+        {"2025-12-01", "2025-12-31"}, {"2025-11-01", "2025-11-30"}, {"2025-10-01", "2025-12-31"},
+        {"2025-07-01", "2025-09-30"}, {"2025-01-01", "2025-12-31"}, {"2024-01-01", "2024-12-31"},
+        {"2024-01-01", "2025-12-31"}, {"2025-12-15", "2025-12-31"}
+    };
+    private static final int LECTURAS = 100;
+
+    @Param({"1000000"})
+    int ventas;
+
+    private final Random aleatorio = new Random(7);
+    private String[] fechas;
+    private int[][] dias;
+    private int siguiente;
+
+    @Setup
+    public void preparar() {
+        Random semilla = new Random(42);
+        LocalDate inicio = LocalDate.of(2024, 1, 1);
+        fechas = new String[731];
+        for (int d = 0; d < fechas.length; d++) fechas[d] = inicio.plusDays(d).toString();
+        for (int i = 0; i < ventas; i++) {
+            VentaApp.VentaService.registrar(venta(semilla));
+        }
+        dias = new int[RANGOS.length][];
+        for (int r = 0; r < RANGOS.length; r++) {
+            dias[r] = new int[] {VentaApp.VentaService.diaDe(RANGOS[r][0], "fecha_inicio"),
+                                 VentaApp.VentaService.diaDe(RANGOS[r][1], "fecha_fin")};
+        }
+    }
+
+    private VentaApp.Venta venta(Random r) {
+        VentaApp.Venta v = new VentaApp.Venta(PRODUCTOS[r.nextInt(PRODUCTOS.length)], 1 + r.nextInt(5), 10 + r.nextInt(1000));
+        v.fecha = fechas[r.nextInt(fechas.length)];
+        return v;
+    }
+
+    private int rango() {
+        siguiente = (siguiente + 1) % RANGOS.length;
+        return siguiente;
+    }
+
+    @Benchmark
+    public VentaApp.Estadisticas conCache() {
+        int r = rango();
+        return VentaApp.VentaService.calcularEstadisticas(RANGOS[r][0], RANGOS[r][1]);
+    }
+
+    @Benchmark
+    public VentaApp.Estadisticas sinCache() {
+        int r = rango();
+        return VentaApp.VentaService.calcularRango(dias[r][0], dias[r][1]);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LECTURAS)
+    public void mezclaConCache(Blackhole bh) {
+        VentaApp.VentaService.registrar(venta(aleatorio));
+        for (int i = 0; i < LECTURAS; i++) bh.consume(conCache());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LECTURAS)
+    public void mezclaSinCache(Blackhole bh) {
+        VentaApp.VentaService.registrar(venta(aleatorio));
+        for (int i = 0; i < LECTURAS; i++) bh.consume(sinCache());
+    }
+}
@@ -0,0 +1,144 @@
+package CuartaEntrega;
+
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filas por segundo al importar un archivo de 10M ventas (CSV y NDJSON) con
+ * VentaApp.ImportadorVentas, frente al camino anterior de una venta cada vez
+ * (ObjectMapper por registro + VentaService.registrar, sin contar HTTP).
+ *
+ * El archivo se genera al vuelo repitiendo un bloque de 10.000 filas, así que no ocupa
+ * memoria ni disco. VentaService es estático y 10M ventas ocupan ~1,5 GB: cada medida es
+ * una sola importación en su propio fork, sin iteraciones de calentamiento (el JIT se
+ * calienta dentro de la propia importación, como en una carga real).
+ * "*SoloLectura" descarta los lotes: mide el análisis y la validación.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@OperationsPerInvocation(VentaImportBenchmark.FILAS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1, time = 1)
+@Fork(value = 3, jvmArgsAppend = "-Xmx8g")
+public class VentaImportBenchmark {
+
+    static final int FILAS = 10_000_000;
+    private static final int FILAS_BLOQUE = 10_000;
+    private static final String[] PRODUCTOS = {
+        "Laptop", "Mouse", "Teclado", "Monitor", "Auriculares", "Webcam", "Impresora", "Router"
+    };
+
+    private final ObjectReader lectorVenta = new ObjectMapper().readerFor(VentaApp.Venta.class);
+    byte[] bloqueCsv, bloqueNdjson;
+
+    @Setup
+    public void preparar() {
+        Random aleatorio = new Random(42);
+        LocalDate inicio = LocalDate.of(2024, 1, 1);
+        StringBuilder csv = new StringBuilder();
+        StringBuilder ndjson = new StringBuilder();
+        for (int i = 0; i < FILAS_BLOQUE; i++) {
+            String producto = PRODUCTOS[aleatorio.nextInt(PRODUCTOS.length)];
+            int cantidad = 1 + aleatorio.nextInt(5);
+            String precio = (10 + aleatorio.nextInt(1000)) + "." + aleatorio.nextInt(100);
+            String fecha = inicio.plusDays(aleatorio.nextInt(730)).toString();
+            csv.append(producto).append(',').append(cantidad).append(',').append(precio).append(',').append(fecha).append('\n');
+            ndjson.append("{\"producto\":\"").append(producto).append("\",\"cantidad\":").append(cantidad)
+                  .append(",\"precioUnitario\":").append(precio).append(",\"fecha\":\"").append(fecha).append("\"}\n");
+        }
+        bloqueCsv = csv.toString().getBytes(StandardCharsets.UTF_8);
+        bloqueNdjson = ndjson.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Entrada de FILAS filas: el mismo bloque repetido. */
+    static final class Repetida extends InputStream {
+        private final byte[] bloque;
+        private long restantes;
+        private int posicion;
+
+        Repetida(byte[] bloque, long repeticiones) {
+            this.bloque = bloque;
+            this.restantes = repeticiones;
+        }
+
+        @Override
+        public int read() {
+            byte[] uno = new byte[1];
+            return read(uno, 0, 1) < 0 ? -1 : uno[0] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] destino, int desde, int longitud) {
+            if (restantes == 0) return -1;
+            int n = Math.min(longitud, bloque.length - posicion);
+            System.arraycopy(bloque, posicion, destino, desde, n);
+            posicion += n;
+            if (posicion == bloque.length) {
+                posicion = 0;
+                restantes--;
+            }
+            return n;
+        }
+    }
+
+    private InputStream archivo(byte[] bloque) {
+        return new Repetida(bloque, FILAS / FILAS_BLOQUE);
+    }
+
+    @Benchmark
+    public VentaApp.ResultadoImportacion csv() throws IOException {
+        return new VentaApp.ImportadorVentas(VentaApp.VentaService::registrarLote)
+            .importar(archivo(bloqueCsv), VentaApp.ImportadorVentas.Formato.csv);
+    }
+
+    @Benchmark
+    public VentaApp.ResultadoImportacion ndjson() throws IOException {
+        return new VentaApp.ImportadorVentas(VentaApp.VentaService::registrarLote)
+            .importar(archivo(bloqueNdjson), VentaApp.ImportadorVentas.Formato.ndjson);
+    }
+
+    @Benchmark
+    public VentaApp.ResultadoImportacion csvSoloLectura() throws IOException {
+        return new VentaApp.ImportadorVentas(lote -> { })
+            .importar(archivo(bloqueCsv), VentaApp.ImportadorVentas.Formato.csv);
+    }
+
+    @Benchmark
+    public VentaApp.ResultadoImportacion ndjsonSoloLectura() throws IOException {
+        return new VentaApp.ImportadorVentas(lote -> { })
+            .importar(archivo(bloqueNdjson), VentaApp.ImportadorVentas.Formato.ndjson);
+    }
+
+    @Benchmark
+    public long ndjsonUnoAUno() throws IOException {
+        BufferedReader lector = new BufferedReader(new InputStreamReader(archivo(bloqueNdjson), StandardCharsets.UTF_8), 1 << 16);
+        long registradas = 0;
+        String linea;
+        while ((linea = lector.readLine()) != null) {
+            VentaApp.VentaService.registrar(lectorVenta.readValue(linea));
+            registradas++;
+        }
+        return registradas;
+    }
+}
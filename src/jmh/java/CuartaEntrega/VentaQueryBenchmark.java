@@ -0,0 +1,111 @@
+package CuartaEntrega;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.DoubleSummaryStatistics;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * GET /ventas/query sobre VentaApp.TablaVentas con 1M y 10M ventas repartidas en dos años,
+ * frente a la misma agregación con streams sobre la lista de objetos Venta ("objetos*").
+ *
+ * La tabla se usa directamente (sin VentaService) para no duplicar en memoria los índices.
+ * Las consultas paralelas escalan con los núcleos del pool común de fork-join: con un solo
+ * núcleo la diferencia es solo la del formato columnar.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class VentaQueryBenchmark {
+
+    private static final String[] PRODUCTOS = {
+        "Laptop", "Mouse", "Teclado", "Monitor", "Auriculares", "Webcam", "Impresora", "Router"
+    };
+    private static final LocalDate INICIO = LocalDate.of(2024, 1, 1);
+
+    @Param({"1000000", "10000000"})
+    int ventas;
+
+    VentaApp.TablaVentas tabla;
+    List<VentaApp.Venta> lista;
+    VentaApp.Consulta porMes, productosDosTrimestres, diasUnTrimestre;
+
+    @Setup
+    public void preparar() {
+        Random aleatorio = new Random(42);
+        String[] fechas = new String[730];
+        for (int d = 0; d < fechas.length; d++) {
+            fechas[d] = INICIO.plusDays(d).toString();
+        }
+        tabla = new VentaApp.TablaVentas();
+        lista = new ArrayList<>(ventas);
+        for (int i = 0; i < ventas; i++) {
+            // Llegan casi en orden de fecha, como en producción
+            int d = Math.min(fechas.length - 1, (int) ((long) i * fechas.length / ventas) + aleatorio.nextInt(3));
+            VentaApp.Venta v = new VentaApp.Venta(PRODUCTOS[aleatorio.nextInt(PRODUCTOS.length)],
+                    1 + aleatorio.nextInt(5), 10 + aleatorio.nextInt(1000));
+            v.fecha = fechas[d];
+            v.dia = (int) INICIO.toEpochDay() + d;
+            tabla.agregar(v);
+            lista.add(v);
+        }
+        porMes = VentaApp.Consulta.desdeParametros("mes", null, null, null, null, null);
+        productosDosTrimestres = VentaApp.Consulta.desdeParametros("producto", null, "suma,cuenta",
+                "2024-01-01..2024-03-31,2025-01-01..2025-03-31", null, null);
+        productosDosTrimestres.top = 3;
+        diasUnTrimestre = VentaApp.Consulta.desdeParametros("dia", "cantidad", null, "2024-04-01..2024-06-30", null, null);
+    }
+
+    @Benchmark
+    public VentaApp.ResultadoConsulta columnasPorMes() {
+        return tabla.consultar(porMes);
+    }
+
+    @Benchmark
+    public VentaApp.ResultadoConsulta columnasProductosDosTrimestres() {
+        return tabla.consultar(productosDosTrimestres);
+    }
+
+    @Benchmark
+    public VentaApp.ResultadoConsulta columnasDiasUnTrimestre() {
+        return tabla.consultar(diasUnTrimestre);
+    }
+
+    @Benchmark
+    public Map<String, DoubleSummaryStatistics> objetosPorMes() {
+        return lista.parallelStream()
+            .collect(Collectors.groupingByConcurrent(v -> v.fecha.substring(0, 7),
+                Collectors.summarizingDouble(v -> v.total)));
+    }
+
+    @Benchmark
+    public List<Map<String, DoubleSummaryStatistics>> objetosProductosDosTrimestres() {
+        List<Map<String, DoubleSummaryStatistics>> periodos = new ArrayList<>();
+        for (String[] p : new String[][] {{"2024-01-01", "2024-03-31"}, {"2025-01-01", "2025-03-31"}}) {
+            periodos.add(lista.parallelStream()
+                .filter(v -> v.fecha.compareTo(p[0]) >= 0 && v.fecha.compareTo(p[1]) <= 0)
+                .collect(Collectors.groupingByConcurrent(v -> v.producto,
+                    Collectors.summarizingDouble(v -> v.total))));
+        }
+        return periodos;
+    }
+}
@@ -0,0 +1,63 @@
+package benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lanzador de los benchmarks JMH con resultados en JSON (target/jmh/*.json)
+ * para poder compararlos entre commits.
+ *
+ * Uso:
+ *   mvn -P benchmarks compile exec:exec
+ *   mvn -P benchmarks compile exec:exec -Dexec.args="-classpath %classpath benchmarks.EjecutarBenchmarks Venta"
+ *
+ * El primer argumento opcional es una expresión regular sobre los nombres de benchmark.
+ * Los benchmarks de ProductoService se repiten con 1, 2, 4... hasta N hilos (N = núcleos);
+ * el resto usa los hilos declarados en cada clase.
+ */
+public class EjecutarBenchmarks {
+
+    private static final String CONCURRENTES = "services.ProductoServiceBenchmark";
+
+    public static void main(String[] args) throws RunnerException {
+        String filtro = args.length > 0 ? args[0] : ".*";
+        File directorio = new File("target/jmh");
+        directorio.mkdirs();
+
+        // 1. Benchmarks con barrido de hilos
+        if (CONCURRENTES.matches(".*" + filtro + ".*")) {
+            for (int hilos : barridoHilos(Runtime.getRuntime().availableProcessors())) {
+                Options opciones = new OptionsBuilder()
+                        .include(CONCURRENTES + "\\.")
+                        .threads(hilos)
+                        .resultFormat(ResultFormatType.JSON)
+                        .result(new File(directorio, "ProductoServiceBenchmark-t" + hilos + ".json").getPath())
+                        .build();
+                new Runner(opciones).run();
+            }
+        }
+
+        // 2. Resto de benchmarks
+        Options opciones = new OptionsBuilder()
+                .include(filtro)
+                .exclude(CONCURRENTES + "\\.")
+                .resultFormat(ResultFormatType.JSON)
+                .result(new File(directorio, "resultados.json").getPath())
+                .build();
+        new Runner(opciones).run();
+    }
+
+    private static List<Integer> barridoHilos(int maximo) {
+        List<Integer> hilos = new ArrayList<>();
+        for (int n = 1; n < maximo; n *= 2) hilos.add(n);
+        hilos.add(maximo);
+        return hilos;
+    }
+}
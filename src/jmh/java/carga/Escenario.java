@@ -0,0 +1,359 @@
+package carga;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import controllers.ProductoController;
+import io.javalin.Javalin;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDate;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Una aplicación bajo prueba: cómo crearla, cómo sembrar datos y qué mezcla de rutas lanzar.
+ */
+class Escenario {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final String[] PRODUCTOS = {
+        "Laptop", "Mouse", "Teclado", "Monitor", "Auriculares", "Webcam", "Impresora", "Router"
+    };
+
+    /**
+     * Una ruta de la mezcla. "peticion" construye la petición para una sesión;
+     * "respuesta" (opcional) extrae datos de la respuesta, p. ej. el ID creado.
+     */
+    static class Operacion {
+        final String nombre;
+        int peso;
+        final Function<Sesion, HttpRequest> peticion;
+        final BiConsumer<Sesion, HttpResponse<byte[]>> respuesta;
+
+        Operacion(String nombre, int peso, Function<Sesion, HttpRequest> peticion) {
+            this(nombre, peso, peticion, null);
+        }
+
+        Operacion(String nombre, int peso, Function<Sesion, HttpRequest> peticion,
+                  BiConsumer<Sesion, HttpResponse<byte[]>> respuesta) {
+            this.nombre = nombre;
+            this.peso = peso;
+            this.peticion = peticion;
+            this.respuesta = respuesta;
+        }
+    }
+
+    /**
+     * Estado de un hilo de carga: URL base, IDs sembrados (compartidos, solo lectura),
+     * IDs creados por el propio hilo y tokens de sesión.
+     */
+    static class Sesion {
+        final String base;
+        final Escenario escenario;
+        final ArrayDeque<Long> creados = new ArrayDeque<>();
+
+        Sesion(String base, Escenario escenario) {
+            this.base = base;
+            this.escenario = escenario;
+        }
+
+        long idSemilla() {
+            List<Long> ids = escenario.semilla;
+            return ids.get(ThreadLocalRandom.current().nextInt(ids.size()));
+        }
+
+        String token() {
+            List<String> tokens = escenario.tokens;
+            return tokens.get(ThreadLocalRandom.current().nextInt(tokens.size()));
+        }
+
+        HttpRequest.Builder get(String ruta) {
+            return HttpRequest.newBuilder(URI.create(base + ruta)).GET();
+        }
+
+        HttpRequest.Builder conCuerpo(String metodo, String ruta, Object cuerpo) {
+            try {
+                return HttpRequest.newBuilder(URI.create(base + ruta))
+                        .header("Content-Type", "application/json")
+                        .method(metodo, HttpRequest.BodyPublishers.ofByteArray(mapper.writeValueAsBytes(cuerpo)));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void guardarCreado(HttpResponse<byte[]> r) {
+            if (r.statusCode() == 201 && creados.size() < 10_000) {
+                Long id = leerId(r.body());
+                if (id != null) creados.add(id);
+            }
+        }
+    }
+
+    final String nombre;
+    private final Supplier<Javalin> crear;
+    private final BiConsumer<Escenario, Sesion> siembra;
+    final Map<String, Operacion> operaciones = new LinkedHashMap<>();
+    final List<Long> semilla = new ArrayList<>();
+    final List<String> tokens = new ArrayList<>();
+
+    // Solo durante la siembra
+    private HttpClient cliente;
+    private int cantidadSemilla;
+
+    private Escenario(String nombre, Supplier<Javalin> crear, BiConsumer<Escenario, Sesion> siembra) {
+        this.nombre = nombre;
+        this.crear = crear;
+        this.siembra = siembra;
+    }
+
+    private Escenario operacion(Operacion op) {
+        operaciones.put(op.nombre, op);
+        return this;
+    }
+
+    Javalin crearApp() {
+        return crear.get();
+    }
+
+    void sembrar(HttpClient cliente, String base, int cantidad) {
+        Sesion sesion = new Sesion(base, this);
+        this.cliente = cliente;
+        this.cantidadSemilla = cantidad;
+        siembra.accept(this, sesion);
+    }
+
+    /**
+     * Sustituye los pesos por los de "--mezcla=obtener:60,crear:40". Las rutas no nombradas quedan a 0.
+     */
+    void aplicarMezcla(String mezcla) {
+        if (mezcla == null) return;
+        operaciones.values().forEach(op -> op.peso = 0);
+        for (String parte : mezcla.split(",")) {
+            String[] kv = parte.split(":");
+            Operacion op = operaciones.get(kv[0].trim());
+            if (op == null || kv.length != 2) {
+                throw new IllegalArgumentException("Operación desconocida en la mezcla: " + parte
+                        + " (disponibles: " + operaciones.keySet() + ")");
+            }
+            op.peso = Integer.parseInt(kv[1].trim());
+        }
+    }
+
+    // --- Siembra ---
+
+    private HttpResponse<byte[]> enviar(HttpRequest peticion) {
+        try {
+            return cliente.send(peticion, HttpResponse.BodyHandlers.ofByteArray());
+        } catch (IOException e) {
+            throw new IllegalStateException("Fallo al sembrar datos en " + nombre, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void sembrarPost(Sesion s, String ruta, Function<Integer, Object> cuerpo) {
+        for (int i = 0; i < cantidadSemilla; i++) {
+            Long id = leerId(enviar(s.conCuerpo("POST", ruta, cuerpo.apply(i)).build()).body());
+            if (id != null) semilla.add(id);
+        }
+    }
+
+    private static Long leerId(byte[] cuerpo) {
+        try {
+            JsonNode id = mapper.readTree(cuerpo).get("id");
+            return id != null && id.canConvertToLong() ? id.asLong() : null;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // --- Cuerpos de prueba ---
+
+    private static Map<String, Object> producto(int i) {
+        return Map.of("nombre", "Producto " + i, "precio", 1 + ThreadLocalRandom.current().nextInt(1000));
+    }
+
+    private static Map<String, Object> venta(int i) {
+        ThreadLocalRandom r = ThreadLocalRandom.current();
+        return Map.of("producto", PRODUCTOS[r.nextInt(PRODUCTOS.length)],
+                "cantidad", 1 + r.nextInt(5),
+                "precioUnitario", 10 + r.nextInt(1000),
+                "fecha", LocalDate.of(2024, 1, 1).plusDays(r.nextInt(365)).toString());
+    }
+
+    private static Map<String, Object> post(int i) {
+        return Map.of("titulo", "Post " + i, "contenido", "Contenido del post número " + i, "autor", "autor" + (i % 20));
+    }
+
+    private static Map<String, Object> tarea(int i) {
+        return Map.of("titulo", "Tarea " + i, "descripcion", "Descripción de la tarea " + i);
+    }
+
+    /** Toma un ID creado por este hilo o, si no hay, uno sembrado. */
+    private static long idPropio(Sesion s) {
+        Long id = s.creados.poll();
+        return id != null ? id : s.idSemilla();
+    }
+
+    // --- Escenarios ---
+
+    static List<String> nombres() {
+        return List.of("ejemplo5", "catalogo", "ventas", "blog", "tareas", "auth");
+    }
+
+    static Escenario crear(String nombre) {
+        switch (nombre) {
+            case "ejemplo5": return ejemplo5();
+            case "catalogo": return catalogo();
+            case "ventas": return ventas();
+            case "blog": return blog();
+            case "tareas": return tareas();
+            case "auth": return autenticacion();
+            default:
+                throw new IllegalArgumentException("Aplicación desconocida: " + nombre + " (disponibles: " + nombres() + ")");
+        }
+    }
+
+    /**
+     * Las clases del paquete por defecto no se pueden importar desde un paquete con nombre.
+     */
+    private static Javalin porReflexion(String clase) {
+        try {
+            return (Javalin) Class.forName(clase).getMethod("crearApp").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("No se pudo crear " + clase, e);
+        }
+    }
+
+    private static Escenario ejemplo5() {
+        AtomicLong contador = new AtomicLong();
+        return new Escenario("ejemplo5", () -> porReflexion("MainEjemplo5Javalin"),
+                (e, s) -> e.sembrarPost(s, "/api/productos", Escenario::producto))
+            .operacion(new Operacion("obtener", 60, s -> s.get("/api/productos/" + s.idSemilla()).build()))
+            .operacion(new Operacion("listar", 5, s -> s.get("/api/productos").build()))
+            .operacion(new Operacion("crear", 25,
+                    s -> s.conCuerpo("POST", "/api/productos", producto((int) contador.incrementAndGet())).build(),
+                    Sesion::guardarCreado))
+            .operacion(new Operacion("eliminar", 10, s -> {
+                Long id = s.creados.poll();
+                return id != null
+                        ? HttpRequest.newBuilder(URI.create(s.base + "/api/productos/" + id)).DELETE().build()
+                        : s.get("/api/productos/" + s.idSemilla()).build();
+            }));
+    }
+
+    private static Escenario catalogo() {
+        AtomicLong contador = new AtomicLong();
+        return new Escenario("catalogo", () -> {
+                Javalin app = Javalin.create();
+                ProductoController.registrarRutas(app);
+                return app;
+            }, (e, s) -> e.sembrarPost(s, "/api/productos", Escenario::producto))
+            .operacion(new Operacion("obtener", 50, s -> s.get("/api/productos/" + s.idSemilla()).build()))
+            .operacion(new Operacion("pagina", 10,
+                    s -> s.get("/api/productos?limit=100&after=" + s.idSemilla()).build()))
+            .operacion(new Operacion("buscar", 10, s -> {
+                int min = ThreadLocalRandom.current().nextInt(990);
+                return s.get("/api/productos?precioMin=" + min + "&precioMax=" + (min + 10) + "&limit=50").build();
+            }))
+            .operacion(new Operacion("crear", 20,
+                    s -> s.conCuerpo("POST", "/api/productos", producto((int) contador.incrementAndGet())).build(),
+                    Sesion::guardarCreado))
+            .operacion(new Operacion("actualizar", 10, s -> {
+                long id = s.idSemilla();
+                return s.conCuerpo("PUT", "/api/productos/" + id, producto((int) id)).build();
+            }));
+    }
+
+    private static Escenario ventas() {
+        return new Escenario("ventas", CuartaEntrega.VentaApp::crearApp,
+                (e, s) -> e.sembrarPost(s, "/ventas", Escenario::venta))
+            .operacion(new Operacion("obtener", 40, s -> s.get("/ventas/" + s.idSemilla()).build()))
+            .operacion(new Operacion("crear", 40, s -> s.conCuerpo("POST", "/ventas", venta(0)).build()))
+            .operacion(new Operacion("estadisticas", 15, s -> s.get("/estadisticas").build()))
+            .operacion(new Operacion("estadisticasMes", 5,
+                    s -> s.get("/estadisticas?fecha_inicio=2024-03-01&fecha_fin=2024-03-31").build()))
+            .operacion(new Operacion("porProducto", 0, s -> s.get("/ventas?producto=Mouse").build()));
+    }
+
+    private static Escenario blog() {
+        AtomicLong contador = new AtomicLong();
+        return new Escenario("blog", CuartaEntrega.BlogApp::crearApp, (e, s) -> {
+                e.sembrarPost(s, "/posts", Escenario::post);
+                for (long id : e.semilla) {
+                    for (int c = 0; c < 5; c++) {
+                        e.enviar(s.conCuerpo("POST", "/posts/" + id + "/comentarios",
+                                Map.of("autor", "lector" + c, "contenido", "Comentario " + c)).build());
+                    }
+                }
+            })
+            .operacion(new Operacion("obtener", 40, s -> s.get("/posts/" + s.idSemilla()).build()))
+            .operacion(new Operacion("comentarios", 20, s -> s.get("/posts/" + s.idSemilla() + "/comentarios").build()))
+            .operacion(new Operacion("comentar", 20, s -> s.conCuerpo("POST", "/posts/" + s.idSemilla() + "/comentarios",
+                    Map.of("autor", "lector", "contenido", "Comentario de carga")).build()))
+            .operacion(new Operacion("crear", 15,
+                    s -> s.conCuerpo("POST", "/posts", post((int) contador.incrementAndGet())).build()))
+            .operacion(new Operacion("listar", 5, s -> s.get("/posts").build()))
+            .operacion(new Operacion("resumen", 0, s -> s.get("/posts?vista=resumen").build()));
+    }
+
+    private static Escenario tareas() {
+        AtomicLong contador = new AtomicLong();
+        return new Escenario("tareas", () -> porReflexion("GestionTareasApp"),
+                (e, s) -> e.sembrarPost(s, "/tareas", Escenario::tarea))
+            .operacion(new Operacion("obtener", 40, s -> s.get("/tareas/" + s.idSemilla()).build()))
+            .operacion(new Operacion("listar", 10, s -> s.get("/tareas").build()))
+            .operacion(new Operacion("crear", 25,
+                    s -> s.conCuerpo("POST", "/tareas", tarea((int) contador.incrementAndGet())).build(),
+                    Sesion::guardarCreado))
+            .operacion(new Operacion("completar", 15, s -> HttpRequest.newBuilder(
+                    URI.create(s.base + "/tareas/" + idPropio(s) + "/completar"))
+                    .method("PATCH", HttpRequest.BodyPublishers.noBody()).build()))
+            .operacion(new Operacion("actualizar", 10, s -> {
+                long id = s.idSemilla();
+                return s.conCuerpo("PUT", "/tareas/" + id, tarea((int) id)).build();
+            }))
+            .operacion(new Operacion("pendientes", 0, s -> s.get("/tareas?completada=false&limit=50").build()))
+            .operacion(new Operacion("resumen", 0, s -> s.get("/tareas/resumen").build()));
+    }
+
+    private static Escenario autenticacion() {
+        AtomicLong contador = new AtomicLong();
+        return new Escenario("auth", CuartaEntrega.AutenticacionApp::crearApp, (e, s) -> {
+                for (int i = 0; i < e.cantidadSemilla; i++) {
+                    Map<String, Object> credenciales = Map.of("username", "usuario" + i, "password", "clave" + i);
+                    e.enviar(s.conCuerpo("POST", "/auth/registrar",
+                            Map.of("username", "usuario" + i, "password", "clave" + i, "email", "u" + i + "@ejemplo.com")).build());
+                    byte[] cuerpo = e.enviar(s.conCuerpo("POST", "/auth/login", credenciales).build()).body();
+                    try {
+                        e.tokens.add(mapper.readTree(cuerpo).get("token").asText());
+                    } catch (IOException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                    e.semilla.add((long) i);
+                }
+            })
+            .operacion(new Operacion("perfil", 70, s -> s.get("/perfil").header("Authorization", s.token()).build()))
+            .operacion(new Operacion("login", 20, s -> {
+                long i = s.idSemilla();
+                return s.conCuerpo("POST", "/auth/login", Map.of("username", "usuario" + i, "password", "clave" + i)).build();
+            }))
+            .operacion(new Operacion("registrar", 10, s -> {
+                long n = contador.incrementAndGet();
+                return s.conCuerpo("POST", "/auth/registrar",
+                        Map.of("username", "carga" + n, "password", "clave", "email", "c" + n + "@ejemplo.com")).build();
+            }));
+    }
+}
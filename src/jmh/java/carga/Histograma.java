@@ -0,0 +1,82 @@
+package carga;
+
+/**
+ * Histograma de latencias log-lineal (estilo HdrHistogram) con error relativo &lt; 2%.
+ * Cada hilo de carga usa los suyos y se combinan al final, así que no hay sincronización.
+ * Los valores están en nanosegundos.
+ */
+class Histograma {
+    private static final int BITS_SUB = 6;
+    private static final int SUB = 1 << BITS_SUB;
+    private static final int MITAD = SUB / 2;
+    // Hasta ~73 minutos (2^42 ns); los valores mayores se acumulan en el último cubo
+    private static final int MAX_BITS = 42;
+    private static final int CUBOS = SUB + (MAX_BITS - BITS_SUB + 1) * MITAD;
+
+    private final long[] cuentas = new long[CUBOS];
+    private long total;
+    private long maximo;
+    private double suma;
+
+    void registrar(long valor) {
+        if (valor < 0) valor = 0;
+        cuentas[indice(valor)]++;
+        total++;
+        suma += valor;
+        if (valor > maximo) maximo = valor;
+    }
+
+    /**
+     * Corrección de coordinated omission para carga en bucle cerrado: una respuesta que tardó
+     * más que el intervalo esperado también retrasó las peticiones que se habrían enviado
+     * mientras tanto, así que se registran con latencias decrecientes.
+     */
+    void registrarCorregido(long valor, long intervaloEsperado) {
+        registrar(valor);
+        if (intervaloEsperado <= 0) return;
+        for (long faltante = valor - intervaloEsperado; faltante >= intervaloEsperado; faltante -= intervaloEsperado) {
+            registrar(faltante);
+        }
+    }
+
+    void sumar(Histograma otro) {
+        for (int i = 0; i < CUBOS; i++) cuentas[i] += otro.cuentas[i];
+        total += otro.total;
+        suma += otro.suma;
+        if (otro.maximo > maximo) maximo = otro.maximo;
+    }
+
+    long total() { return total; }
+
+    long maximo() { return maximo; }
+
+    double media() { return total == 0 ? 0 : suma / total; }
+
+    /** Percentil q (0..100) como límite superior del cubo que lo contiene. */
+    long percentil(double q) {
+        if (total == 0) return 0;
+        long objetivo = Math.max(1, (long) Math.ceil(q / 100.0 * total));
+        long acumulado = 0;
+        for (int i = 0; i < CUBOS; i++) {
+            acumulado += cuentas[i];
+            if (acumulado >= objetivo) return Math.min(limiteSuperior(i), maximo);
+        }
+        return maximo;
+    }
+
+    private static int indice(long valor) {
+        if (valor < SUB) return (int) valor;
+        int bit = 63 - Long.numberOfLeadingZeros(valor);
+        if (bit > MAX_BITS) return CUBOS - 1;
+        int desplazamiento = bit - BITS_SUB + 1;
+        int mantisa = (int) (valor >>> desplazamiento);
+        return SUB + (desplazamiento - 1) * MITAD + (mantisa - MITAD);
+    }
+
+    private static long limiteSuperior(int indice) {
+        if (indice < SUB) return indice;
+        int desplazamiento = (indice - SUB) / MITAD + 1;
+        long mantisa = (indice - SUB) % MITAD + MITAD;
+        return ((mantisa + 1) << desplazamiento) - 1;
+    }
+}
@@ -0,0 +1,303 @@
+package carga;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.javalin.Javalin;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Generador de carga HTTP en proceso: arranca cada aplicación en un puerto efímero de localhost,
+ * siembra datos y lanza una mezcla ponderada de sus rutas.
+ *
+ * Modos:
+ *  - cerrado: cada conexión envía la siguiente petición al recibir la respuesta anterior.
+ *    Las latencias se corrigen (coordinated omission) con el intervalo esperado, que por
+ *    defecto es la latencia media observada durante el calentamiento.
+ *  - abierto: tasa constante; cada conexión tiene su calendario de envíos (como wrk2) y la
+ *    latencia se mide desde el instante programado, no desde el envío real, así que los
+ *    retrasos del servidor se cuentan aunque frenen al cliente.
+ *
+ * Uso:
+ *   mvn -P benchmarks compile exec:exec -Dexec.args="-classpath %classpath carga.PruebaCarga
+ *       --app=ventas --modo=abierto --tasa=2000 --conexiones=32 --duracion=30"
+ *
+ * Opciones: --app (ejemplo5|catalogo|ventas|blog|tareas|auth|todas), --modo (cerrado|abierto),
+ * --conexiones, --tasa (peticiones/s, modo abierto), --duracion y --calentamiento (segundos),
+ * --semilla (entidades sembradas), --mezcla=op:peso,... e --intervalo-esperado-us (modo cerrado).
+ *
+ * Los resultados se imprimen y se guardan en target/carga/&lt;app&gt;-&lt;modo&gt;.json.
+ */
+public class PruebaCarga {
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private final Map<String, String> opciones;
+    private final PrintStream consola;
+
+    private PruebaCarga(Map<String, String> opciones, PrintStream consola) {
+        this.opciones = opciones;
+        this.consola = consola;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> opciones = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) throw new IllegalArgumentException("Argumento no reconocido: " + arg);
+            int igual = arg.indexOf('=');
+            opciones.put(igual < 0 ? arg.substring(2) : arg.substring(2, igual), igual < 0 ? "true" : arg.substring(igual + 1));
+        }
+
+        // Los registros de accesos de las apps van junto a los resultados
+        if (System.getProperty("accesos.directorio") == null) {
+            System.setProperty("accesos.directorio", "target/carga/logs");
+        }
+
+        PrintStream consola = System.out;
+        PruebaCarga prueba = new PruebaCarga(opciones, consola);
+        String app = opciones.getOrDefault("app", "todas");
+        List<String> apps = app.equals("todas") ? Escenario.nombres() : List.of(app.split(","));
+        try {
+            // Se silencia la salida de las apps durante la prueba
+            System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+            for (String nombre : apps) {
+                prueba.ejecutar(Escenario.crear(nombre));
+            }
+        } finally {
+            System.setOut(consola);
+        }
+        System.exit(0);
+    }
+
+    private int entero(String clave, int porDefecto) {
+        return opciones.containsKey(clave) ? Integer.parseInt(opciones.get(clave)) : porDefecto;
+    }
+
+    private void ejecutar(Escenario escenario) throws Exception {
+        String modo = opciones.getOrDefault("modo", "cerrado");
+        if (!modo.equals("cerrado") && !modo.equals("abierto")) {
+            throw new IllegalArgumentException("Modo desconocido: " + modo);
+        }
+        int conexiones = entero("conexiones", 16);
+        int tasa = entero("tasa", 1000);
+        int duracion = entero("duracion", 20);
+        int calentamiento = entero("calentamiento", 5);
+        escenario.aplicarMezcla(opciones.get("mezcla"));
+
+        Javalin app = escenario.crearApp().start(0);
+        String base = "http://localhost:" + app.port();
+        HttpClient cliente = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        try {
+            consola.printf("%n== %s (%s) en %s ==%n", escenario.nombre, modo, base);
+            escenario.sembrar(cliente, base, entero("semilla", 1000));
+
+            // Calentamiento: mismo tráfico, resultados descartados
+            Resultado previo = lanzar(escenario, cliente, base, modo, conexiones, tasa, calentamiento, 0);
+            long intervalo = 0;
+            if (modo.equals("cerrado")) {
+                intervalo = opciones.containsKey("intervalo-esperado-us")
+                        ? TimeUnit.MICROSECONDS.toNanos(Long.parseLong(opciones.get("intervalo-esperado-us")))
+                        : (long) previo.servicio.media();
+            }
+
+            Resultado r = lanzar(escenario, cliente, base, modo, conexiones, tasa, duracion, intervalo);
+            imprimir(escenario, r);
+            guardar(escenario, modo, conexiones, tasa, intervalo, r);
+        } finally {
+            app.stop();
+        }
+    }
+
+    /**
+     * Acumuladores de un hilo de carga (sin compartir) y, al final, el total combinado.
+     */
+    static class Resultado {
+        final Histograma latencia = new Histograma();
+        final Histograma servicio = new Histograma();
+        final Map<String, Histograma> porOperacion = new LinkedHashMap<>();
+        final Map<Integer, Long> estados = new TreeMap<>();
+        long errores;
+        long nanos;
+
+        void sumar(Resultado otro) {
+            latencia.sumar(otro.latencia);
+            servicio.sumar(otro.servicio);
+            otro.porOperacion.forEach((k, h) -> porOperacion.computeIfAbsent(k, x -> new Histograma()).sumar(h));
+            otro.estados.forEach((k, v) -> estados.merge(k, v, Long::sum));
+            errores += otro.errores;
+        }
+    }
+
+    private Resultado lanzar(Escenario escenario, HttpClient cliente, String base, String modo,
+                             int conexiones, int tasa, int segundos, long intervaloEsperado) throws InterruptedException {
+        List<Escenario.Operacion> ops = new ArrayList<>();
+        int pesoTotal = 0;
+        for (Escenario.Operacion op : escenario.operaciones.values()) {
+            if (op.peso > 0) {
+                ops.add(op);
+                pesoTotal += op.peso;
+            }
+        }
+        if (ops.isEmpty()) throw new IllegalArgumentException("La mezcla no tiene operaciones con peso > 0");
+        int[] acumulado = new int[ops.size()];
+        for (int i = 0, suma = 0; i < ops.size(); i++) {
+            suma += ops.get(i).peso;
+            acumulado[i] = suma;
+        }
+        final int pesos = pesoTotal;
+
+        boolean abierto = modo.equals("abierto");
+        // Modo abierto: cada conexión envía a tasa/conexiones; los calendarios se escalonan
+        long periodo = abierto ? (long) (1e9 * conexiones / tasa) : 0;
+        Resultado[] parciales = new Resultado[conexiones];
+        CountDownLatch fin = new CountDownLatch(conexiones);
+        long inicio = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(50);
+        long limite = inicio + TimeUnit.SECONDS.toNanos(segundos);
+
+        for (int c = 0; c < conexiones; c++) {
+            final int conexion = c;
+            Resultado parcial = parciales[c] = new Resultado();
+            Thread hilo = new Thread(() -> {
+                Escenario.Sesion sesion = new Escenario.Sesion(base, escenario);
+                ThreadLocalRandom aleatorio = ThreadLocalRandom.current();
+                long programado = inicio + (abierto ? periodo * conexion / conexiones : 0);
+                try {
+                    while (true) {
+                        long ahora = System.nanoTime();
+                        if (abierto) {
+                            if (programado >= limite) break;
+                            if (programado > ahora) {
+                                LockSupport.parkNanos(programado - ahora);
+                                continue;
+                            }
+                        } else if (ahora >= limite) {
+                            break;
+                        } else if (ahora < inicio) {
+                            LockSupport.parkNanos(inicio - ahora);
+                            continue;
+                        }
+
+                        int sorteo = aleatorio.nextInt(pesos);
+                        int i = 0;
+                        while (acumulado[i] <= sorteo) i++;
+                        Escenario.Operacion op = ops.get(i);
+
+                        long envio = System.nanoTime();
+                        int estado;
+                        try {
+                            HttpRequest peticion = op.peticion.apply(sesion);
+                            HttpResponse<byte[]> respuesta = cliente.send(peticion, HttpResponse.BodyHandlers.ofByteArray());
+                            estado = respuesta.statusCode();
+                            if (op.respuesta != null) op.respuesta.accept(sesion, respuesta);
+                        } catch (IOException e) {
+                            estado = -1;
+                        }
+                        long recibido = System.nanoTime();
+
+                        long servicio = recibido - envio;
+                        long latencia = abierto ? recibido - programado : servicio;
+                        parcial.servicio.registrar(servicio);
+                        Histograma porOp = parcial.porOperacion.computeIfAbsent(op.nombre, k -> new Histograma());
+                        if (abierto) {
+                            parcial.latencia.registrar(latencia);
+                            porOp.registrar(latencia);
+                        } else {
+                            parcial.latencia.registrarCorregido(latencia, intervaloEsperado);
+                            porOp.registrarCorregido(latencia, intervaloEsperado);
+                        }
+                        if (estado < 0 || estado >= 500) parcial.errores++;
+                        if (estado > 0) parcial.estados.merge(estado, 1L, Long::sum);
+                        programado += periodo;
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    fin.countDown();
+                }
+            }, "carga-" + c);
+            hilo.setDaemon(true);
+            hilo.start();
+        }
+        fin.await();
+
+        Resultado total = new Resultado();
+        for (Resultado p : parciales) total.sumar(p);
+        total.nanos = System.nanoTime() - inicio;
+        return total;
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1e6;
+    }
+
+    private static Map<String, Double> resumen(Histograma h) {
+        Map<String, Double> r = new LinkedHashMap<>();
+        for (double p : PERCENTILES) {
+            r.put("p" + (p == Math.floor(p) ? String.valueOf((int) p) : String.valueOf(p).replace(".", "")), ms(h.percentil(p)));
+        }
+        r.put("max", ms(h.maximo()));
+        r.put("media", h.media() / 1e6);
+        return r;
+    }
+
+    private void imprimir(Escenario escenario, Resultado r) {
+        double segundos = r.nanos / 1e9;
+        consola.printf("peticiones: %d  throughput: %.1f req/s  errores: %d  estados: %s%n",
+                r.servicio.total(), r.servicio.total() / segundos, r.errores, r.estados);
+        consola.printf("%-18s %10s %10s %10s %10s %10s%n", "latencia (ms)", "p50", "p90", "p99", "p99.9", "max");
+        fila("total", r.latencia);
+        fila("servicio", r.servicio);
+        r.porOperacion.forEach(this::fila);
+    }
+
+    private void fila(String nombre, Histograma h) {
+        consola.printf("%-18s %10.3f %10.3f %10.3f %10.3f %10.3f%n", nombre,
+                ms(h.percentil(50)), ms(h.percentil(90)), ms(h.percentil(99)), ms(h.percentil(99.9)), ms(h.maximo()));
+    }
+
+    private void guardar(Escenario escenario, String modo, int conexiones, int tasa, long intervalo, Resultado r)
+            throws IOException {
+        Map<String, Object> json = new LinkedHashMap<>();
+        json.put("app", escenario.nombre);
+        json.put("modo", modo);
+        json.put("conexiones", conexiones);
+        if (modo.equals("abierto")) json.put("tasaObjetivo", tasa);
+        else json.put("intervaloEsperadoMs", ms(intervalo));
+        json.put("duracionSegundos", r.nanos / 1e9);
+        json.put("peticiones", r.servicio.total());
+        json.put("throughput", r.servicio.total() / (r.nanos / 1e9));
+        json.put("errores", r.errores);
+        json.put("estados", r.estados);
+        json.put("latenciaMs", resumen(r.latencia));
+        json.put("servicioMs", resumen(r.servicio));
+        Map<String, Object> ops = new LinkedHashMap<>();
+        r.porOperacion.forEach((k, h) -> ops.put(k, Map.of("peticiones", h.total(), "latenciaMs", resumen(h))));
+        json.put("operaciones", ops);
+
+        File directorio = new File("target/carga");
+        directorio.mkdirs();
+        File archivo = new File(directorio, escenario.nombre + "-" + modo + ".json");
+        new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT).writeValue(archivo, json);
+        consola.println("resultados: " + archivo.getPath());
+    }
+}
@@ -0,0 +1,137 @@
+package services;
+
+import models.Producto;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.ref.Reference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Motores de almacenamiento del catálogo:
+ *  - chm: el ConcurrentHashMap&lt;Integer, Producto&gt; original
+ *  - mapa: ProductoAlmacenMapa (ConcurrentSkipListMap ordenado por ID)
+ *  - compacto: ProductoAlmacenCompacto (arrays primitivos + tabla hash int)
+ *
+ * Mide la latencia de búsqueda por ID, el recorrido de una página y la huella
+ * de memoria por producto (contador auxiliar "bytesPorProducto" de huella()).
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+public class ProductoAlmacenBenchmark {
+
+    @Param({"chm", "mapa", "compacto"})
+    String motor;
+
+    @Param("1000000")
+    int tamano;
+
+    private ProductoAlmacen almacen;
+
+    /**
+     * Adaptador del ConcurrentHashMap original para compararlo con la misma interfaz.
+     * Sin orden por ID: los recorridos copian y ordenan, como haría el código original.
+     */
+    static class AlmacenHashMap implements ProductoAlmacen {
+        private final Map<Integer, Producto> productos = new ConcurrentHashMap<>();
+
+        public Producto obtener(int id) { return productos.get(id); }
+        public boolean contiene(int id) { return productos.containsKey(id); }
+        public Producto guardar(Producto p) { return productos.put(p.getId(), p); }
+        public Producto eliminar(int id) { return productos.remove(id); }
+        public Stream<Producto> recorrer(int despuesDe) {
+            return productos.values().stream().filter(p -> p.getId() > despuesDe)
+                    .sorted((a, b) -> Integer.compare(a.getId(), b.getId()));
+        }
+        public Stream<Producto> recorrerDescendente() {
+            return productos.values().stream().sorted((a, b) -> Integer.compare(b.getId(), a.getId()));
+        }
+        public boolean vacio() { return productos.isEmpty(); }
+        public void limpiar() { productos.clear(); }
+    }
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Huella {
+        public long bytesPorProducto;
+    }
+
+    static ProductoAlmacen crear(String motor) {
+        switch (motor) {
+            case "mapa": return new ProductoAlmacenMapa();
+            case "compacto": return new ProductoAlmacenCompacto();
+            default: return new AlmacenHashMap();
+        }
+    }
+
+    static void llenar(ProductoAlmacen almacen, int tamano) {
+        for (int i = 1; i <= tamano; i++) {
+            Producto p = new Producto(i, "Producto " + i, 1 + i % 1000);
+            p.setVersion(i);
+            almacen.guardar(p);
+        }
+    }
+
+    @Setup
+    public void preparar() {
+        almacen = crear(motor);
+        llenar(almacen, tamano);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public Producto obtener() {
+        return almacen.obtener(1 + ThreadLocalRandom.current().nextInt(tamano));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public long pagina100() {
+        int despuesDe = ThreadLocalRandom.current().nextInt(tamano);
+        return almacen.recorrer(despuesDe).limit(100).count();
+    }
+
+    /**
+     * Construye un almacén nuevo y mide cuánto heap retiene por producto.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 1)
+    @Measurement(iterations = 3)
+    public Object huella(Huella huella) {
+        long antes = heapUsado();
+        ProductoAlmacen nuevo = crear(motor);
+        llenar(nuevo, tamano);
+        long despues = heapUsado();
+        huella.bytesPorProducto = (despues - antes) / tamano;
+        Reference.reachabilityFence(nuevo);
+        return nuevo;
+    }
+
+    private static long heapUsado() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,69 @@
+package services;
+
+import models.Producto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carga de un catálogo producto a producto (camino de POST /api/productos)
+ * frente a la inserción por lotes de POST /api/productos/_bulk.
+ * Cada invocación inserta "filas" productos; el resultado es el tiempo por carga completa.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ProductoIngestaBenchmark {
+
+    @Param("100000")
+    int filas;
+
+    @Param("1000")
+    int tamanoLote;
+
+    private ProductoService servicio;
+
+    @Setup
+    public void preparar() {
+        servicio = new ProductoService();
+    }
+
+    @Benchmark
+    public int individual() {
+        int ultimo = 0;
+        for (int i = 0; i < filas; i++) {
+            ultimo = servicio.crear(new Producto(0, "Producto " + i, 1 + i % 1000)).getId();
+        }
+        return ultimo;
+    }
+
+    @Benchmark
+    public int porLotes() {
+        int ultimo = 0;
+        List<Producto> lote = new ArrayList<>(tamanoLote);
+        for (int i = 0; i < filas; i++) {
+            lote.add(new Producto(0, "Producto " + i, 1 + i % 1000));
+            if (lote.size() == tamanoLote || i == filas - 1) {
+                List<Producto> creados = servicio.crearLote(lote);
+                ultimo = creados.get(creados.size() - 1).getId();
+                lote.clear();
+            }
+        }
+        return ultimo;
+    }
+}
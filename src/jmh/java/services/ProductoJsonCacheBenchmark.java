@@ -0,0 +1,77 @@
+package services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import models.Producto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coste de generar las respuestas de GET /api/productos/{id} y GET /api/productos:
+ * Jackson sobre cada objeto (como ctx.json) frente a los fragmentos de ProductoJsonCache.
+ * El resultado es respuestas por segundo sin contar la red.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductoJsonCacheBenchmark {
+
+    @Param("1000")
+    int tamanoLista;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+    private final OutputStream descarte = OutputStream.nullOutputStream();
+    private ProductoJsonCache cache;
+    private List<Producto> productos;
+
+    @Setup
+    public void preparar() {
+        cache = new ProductoJsonCache(true);
+        productos = new ArrayList<>(tamanoLista);
+        for (int i = 1; i <= tamanoLista; i++) {
+            Producto p = new Producto(i, "Producto número " + i, 1 + i % 1000);
+            p.setVersion(i);
+            productos.add(p);
+            cache.actualizar(p);
+        }
+    }
+
+    @Benchmark
+    public byte[] unoJackson() throws IOException {
+        return mapper.writeValueAsBytes(productos.get(tamanoLista / 2));
+    }
+
+    @Benchmark
+    public byte[] unoCache() {
+        return cache.json(productos.get(tamanoLista / 2));
+    }
+
+    @Benchmark
+    public void listaJackson() throws IOException {
+        mapper.writeValue(descarte, productos);
+    }
+
+    @Benchmark
+    public void listaCache() throws IOException {
+        cache.escribirArray(productos.stream(), descarte);
+    }
+}
@@ -0,0 +1,135 @@
+package services;
+
+import models.Producto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Persistencia del catálogo:
+ *  - escritura: throughput del WAL con fsync por operación frente a group commit
+ *  - Recuperacion: tiempo de arranque con 1M productos desde instantánea o solo desde WAL
+ */
+public class ProductoPersistenciaBenchmark {
+
+    static Path directorioTemporal() throws IOException {
+        return Files.createTempDirectory("productos-bench");
+    }
+
+    static void borrar(Path directorio) throws IOException {
+        try (Stream<Path> ficheros = Files.walk(directorio)) {
+            for (Path f : (Iterable<Path>) ficheros.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(f);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Escritura {
+        @Param({"true", "false"})
+        boolean commitGrupal;
+
+        Path directorio;
+        ProductoPersistencia persistencia;
+
+        @Setup(Level.Trial)
+        public void abrir() throws IOException {
+            directorio = directorioTemporal();
+            persistencia = new ProductoPersistencia(directorio, commitGrupal);
+            persistencia.recuperar(new ProductoAlmacenMapa());
+        }
+
+        @TearDown(Level.Trial)
+        public void cerrar() throws IOException {
+            persistencia.close();
+            borrar(directorio);
+        }
+    }
+
+    /**
+     * Cada operación espera a que su registro sea durable, como hace ProductoService.
+     */
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 2, time = 2)
+    @Measurement(iterations = 5, time = 2)
+    @Threads(16)
+    @Fork(1)
+    public Long escritura(Escritura estado) {
+        int id = ThreadLocalRandom.current().nextInt(1_000_000);
+        Producto p = new Producto(id, "Producto " + id, 10);
+        return estado.persistencia.registrar(ProductoPersistencia.ACTUALIZAR, p).join();
+    }
+
+    @State(Scope.Benchmark)
+    public static class Recuperacion {
+        @Param("1000000")
+        int tamano;
+
+        @Param({"snapshot", "wal"})
+        String origen;
+
+        Path directorio;
+
+        @Setup(Level.Trial)
+        public void generar() throws IOException {
+            directorio = directorioTemporal();
+            ProductoAlmacenMapa almacen = new ProductoAlmacenMapa();
+            try (ProductoPersistencia persistencia = new ProductoPersistencia(directorio, true)) {
+                persistencia.recuperar(almacen);
+                List<CompletableFuture<Long>> pendientes = new ArrayList<>();
+                for (int i = 1; i <= tamano; i++) {
+                    Producto p = new Producto(i, "Producto " + i, 1 + i % 1000);
+                    p.setVersion(i);
+                    almacen.guardar(p);
+                    pendientes.add(persistencia.registrar(ProductoPersistencia.CREAR, p));
+                }
+                pendientes.forEach(CompletableFuture::join);
+                if (origen.equals("snapshot")) {
+                    persistencia.snapshot(almacen.recorrer(Integer.MIN_VALUE), tamano + 1, tamano);
+                }
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void borrarDatos() throws IOException {
+            borrar(directorio);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    @Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+    public int recuperacion(Recuperacion estado) {
+        ProductoAlmacenMapa almacen = new ProductoAlmacenMapa();
+        try (ProductoPersistencia persistencia = new ProductoPersistencia(estado.directorio, true)) {
+            return persistencia.recuperar(almacen).siguienteId;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package services;
+
+import models.Producto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Operaciones CRUD de ProductoService sobre un catálogo precargado.
+ * EjecutarBenchmarks lo repite con 1..N hilos.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ProductoServiceBenchmark {
+
+    @Param("100000")
+    int tamano;
+
+    private ProductoService servicio;
+    private int primerId;
+
+    @Setup
+    public void preparar() {
+        servicio = new ProductoService();
+        List<Producto> lote = new ArrayList<>(tamano);
+        for (int i = 0; i < tamano; i++) {
+            lote.add(new Producto(0, "Producto " + i, 1 + i % 1000));
+        }
+        primerId = servicio.crearLote(lote).get(0).getId();
+    }
+
+    private int idAleatorio() {
+        return primerId + ThreadLocalRandom.current().nextInt(tamano);
+    }
+
+    @Benchmark
+    public Producto obtener() {
+        return servicio.obtenerPorId(idAleatorio());
+    }
+
+    @Benchmark
+    public Producto actualizar() {
+        int id = idAleatorio();
+        return servicio.actualizar(new Producto(id, "Producto " + id, ThreadLocalRandom.current().nextInt(1, 1000)));
+    }
+
+    /**
+     * Crear y eliminar en la misma operación mantiene constante el tamaño del catálogo.
+     */
+    @Benchmark
+    public boolean crearYEliminar() {
+        Producto creado = servicio.crear(new Producto(0, "Temporal", 10));
+        return servicio.eliminar(creado.getId());
+    }
+}
@@ -4,6 +4,8 @@ import io.javalin.Javalin;
 import io.javalin.http.Context;
 import io.javalin.http.HttpStatus;
 import io.javalin.http.UnauthorizedResponse;
+import metricas.Metricas;
+import registro.RegistroAccesos;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
@@ -23,11 +25,25 @@ public class AutenticacionApp {
     private static final Map<String, String> tokensValidos = new ConcurrentHashMap<>();
 
     public static void main(String[] args) {
+        crearApp().start(7070);
+    }
+
+    /**
+     * Crea la aplicación con todas sus rutas, sin arrancar el servidor.
+     */
+    public static Javalin crearApp() {
+        // Registro de accesos asíncrono: los hilos de Jetty no esperan a la E/S del log
+        RegistroAccesos accesos = RegistroAccesos.desdePropiedades("auth");
         Javalin app = Javalin.create(config -> {
             config.requestLogger.http((ctx, ms) -> {
-                System.out.println(ctx.method() + " " + ctx.path() + " - " + ctx.status());
+                Metricas.registrar(ctx, ms);
+                accesos.registrar(ctx, ms);
             });
-        }).start(7070);
+        });
+        app.events(eventos -> eventos.serverStopped(accesos::close));
+
+        // --- MÉTRICAS (GET /metrics) ---
+        accesos.publicarMetricas(Metricas.instalar(app));
 
         // --- INTERFAZ DE PRUEBAS ---
         app.get("/", AutenticacionApp::servirInterfazPruebas);
@@ -45,6 +61,7 @@ public class AutenticacionApp {
         app.exception(IllegalArgumentException.class, (e, ctx) -> {
             ctx.status(400).json(Map.of("error", e.getMessage()));
         });
+        return app;
     }
 
     // ==========================================
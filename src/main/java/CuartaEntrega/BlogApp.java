@@ -1,14 +1,27 @@
 package CuartaEntrega;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.StreamWriteFeature;
 import io.javalin.Javalin;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
 import io.javalin.http.HttpStatus;
+import metricas.Metricas;
+import registro.RegistroAccesos;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.text.Normalizer;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
 
 /**
  * Aplicación de Blog con Posts y Comentarios usando Javalin.
@@ -17,20 +30,35 @@ import java.util.concurrent.atomic.AtomicLong;
 public class BlogApp {
 
     public static void main(String[] args) {
+        crearApp().start(7070);
+
+        // --- Datos de prueba ---
+        inicializarDatos();
+    }
+
+    /**
+     * Crea la aplicación con todas sus rutas, sin arrancar el servidor.
+     */
+    public static Javalin crearApp() {
+        // Registro de accesos asíncrono: los hilos de Jetty no esperan a la E/S del log
+        RegistroAccesos accesos = RegistroAccesos.desdePropiedades("blog");
         Javalin app = Javalin.create(config -> {
             config.requestLogger.http((ctx, ms) -> {
-                System.out.println(ctx.method() + " " + ctx.path() + " - " + ctx.status());
+                Metricas.registrar(ctx, ms);
+                accesos.registrar(ctx, ms);
             });
-        }).start(7070);
+        });
+        app.events(eventos -> eventos.serverStopped(accesos::close));
 
-        // --- Datos de prueba ---
-        inicializarDatos();
+        // --- Métricas (GET /metrics) ---
+        accesos.publicarMetricas(Metricas.instalar(app));
 
         // --- Ruta de Bienvenida / Interfaz ---
         app.get("/", BlogApp::servirInterfaz);
 
         // --- Endpoints de Posts ---
         app.get("/posts", PostController::obtenerTodos);
+        app.get("/posts/search", PostController::buscar); // antes de /posts/{id}
         app.get("/posts/{id}", PostController::obtenerUno);
         app.post("/posts", PostController::crear);
         app.put("/posts/{id}", PostController::actualizar);
@@ -44,6 +72,10 @@ public class BlogApp {
         app.exception(NoSuchElementException.class, (e, ctx) -> {
             ctx.status(404).json(Map.of("error", e.getMessage()));
         });
+        app.exception(IllegalArgumentException.class, (e, ctx) -> {
+            ctx.status(400).json(Map.of("error", e.getMessage()));
+        });
+        return app;
     }
 
     private static void inicializarDatos() {
@@ -75,7 +107,7 @@ public class BlogApp {
         public String contenido;
         public String autor;
         public String fechaPublicacion;
-        public List<Comentario> comentarios = new ArrayList<>();
+        RegistroComentarios comentarios = new RegistroComentarios();
 
         public Post() {}
         public Post(String titulo, String contenido, String autor) {
@@ -84,6 +116,101 @@ public class BlogApp {
             this.autor = autor;
             this.fechaPublicacion = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
         }
+
+        // En JSON los comentarios siguen siendo un array
+        public List<Comentario> getComentarios() { return comentarios.desde(0, Integer.MAX_VALUE); }
+        public void setComentarios(List<Comentario> lista) {
+            comentarios = new RegistroComentarios();
+            if (lista != null) lista.forEach(comentarios::agregar);
+        }
+    }
+
+    /**
+     * Registro de comentarios de un post: solo admite añadir al final y se reparte en trozos
+     * que se reservan al llenarse (16, 32, 64... comentarios), así que crecer no copia nada.
+     *
+     * Añadir no toma cerrojos: un getAndIncrement reserva la posición y la escritura de la casilla
+     * la publica. Un lector avanza desde su cursor hasta la primera casilla aún vacía, de modo
+     * que siempre ve un prefijo contiguo del registro y nunca se salta un comentario en curso.
+     * La posición de un comentario no cambia nunca y sirve de cursor de paginación.
+     */
+    static final class RegistroComentarios {
+        private static final int BITS_PRIMER_TROZO = 4;
+        private static final int PRIMER_TROZO = 1 << BITS_PRIMER_TROZO;
+
+        private final AtomicReferenceArray<AtomicReferenceArray<Comentario>> trozos =
+            new AtomicReferenceArray<>(32 - BITS_PRIMER_TROZO);
+        private final AtomicInteger reservadas = new AtomicInteger();
+        private final AtomicInteger escritas = new AtomicInteger();
+
+        /** Añade al final y devuelve la posición del comentario. */
+        int agregar(Comentario c) {
+            int posicion = reservadas.getAndIncrement();
+            if (posicion < 0) throw new IllegalStateException("Registro de comentarios lleno");
+            int t = trozo(posicion);
+            trozoCreado(t).set(posicion - inicio(t), c);
+            escritas.incrementAndGet();
+            return posicion;
+        }
+
+        /** Comentarios completamente escritos (puede ir por delante de lo que ve un lector un instante). */
+        int tamaño() {
+            return escritas.get();
+        }
+
+        /**
+         * Hasta "limite" comentarios a partir de la posición "despuesDe" (0 = el primero).
+         */
+        List<Comentario> desde(int despuesDe, int limite) {
+            int hasta = (int) Math.min((long) despuesDe + limite, reservadas.get());
+            List<Comentario> pagina = new ArrayList<>(Math.max(0, Math.min(hasta - despuesDe, 1024)));
+            for (int posicion = despuesDe; posicion < hasta; posicion++) {
+                Comentario c = en(posicion);
+                if (c == null) break; // reservado pero todavía sin escribir
+                pagina.add(c);
+            }
+            return pagina;
+        }
+
+        /**
+         * Todos los comentarios ya escritos: recorre cada posición reservada y salta las que
+         * aún no tienen comentario en lugar de parar en la primera.
+         */
+        List<Comentario> escritos() {
+            int hasta = reservadas.get();
+            List<Comentario> todos = new ArrayList<>(hasta);
+            for (int posicion = 0; posicion < hasta; posicion++) {
+                Comentario c = en(posicion);
+                if (c != null) todos.add(c);
+            }
+            return todos;
+        }
+
+        /** El comentario de una posición, o null si aún no está escrito. */
+        Comentario en(int posicion) {
+            if (posicion < 0 || posicion >= reservadas.get()) return null;
+            int t = trozo(posicion);
+            AtomicReferenceArray<Comentario> trozo = trozos.get(t);
+            return trozo == null ? null : trozo.get(posicion - inicio(t));
+        }
+
+        // El trozo t cubre las posiciones [16 * (2^t - 1), 16 * (2^(t+1) - 1))
+        private static int trozo(int posicion) {
+            return 31 - Integer.numberOfLeadingZeros((posicion >>> BITS_PRIMER_TROZO) + 1);
+        }
+
+        private static int inicio(int trozo) {
+            return PRIMER_TROZO * ((1 << trozo) - 1);
+        }
+
+        private AtomicReferenceArray<Comentario> trozoCreado(int t) {
+            AtomicReferenceArray<Comentario> trozo = trozos.get(t);
+            if (trozo == null) {
+                trozos.compareAndSet(t, null, new AtomicReferenceArray<>(PRIMER_TROZO << t));
+                trozo = trozos.get(t);
+            }
+            return trozo;
+        }
     }
 
     // ==========================================
@@ -94,9 +221,13 @@ public class BlogApp {
         private static final Map<Long, Post> posts = new ConcurrentHashMap<>();
         private static final AtomicLong postIds = new AtomicLong(1);
         private static final AtomicLong commentIds = new AtomicLong(1);
+        private static final IndiceBusqueda indice = new IndiceBusqueda();
 
         public static List<Post> obtenerTodos() { return new ArrayList<>(posts.values()); }
 
+        /** Vista de solo lectura de todos los posts, sin copiarlos. */
+        public static Collection<Post> todos() { return Collections.unmodifiableCollection(posts.values()); }
+
         public static Post obtenerPorId(Long id) {
             if (!posts.containsKey(id)) throw new NoSuchElementException("Post no encontrado");
             return posts.get(id);
@@ -105,29 +236,531 @@ public class BlogApp {
         public static Post crear(Post p) {
             p.id = postIds.getAndIncrement();
             p.fechaPublicacion = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-            p.comentarios = new ArrayList<>();
-            posts.put(p.id, p);
+            p.comentarios = new RegistroComentarios();
+            // Se indexa antes de publicarlo: quien lo encuentre en el mapa lo encuentra indexado
+            synchronized (p) {
+                indice.crear(p.id, p.titulo, p.contenido);
+                posts.put(p.id, p);
+            }
             return p;
         }
 
+        // Los cambios de un post y de su entrada en el índice se serializan con el propio post
         public static Post actualizar(Long id, Post nuevosDatos) {
             Post p = obtenerPorId(id);
-            p.titulo = nuevosDatos.titulo;
-            p.contenido = nuevosDatos.contenido;
+            synchronized (p) {
+                String[] anteriores = {p.titulo, p.contenido};
+                p.titulo = nuevosDatos.titulo;
+                p.contenido = nuevosDatos.contenido;
+                indice.reemplazar(id, anteriores, new String[] {p.titulo, p.contenido});
+            }
             return p;
         }
 
         public static void eliminar(Long id) {
-            if (posts.remove(id) == null) throw new NoSuchElementException("Post no encontrado");
+            Post p = posts.remove(id);
+            if (p == null) throw new NoSuchElementException("Post no encontrado");
+            synchronized (p) {
+                // Un comentario reservado y sin escribir aún no se ha indexado y, cuando lo
+                // intente, el post ya no estará en el índice: basta con los escritos
+                List<String> textos = new ArrayList<>(List.of(Objects.toString(p.titulo, ""), Objects.toString(p.contenido, "")));
+                for (Comentario c : p.comentarios.escritos()) textos.add(c.contenido);
+                indice.eliminar(id, textos.toArray(new String[0]));
+            }
         }
 
         public static Comentario agregarComentario(Long postId, Comentario c) {
             Post p = obtenerPorId(postId);
             c.id = commentIds.getAndIncrement();
             c.fecha = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-            p.comentarios.add(c);
+            // Añadir al registro no bloquea; el índice sí se actualiza dentro del post para
+            // no cruzarse con un eliminar que esté quitando sus términos
+            p.comentarios.agregar(c);
+            synchronized (p) {
+                indice.añadir(postId, c.contenido);
+            }
             return c;
         }
+
+        /**
+         * Posts ordenados por relevancia BM25 para la consulta.
+         */
+        public static List<ResultadoBusqueda> buscar(String consulta, int limite) {
+            List<ResultadoBusqueda> resultados = new ArrayList<>();
+            for (IndiceBusqueda.Coincidencia c : indice.buscar(consulta, limite)) {
+                Post p = posts.get(c.postId);
+                if (p != null) resultados.add(new ResultadoBusqueda(p, c.puntuacion));
+            }
+            return resultados;
+        }
+    }
+
+    /** Resultado de /posts/search: el post sin contenido ni comentarios, con su puntuación. */
+    static class ResultadoBusqueda {
+        public Long id;
+        public String titulo;
+        public String autor;
+        public String fechaPublicacion;
+        public double puntuacion;
+
+        ResultadoBusqueda(Post p, double puntuacion) {
+            this.id = p.id;
+            this.titulo = p.titulo;
+            this.autor = p.autor;
+            this.fechaPublicacion = p.fechaPublicacion;
+            this.puntuacion = puntuacion;
+        }
+    }
+
+    // ==========================================
+    // PROYECCIONES (?fields= y ?vista=resumen)
+    // ==========================================
+
+    /**
+     * Escribe posts con solo los campos pedidos, directamente con un JsonGenerator sobre la
+     * salida: ni mapas intermedios ni árbol JSON, y los campos no pedidos no se tocan.
+     * El número de comentarios sale del contador del registro, no de recorrerlo.
+     */
+    static final class Proyeccion {
+        enum Campo {
+            ID("id"), TITULO("titulo"), CONTENIDO("contenido"), AUTOR("autor"),
+            FECHA_PUBLICACION("fechaPublicacion"), NUM_COMENTARIOS("numComentarios"), COMENTARIOS("comentarios");
+
+            final String nombre;
+
+            Campo(String nombre) {
+                this.nombre = nombre;
+            }
+        }
+
+        static final Set<Campo> RESUMEN = Collections.unmodifiableSet(
+            EnumSet.of(Campo.ID, Campo.TITULO, Campo.AUTOR, Campo.FECHA_PUBLICACION, Campo.NUM_COMENTARIOS));
+
+        private static final JsonFactory FABRICA = JsonFactory.builder()
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET) // la salida es de Jetty
+            .build();
+
+        private Proyeccion() {}
+
+        /**
+         * Campos pedidos con ?fields=a,b o ?vista=resumen; null si no se pidió proyección.
+         */
+        static Set<Campo> campos(String fields, String vista) {
+            if (fields != null && vista != null) {
+                throw new IllegalArgumentException("Use fields o vista, no ambos");
+            }
+            if (vista != null) {
+                if (!vista.equals("resumen")) throw new IllegalArgumentException("Vista desconocida: " + vista);
+                return RESUMEN;
+            }
+            if (fields == null) return null;
+            Set<Campo> campos = EnumSet.noneOf(Campo.class);
+            for (String nombre : fields.split(",")) {
+                String n = nombre.trim();
+                if (n.isEmpty()) continue;
+                campos.add(Arrays.stream(Campo.values()).filter(c -> c.nombre.equals(n)).findFirst()
+                    .orElseThrow(() -> new IllegalArgumentException("Campo desconocido: " + n)));
+            }
+            if (campos.isEmpty()) throw new IllegalArgumentException("El parámetro fields no puede estar vacío");
+            return campos;
+        }
+
+        /** Array JSON con la proyección de cada post. */
+        static void escribir(Collection<Post> posts, Set<Campo> campos, OutputStream salida) throws IOException {
+            try (JsonGenerator g = FABRICA.createGenerator(salida)) {
+                g.writeStartArray();
+                for (Post p : posts) escribir(g, p, campos);
+                g.writeEndArray();
+            }
+        }
+
+        static void escribir(Post p, Set<Campo> campos, OutputStream salida) throws IOException {
+            try (JsonGenerator g = FABRICA.createGenerator(salida)) {
+                escribir(g, p, campos);
+            }
+        }
+
+        private static void escribir(JsonGenerator g, Post p, Set<Campo> campos) throws IOException {
+            g.writeStartObject();
+            for (Campo campo : campos) {
+                switch (campo) {
+                    case ID: g.writeNumberField("id", p.id); break;
+                    case TITULO: g.writeStringField("titulo", p.titulo); break;
+                    case CONTENIDO: g.writeStringField("contenido", p.contenido); break;
+                    case AUTOR: g.writeStringField("autor", p.autor); break;
+                    case FECHA_PUBLICACION: g.writeStringField("fechaPublicacion", p.fechaPublicacion); break;
+                    case NUM_COMENTARIOS: g.writeNumberField("numComentarios", p.comentarios.tamaño()); break;
+                    case COMENTARIOS:
+                        g.writeArrayFieldStart("comentarios");
+                        Comentario c;
+                        for (int i = 0; (c = p.comentarios.en(i)) != null; i++) {
+                            g.writeStartObject();
+                            if (c.id != null) g.writeNumberField("id", c.id);
+                            else g.writeNullField("id");
+                            g.writeStringField("autor", c.autor);
+                            g.writeStringField("contenido", c.contenido);
+                            g.writeStringField("fecha", c.fecha);
+                            g.writeEndObject();
+                        }
+                        g.writeEndArray();
+                        break;
+                }
+            }
+            g.writeEndObject();
+        }
+    }
+
+    // ==========================================
+    // BÚSQUEDA (índice invertido en memoria)
+    // ==========================================
+
+    /**
+     * Índice invertido sobre el título, el contenido y los comentarios de cada post,
+     * con puntuación BM25. Cada post es un documento; los comentarios suman términos a su post.
+     *
+     * Los términos se normalizan a minúsculas y sin acentos ("Canción" -> "cancion", "año" -> "ano")
+     * y se ignoran las palabras vacías más frecuentes del español.
+     *
+     * Cada post recibe un ordinal int denso; la lista de un término es una tabla hash de
+     * enteros (ordinal -> frecuencia) para poder sumar, restar y borrar en O(1) al editar.
+     * Los ordinales de los posts eliminados se reutilizan, así que las tablas por ordinal
+     * crecen con el máximo de posts vivos y no con todos los creados.
+     * Las escrituras son exclusivas y las búsquedas comparten el cerrojo de lectura.
+     */
+    static class IndiceBusqueda {
+        private static final double K1 = 1.2;
+        private static final double B = 0.75;
+        private static final Set<String> VACIAS = Set.of(
+            "a", "al", "como", "con", "de", "del", "el", "en", "es", "la", "las", "lo", "los",
+            "mas", "no", "o", "para", "pero", "por", "que", "se", "su", "sus", "un", "una", "y"
+        );
+
+        static final class Coincidencia {
+            final long postId;
+            final double puntuacion;
+
+            Coincidencia(long postId, double puntuacion) {
+                this.postId = postId;
+                this.puntuacion = puntuacion;
+            }
+        }
+
+        private final StampedLock cerrojo = new StampedLock();
+        private final Map<String, Postings> terminos = new HashMap<>();
+        private final Map<Long, Integer> ordinales = new HashMap<>();
+        // Por ordinal (el 0 no se usa: es la casilla vacía de Postings)
+        private long[] postIds = new long[1024];
+        private int[] longitudes = new int[1024];
+        private int siguienteOrdinal = 1;
+        // Ordinales liberados por eliminar, reutilizados por crear (pila)
+        private int[] libres = new int[64];
+        private int numLibres;
+        private int documentos;
+        private long longitudTotal;
+
+        /** Indexa un post nuevo. */
+        void crear(long postId, String... textos) {
+            Map<String, Integer> frecuencias = frecuencias(textos);
+            long stamp = cerrojo.writeLock();
+            try {
+                int ordinal;
+                if (numLibres > 0) {
+                    ordinal = libres[--numLibres];
+                } else {
+                    if (siguienteOrdinal == postIds.length) {
+                        postIds = Arrays.copyOf(postIds, postIds.length * 2);
+                        longitudes = Arrays.copyOf(longitudes, longitudes.length * 2);
+                    }
+                    ordinal = siguienteOrdinal++;
+                }
+                postIds[ordinal] = postId;
+                ordinales.put(postId, ordinal);
+                documentos++;
+                sumar(ordinal, frecuencias, 1);
+            } finally {
+                cerrojo.unlockWrite(stamp);
+            }
+        }
+
+        /** Suma texto a un post ya indexado (un comentario nuevo). */
+        void añadir(long postId, String texto) {
+            Map<String, Integer> frecuencias = frecuencias(texto);
+            long stamp = cerrojo.writeLock();
+            try {
+                Integer ordinal = ordinales.get(postId);
+                if (ordinal != null) sumar(ordinal, frecuencias, 1);
+            } finally {
+                cerrojo.unlockWrite(stamp);
+            }
+        }
+
+        /** Sustituye parte del texto de un post (título y contenido al actualizar). */
+        void reemplazar(long postId, String[] anteriores, String[] nuevos) {
+            Map<String, Integer> quitar = frecuencias(anteriores);
+            Map<String, Integer> poner = frecuencias(nuevos);
+            long stamp = cerrojo.writeLock();
+            try {
+                Integer ordinal = ordinales.get(postId);
+                if (ordinal == null) return;
+                sumar(ordinal, quitar, -1);
+                sumar(ordinal, poner, 1);
+            } finally {
+                cerrojo.unlockWrite(stamp);
+            }
+        }
+
+        /** Quita un post del índice; los textos son todos los que se indexaron para él. */
+        void eliminar(long postId, String... textos) {
+            Set<String> suyos = frecuencias(textos).keySet();
+            long stamp = cerrojo.writeLock();
+            try {
+                Integer ordinal = ordinales.remove(postId);
+                if (ordinal == null) return;
+                for (String termino : suyos) {
+                    Postings lista = terminos.get(termino);
+                    if (lista != null && lista.quitar(ordinal) && lista.tamaño == 0) terminos.remove(termino);
+                }
+                longitudTotal -= longitudes[ordinal];
+                longitudes[ordinal] = 0;
+                postIds[ordinal] = 0;
+                documentos--;
+                if (numLibres == libres.length) libres = Arrays.copyOf(libres, libres.length * 2);
+                libres[numLibres++] = ordinal;
+            } finally {
+                cerrojo.unlockWrite(stamp);
+            }
+        }
+
+        private void sumar(int ordinal, Map<String, Integer> frecuencias, int signo) {
+            for (Map.Entry<String, Integer> e : frecuencias.entrySet()) {
+                int delta = signo * e.getValue();
+                Postings lista = terminos.get(e.getKey());
+                if (lista == null) {
+                    if (delta <= 0) continue;
+                    lista = new Postings();
+                    terminos.put(e.getKey(), lista);
+                }
+                lista.sumar(ordinal, delta);
+                if (lista.tamaño == 0) terminos.remove(e.getKey());
+                longitudes[ordinal] += delta;
+                longitudTotal += delta;
+            }
+        }
+
+        /**
+         * Los mejores "limite" posts para la consulta, de mayor a menor puntuación.
+         */
+        List<Coincidencia> buscar(String consulta, int limite) {
+            Set<String> consultados = frecuencias(consulta).keySet();
+            long stamp = cerrojo.readLock();
+            try {
+                if (documentos == 0 || consultados.isEmpty()) return List.of();
+                double longitudMedia = Math.max(1.0, (double) longitudTotal / documentos);
+
+                List<Postings> listas = new ArrayList<>();
+                List<Double> idfs = new ArrayList<>();
+                long candidatos = 0;
+                for (String termino : consultados) {
+                    Postings lista = terminos.get(termino);
+                    if (lista == null) continue;
+                    listas.add(lista);
+                    idfs.add(Math.log(1 + (documentos - lista.tamaño + 0.5) / (lista.tamaño + 0.5)));
+                    candidatos += lista.tamaño;
+                }
+                if (listas.isEmpty()) return List.of();
+
+                // BM25 = idf * f * (k1 + 1) / (f + k1 * (1 - b) + k1 * b * longitud / media)
+                float normaFija = (float) (K1 * (1 - B));
+                float normaPorLongitud = (float) (K1 * B / longitudMedia);
+
+                PriorityQueue<Coincidencia> mejores = new PriorityQueue<>(limite + 1, PEOR_PRIMERO);
+                // El denso recorre también los ordinales libres: solo compensa si no dominan
+                if (candidatos * 8 >= documentos && numLibres <= documentos) {
+                    // Consulta con términos frecuentes: acumulador denso por ordinal
+                    float[] puntuaciones = new float[siguienteOrdinal];
+                    for (int t = 0; t < listas.size(); t++) {
+                        Postings lista = listas.get(t);
+                        float peso = (float) (idfs.get(t) * (K1 + 1));
+                        int[] docs = lista.docs;
+                        int[] frecuencias = lista.frecuencias;
+                        for (int i = 0; i < docs.length; i++) {
+                            int d = docs[i];
+                            if (d == 0) continue;
+                            int f = frecuencias[i];
+                            puntuaciones[d] += peso * f / (f + normaFija + normaPorLongitud * longitudes[d]);
+                        }
+                    }
+                    for (int d = 1; d < puntuaciones.length; d++) {
+                        if (puntuaciones[d] > 0) ofrecer(mejores, limite, postIds[d], puntuaciones[d]);
+                    }
+                } else {
+                    Acumulador puntuaciones = new Acumulador((int) candidatos);
+                    for (int t = 0; t < listas.size(); t++) {
+                        Postings lista = listas.get(t);
+                        float peso = (float) (idfs.get(t) * (K1 + 1));
+                        for (int i = 0; i < lista.docs.length; i++) {
+                            int d = lista.docs[i];
+                            if (d == 0) continue;
+                            int f = lista.frecuencias[i];
+                            puntuaciones.sumar(d, peso * f / (f + normaFija + normaPorLongitud * longitudes[d]));
+                        }
+                    }
+                    for (int i = 0; i < puntuaciones.docs.length; i++) {
+                        int d = puntuaciones.docs[i];
+                        if (d != 0) ofrecer(mejores, limite, postIds[d], puntuaciones.valores[i]);
+                    }
+                }
+
+                List<Coincidencia> resultado = new ArrayList<>(mejores);
+                resultado.sort(PEOR_PRIMERO.reversed());
+                return resultado;
+            } finally {
+                cerrojo.unlockRead(stamp);
+            }
+        }
+
+        private static final Comparator<Coincidencia> PEOR_PRIMERO = Comparator
+            .comparingDouble((Coincidencia c) -> c.puntuacion)
+            .thenComparing(c -> -c.postId); // a igual puntuación gana el post más antiguo
+
+        private static void ofrecer(PriorityQueue<Coincidencia> mejores, int limite, long postId, double puntuacion) {
+            if (mejores.size() < limite) {
+                mejores.add(new Coincidencia(postId, puntuacion));
+            } else if (puntuacion > mejores.peek().puntuacion) {
+                mejores.poll();
+                mejores.add(new Coincidencia(postId, puntuacion));
+            }
+        }
+
+        /**
+         * Puntuaciones de una consulta con pocos candidatos: tabla hash ordinal -> puntuación
+         * dimensionada de antemano, sin objetos por entrada.
+         */
+        private static final class Acumulador {
+            final int[] docs;
+            final float[] valores;
+
+            Acumulador(int candidatos) {
+                int capacidad = Integer.highestOneBit(Math.max(candidatos, 8) * 2 - 1) << 1;
+                docs = new int[capacidad];
+                valores = new float[capacidad];
+            }
+
+            void sumar(int doc, float valor) {
+                int mascara = docs.length - 1;
+                int i = (doc ^ (doc >>> 16)) & mascara;
+                while (docs[i] != 0 && docs[i] != doc) i = (i + 1) & mascara;
+                docs[i] = doc;
+                valores[i] += valor;
+            }
+        }
+
+        /** Frecuencia de cada término en los textos. */
+        static Map<String, Integer> frecuencias(String... textos) {
+            Map<String, Integer> frecuencias = new HashMap<>();
+            for (String texto : textos) {
+                tokenizar(texto, termino -> frecuencias.merge(termino, 1, Integer::sum));
+            }
+            return frecuencias;
+        }
+
+        /**
+         * Parte el texto en términos: letras y dígitos, en minúsculas y sin diacríticos.
+         */
+        static void tokenizar(String texto, Consumer<String> destino) {
+            if (texto == null || texto.isEmpty()) return;
+            boolean ascii = true;
+            for (int i = 0; i < texto.length() && ascii; i++) ascii = texto.charAt(i) < 0x80;
+            // NFD separa la letra de su tilde, que luego se descarta
+            String plano = ascii ? texto : Normalizer.normalize(texto, Normalizer.Form.NFD);
+
+            StringBuilder termino = new StringBuilder();
+            for (int i = 0; i <= plano.length(); i++) {
+                char c = i < plano.length() ? plano.charAt(i) : ' ';
+                if (Character.getType(c) == Character.NON_SPACING_MARK) continue;
+                if (Character.isLetterOrDigit(c)) {
+                    termino.append(Character.toLowerCase(c));
+                } else if (termino.length() > 0) {
+                    String t = termino.toString();
+                    if (!VACIAS.contains(t)) destino.accept(t);
+                    termino.setLength(0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Tabla hash de direccionamiento abierto ordinal -> frecuencia (0 = casilla vacía).
+     * El borrado desplaza hacia atrás las entradas siguientes, así que no deja lápidas.
+     */
+    static final class Postings {
+        int[] docs = new int[4];
+        int[] frecuencias = new int[4];
+        int tamaño;
+
+        // Mismo esparcido que HashMap: ordinales cercanos caen en casillas cercanas, así que
+        // recorrer la tabla lee longitudes y acumuladores casi en orden
+        private int casilla(int doc) {
+            return (doc ^ (doc >>> 16)) & (docs.length - 1);
+        }
+
+        /** Suma delta a la frecuencia del documento; si llega a 0 lo quita. */
+        void sumar(int doc, int delta) {
+            int mascara = docs.length - 1;
+            int i = casilla(doc);
+            while (docs[i] != 0 && docs[i] != doc) i = (i + 1) & mascara;
+            if (docs[i] == doc) {
+                frecuencias[i] += delta;
+                if (frecuencias[i] <= 0) borrarEn(i);
+                return;
+            }
+            if (delta <= 0) return;
+            docs[i] = doc;
+            frecuencias[i] = delta;
+            if (++tamaño * 4 > docs.length * 3) crecer();
+        }
+
+        /** Quita el documento; devuelve si estaba. */
+        boolean quitar(int doc) {
+            int mascara = docs.length - 1;
+            for (int i = casilla(doc); docs[i] != 0; i = (i + 1) & mascara) {
+                if (docs[i] == doc) {
+                    borrarEn(i);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private void borrarEn(int i) {
+            int mascara = docs.length - 1;
+            for (int j = (i + 1) & mascara; docs[j] != 0; j = (j + 1) & mascara) {
+                // La entrada de j se mueve al hueco si su casilla ideal no está entre el hueco y j
+                if (((j - casilla(docs[j])) & mascara) >= ((j - i) & mascara)) {
+                    docs[i] = docs[j];
+                    frecuencias[i] = frecuencias[j];
+                    i = j;
+                }
+            }
+            docs[i] = 0;
+            frecuencias[i] = 0;
+            tamaño--;
+        }
+
+        private void crecer() {
+            int[] viejosDocs = docs;
+            int[] viejasFrecuencias = frecuencias;
+            docs = new int[viejosDocs.length * 2];
+            frecuencias = new int[viejosDocs.length * 2];
+            int mascara = docs.length - 1;
+            for (int k = 0; k < viejosDocs.length; k++) {
+                if (viejosDocs[k] == 0) continue;
+                int i = casilla(viejosDocs[k]);
+                while (docs[i] != 0) i = (i + 1) & mascara;
+                docs[i] = viejosDocs[k];
+                frecuencias[i] = viejasFrecuencias[k];
+            }
+        }
     }
 
     // ==========================================
@@ -135,9 +768,39 @@ public class BlogApp {
     // ==========================================
 
     static class PostController {
-        public static void obtenerTodos(Context ctx) { ctx.json(PostService.obtenerTodos()); }
-        public static void obtenerUno(Context ctx) {
-            ctx.json(PostService.obtenerPorId(ctx.pathParamAsClass("id", Long.class).get()));
+        private static final int LIMITE_BUSQUEDA = 20;
+        private static final int LIMITE_BUSQUEDA_MAXIMO = 100;
+
+        /**
+         * Con ?fields=id,titulo,... o ?vista=resumen solo se escriben esos campos;
+         * sin ellos se devuelven los posts completos como siempre.
+         */
+        public static void obtenerTodos(Context ctx) throws IOException {
+            Set<Proyeccion.Campo> campos = Proyeccion.campos(ctx.queryParam("fields"), ctx.queryParam("vista"));
+            if (campos == null) {
+                ctx.json(PostService.obtenerTodos());
+                return;
+            }
+            ctx.contentType(ContentType.APPLICATION_JSON);
+            Proyeccion.escribir(PostService.todos(), campos, ctx.outputStream());
+        }
+        public static void buscar(Context ctx) {
+            String q = ctx.queryParam("q");
+            if (q == null || q.isBlank()) throw new IllegalArgumentException("El parámetro q es obligatorio");
+            int limite = ctx.queryParamAsClass("limit", Integer.class)
+                .check(l -> l >= 1 && l <= LIMITE_BUSQUEDA_MAXIMO, "El parámetro limit debe estar entre 1 y " + LIMITE_BUSQUEDA_MAXIMO)
+                .getOrDefault(LIMITE_BUSQUEDA);
+            ctx.json(PostService.buscar(q, limite));
+        }
+        public static void obtenerUno(Context ctx) throws IOException {
+            Post p = PostService.obtenerPorId(ctx.pathParamAsClass("id", Long.class).get());
+            Set<Proyeccion.Campo> campos = Proyeccion.campos(ctx.queryParam("fields"), ctx.queryParam("vista"));
+            if (campos == null) {
+                ctx.json(p);
+                return;
+            }
+            ctx.contentType(ContentType.APPLICATION_JSON);
+            Proyeccion.escribir(p, campos, ctx.outputStream());
         }
         public static void crear(Context ctx) {
             ctx.status(201).json(PostService.crear(ctx.bodyAsClass(Post.class)));
@@ -153,9 +816,32 @@ public class BlogApp {
     }
 
     static class CommentController {
+        private static final int LIMITE_POR_DEFECTO = 50;
+        private static final int LIMITE_MAXIMO = 500;
+
+        /**
+         * Sin parámetros devuelve todos los comentarios como antes.
+         * Con ?limit= y/o ?after= devuelve {"comentarios":[...],"siguiente":n}: "siguiente" es la
+         * posición tras el último devuelto y sirve también para recoger después los nuevos.
+         */
         public static void obtenerComentarios(Context ctx) {
             Long id = ctx.pathParamAsClass("id", Long.class).get();
-            ctx.json(PostService.obtenerPorId(id).comentarios);
+            RegistroComentarios comentarios = PostService.obtenerPorId(id).comentarios;
+            if (ctx.queryParam("limit") == null && ctx.queryParam("after") == null) {
+                ctx.json(comentarios.desde(0, Integer.MAX_VALUE));
+                return;
+            }
+            int limite = ctx.queryParamAsClass("limit", Integer.class)
+                .check(l -> l >= 1 && l <= LIMITE_MAXIMO, "El parámetro limit debe estar entre 1 y " + LIMITE_MAXIMO)
+                .getOrDefault(LIMITE_POR_DEFECTO);
+            int despuesDe = ctx.queryParamAsClass("after", Integer.class)
+                .check(a -> a >= 0, "El parámetro after no puede ser negativo")
+                .getOrDefault(0);
+            List<Comentario> pagina = comentarios.desde(despuesDe, limite);
+            Map<String, Object> respuesta = new LinkedHashMap<>();
+            respuesta.put("comentarios", pagina);
+            respuesta.put("siguiente", despuesDe + pagina.size());
+            ctx.json(respuesta);
         }
         public static void añadirComentario(Context ctx) {
             Long id = ctx.pathParamAsClass("id", Long.class).get();
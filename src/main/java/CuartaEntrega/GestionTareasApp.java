@@ -1,12 +1,16 @@
 import io.javalin.Javalin;
 import io.javalin.http.Context;
 import io.javalin.http.HttpStatus;
+import metricas.Metricas;
+import registro.RegistroAccesos;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Aplicación de Gestión de Tareas con Interfaz Web integrada para pruebas.
@@ -14,11 +18,25 @@ import java.util.concurrent.atomic.AtomicLong;
 public class GestionTareasApp {
 
     public static void main(String[] args) {
+        crearApp().start(7070);
+    }
+
+    /**
+     * Crea la aplicación con todas sus rutas, sin arrancar el servidor.
+     */
+    public static Javalin crearApp() {
+        // Registro de accesos asíncrono: los hilos de Jetty no esperan a la E/S del log
+        RegistroAccesos accesos = RegistroAccesos.desdePropiedades("tareas");
         Javalin app = Javalin.create(config -> {
             config.requestLogger.http((ctx, ms) -> {
-                System.out.println(ctx.method() + " " + ctx.path() + " - " + ctx.status() + " (" + ms + "ms)");
+                Metricas.registrar(ctx, ms);
+                accesos.registrar(ctx, ms);
             });
-        }).start(7070);
+        });
+        app.events(eventos -> eventos.serverStopped(accesos::close));
+
+        // --- MÉTRICAS (GET /metrics) ---
+        accesos.publicarMetricas(Metricas.instalar(app));
 
         // --- INTERFAZ WEB PARA PRUEBAS (Carga esto en http://localhost:7070) ---
         app.get("/", ctx -> {
@@ -62,8 +80,10 @@ public class GestionTareasApp {
 
         // --- ENDPOINTS DE LA API ---
         app.get("/tareas", TareaController::obtenerTodas);
+        app.get("/tareas/resumen", TareaController::obtenerResumen);
         app.get("/tareas/{id}", TareaController::obtenerPorId);
         app.post("/tareas", TareaController::crear);
+        app.post("/tareas/_batch", TareaController::ejecutarLote);
         app.put("/tareas/{id}", TareaController::actualizar);
         app.delete("/tareas/{id}", TareaController::eliminar);
         app.patch("/tareas/{id}/completar", TareaController::marcarCompletada);
@@ -75,6 +95,7 @@ public class GestionTareasApp {
         app.exception(IllegalArgumentException.class, (e, ctx) -> {
             ctx.status(HttpStatus.BAD_REQUEST).json(Map.of("error", e.getMessage()));
         });
+        return app;
     }
 
     // ==========================================
@@ -109,12 +130,50 @@ public class GestionTareasApp {
         public void setFechaCreacion(String fechaCreacion) { this.fechaCreacion = fechaCreacion; }
     }
 
+    /** Cuerpo de POST /tareas/_batch. */
+    static class LoteTareas {
+        private boolean atomica;
+        private List<OperacionTarea> operaciones;
+
+        public boolean isAtomica() { return atomica; }
+        public void setAtomica(boolean atomica) { this.atomica = atomica; }
+        public List<OperacionTarea> getOperaciones() { return operaciones; }
+        public void setOperaciones(List<OperacionTarea> operaciones) { this.operaciones = operaciones; }
+    }
+
+    /** Una operación del lote: crear (tarea), actualizar (id, tarea), completar (id) o eliminar (id). */
+    static class OperacionTarea {
+        private String op;
+        private Long id;
+        private Tarea tarea;
+
+        public String getOp() { return op; }
+        public void setOp(String op) { this.op = op; }
+        public Long getId() { return id; }
+        public void setId(Long id) { this.id = id; }
+        public Tarea getTarea() { return tarea; }
+        public void setTarea(Tarea tarea) { this.tarea = tarea; }
+    }
+
     // ==========================================
     // SERVICIO
     // ==========================================
+    /**
+     * Tareas por ID más un índice por estado (pendientes / completadas) ordenado por ID, que
+     * es el orden de creación: una página de un estado es un tailMap desde el cursor, sin
+     * recorrer las tareas del otro estado. Los contadores de cada estado son LongAdder, así
+     * que /tareas/resumen no recorre nada y las escrituras no compiten por un mismo contador.
+     *
+     * Los cambios de estado (crear, completar, eliminar) de una tarea se hacen con el cerrojo
+     * de la propia tarea, de modo que una tarea está siempre en un solo índice.
+     */
     static class TareaService {
         private static final Map<Long, Tarea> tareas = new ConcurrentHashMap<>();
         private static final AtomicLong idGenerator = new AtomicLong(1);
+        private static final ConcurrentSkipListMap<Long, Tarea> pendientes = new ConcurrentSkipListMap<>();
+        private static final ConcurrentSkipListMap<Long, Tarea> completadas = new ConcurrentSkipListMap<>();
+        private static final LongAdder numeroPendientes = new LongAdder();
+        private static final LongAdder numeroCompletadas = new LongAdder();
 
         static {
             save(new Tarea(null, "Estudiar Javalin", "Completar ejercicios prácticos"));
@@ -125,9 +184,49 @@ public class GestionTareasApp {
             return new ArrayList<>(tareas.values());
         }
 
+        /**
+         * Tareas con ID mayor que "after" en orden de creación, como mucho "limit"; con
+         * completada = null se intercalan los dos índices.
+         */
+        public static List<Tarea> findPage(Boolean completada, long after, int limit) {
+            List<Tarea> pagina = new ArrayList<>(Math.min(limit, 1024));
+            if (completada != null) {
+                Iterator<Tarea> it = indice(completada).tailMap(after, false).values().iterator();
+                while (pagina.size() < limit && it.hasNext()) pagina.add(it.next());
+                return pagina;
+            }
+            Iterator<Tarea> p = pendientes.tailMap(after, false).values().iterator();
+            Iterator<Tarea> c = completadas.tailMap(after, false).values().iterator();
+            Tarea siguienteP = p.hasNext() ? p.next() : null;
+            Tarea siguienteC = c.hasNext() ? c.next() : null;
+            while (pagina.size() < limit && (siguienteP != null || siguienteC != null)) {
+                // Una tarea completada mientras se recorre puede verse en los dos índices
+                if (siguienteP != null && siguienteC != null && siguienteP.getId().equals(siguienteC.getId())) {
+                    siguienteP = p.hasNext() ? p.next() : null;
+                } else if (siguienteC == null || (siguienteP != null && siguienteP.getId() < siguienteC.getId())) {
+                    pagina.add(siguienteP);
+                    siguienteP = p.hasNext() ? p.next() : null;
+                } else {
+                    pagina.add(siguienteC);
+                    siguienteC = c.hasNext() ? c.next() : null;
+                }
+            }
+            return pagina;
+        }
+
+        /** Número de tareas en un estado, sin recorrerlas. */
+        public static long count(boolean completada) {
+            return (completada ? numeroCompletadas : numeroPendientes).sum();
+        }
+
+        private static ConcurrentSkipListMap<Long, Tarea> indice(boolean completada) {
+            return completada ? completadas : pendientes;
+        }
+
         public static Tarea findById(Long id) {
-            if (!tareas.containsKey(id)) throw new NoSuchElementException("Tarea no encontrada");
-            return tareas.get(id);
+            Tarea t = tareas.get(id);
+            if (t == null) throw new NoSuchElementException("Tarea no encontrada");
+            return t;
         }
 
         public static Tarea save(Tarea nuevaTarea) {
@@ -138,35 +237,169 @@ public class GestionTareasApp {
             nuevaTarea.setId(id);
             nuevaTarea.setCompletada(false);
             nuevaTarea.setFechaCreacion(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-            tareas.put(id, nuevaTarea);
+            synchronized (nuevaTarea) {
+                tareas.put(id, nuevaTarea);
+                pendientes.put(id, nuevaTarea);
+                numeroPendientes.increment();
+            }
             return nuevaTarea;
         }
 
         public static Tarea update(Long id, Tarea datos) {
             Tarea t = findById(id);
-            t.setTitulo(datos.getTitulo());
-            t.setDescripcion(datos.getDescripcion());
+            synchronized (t) {
+                t.setTitulo(datos.getTitulo());
+                t.setDescripcion(datos.getDescripcion());
+            }
             return t;
         }
 
-        public static void delete(Long id) {
-            if (!tareas.containsKey(id)) throw new NoSuchElementException("ID inexistente");
-            tareas.remove(id);
+        /** Como update sobre "t", pero devuelve una copia con el título y la descripción anteriores. */
+        static Tarea replace(Long id, Tarea t, Tarea datos) {
+            synchronized (t) {
+                if (tareas.get(id) != t) throw new NoSuchElementException("Tarea no encontrada");
+                Tarea previa = new Tarea(id, t.getTitulo(), t.getDescripcion());
+                t.setTitulo(datos.getTitulo());
+                t.setDescripcion(datos.getDescripcion());
+                return previa;
+            }
+        }
+
+        /**
+         * Deshace un replace (al revertir un lote) solo si la tarea conserva lo que escribió
+         * el lote: si otra petición la modificó entretanto, su escritura se mantiene.
+         */
+        static void revert(Long id, Tarea escrita, Tarea previa) {
+            Tarea t = tareas.get(id);
+            if (t == null) return;
+            synchronized (t) {
+                if (tareas.get(id) != t || !mismoContenido(t, escrita)) return;
+                t.setTitulo(previa.getTitulo());
+                t.setDescripcion(previa.getDescripcion());
+            }
+        }
+
+        /**
+         * Deshace un save (al revertir un lote): elimina la tarea solo si sigue pendiente y
+         * como se creó; si otra petición la modificó entretanto, se conserva.
+         */
+        static void discard(Tarea creada, Tarea original) {
+            Long id = creada.getId();
+            synchronized (creada) {
+                if (creada.isCompletada() || !mismoContenido(creada, original)) return;
+                if (!tareas.remove(id, creada)) return;
+                pendientes.remove(id);
+                numeroPendientes.decrement();
+            }
+        }
+
+        private static boolean mismoContenido(Tarea t, Tarea otra) {
+            return Objects.equals(t.getTitulo(), otra.getTitulo()) && Objects.equals(t.getDescripcion(), otra.getDescripcion());
+        }
+
+        public static Tarea delete(Long id) {
+            Tarea t = tareas.get(id);
+            if (t == null) throw new NoSuchElementException("ID inexistente");
+            synchronized (t) {
+                if (!tareas.remove(id, t)) throw new NoSuchElementException("ID inexistente");
+                indice(t.isCompletada()).remove(id);
+                (t.isCompletada() ? numeroCompletadas : numeroPendientes).decrement();
+            }
+            return t;
         }
 
         public static Tarea markAsCompleted(Long id) {
             Tarea t = findById(id);
-            t.setCompletada(true);
+            complete(id, t);
             return t;
         }
+
+        /** Pasa la tarea a completadas; false si ya lo estaba. */
+        static boolean complete(Long id, Tarea t) {
+            synchronized (t) {
+                if (tareas.get(id) != t) throw new NoSuchElementException("Tarea no encontrada");
+                if (t.isCompletada()) return false;
+                t.setCompletada(true);
+                pendientes.remove(id);
+                completadas.put(id, t);
+                numeroPendientes.decrement();
+                numeroCompletadas.increment();
+                return true;
+            }
+        }
+
+        /** Deshace un complete (al revertir un lote). */
+        static void reopen(Long id) {
+            Tarea t = tareas.get(id);
+            if (t == null) return;
+            synchronized (t) {
+                if (tareas.get(id) != t || !t.isCompletada()) return;
+                t.setCompletada(false);
+                completadas.remove(id);
+                pendientes.put(id, t);
+                numeroCompletadas.decrement();
+                numeroPendientes.increment();
+            }
+        }
+
+        /** Vuelve a insertar una tarea eliminada con su mismo ID (al revertir un lote). */
+        static void restore(Tarea t) {
+            synchronized (t) {
+                if (tareas.putIfAbsent(t.getId(), t) != null) return;
+                indice(t.isCompletada()).put(t.getId(), t);
+                (t.isCompletada() ? numeroCompletadas : numeroPendientes).increment();
+            }
+        }
     }
 
     // ==========================================
     // CONTROLADOR
     // ==========================================
     static class TareaController {
+        private static final int LIMITE_POR_DEFECTO = 100;
+        private static final int LIMITE_MAXIMO = 1000;
+        private static final int OPERACIONES_MAXIMAS = 1000;
+
+        /**
+         * ?completada=true|false filtra por estado con su índice. Con ?limit= y/o ?after=
+         * devuelve {"tareas":[...],"siguiente":id} en orden de creación, donde "siguiente" es
+         * el ID de la última tarea devuelta (el ?after= de la página siguiente).
+         */
         public static void obtenerTodas(Context ctx) {
-            ctx.json(TareaService.findAll());
+            String estado = ctx.queryParam("completada");
+            Boolean completada = null;
+            if (estado != null) {
+                if (!estado.equals("true") && !estado.equals("false")) {
+                    throw new IllegalArgumentException("El parámetro completada debe ser true o false");
+                }
+                completada = Boolean.valueOf(estado);
+            }
+            if (ctx.queryParam("limit") == null && ctx.queryParam("after") == null) {
+                ctx.json(completada == null ? TareaService.findAll() : TareaService.findPage(completada, 0, Integer.MAX_VALUE));
+                return;
+            }
+            int limite = ctx.queryParamAsClass("limit", Integer.class)
+                .check(l -> l >= 1 && l <= LIMITE_MAXIMO, "El parámetro limit debe estar entre 1 y " + LIMITE_MAXIMO)
+                .getOrDefault(LIMITE_POR_DEFECTO);
+            long despuesDe = ctx.queryParamAsClass("after", Long.class)
+                .check(a -> a >= 0, "El parámetro after no puede ser negativo")
+                .getOrDefault(0L);
+            List<Tarea> pagina = TareaService.findPage(completada, despuesDe, limite);
+            Map<String, Object> respuesta = new LinkedHashMap<>();
+            respuesta.put("tareas", pagina);
+            respuesta.put("siguiente", pagina.isEmpty() ? despuesDe : pagina.get(pagina.size() - 1).getId());
+            ctx.json(respuesta);
+        }
+
+        /** Tareas pendientes y completadas, leídas de los contadores. */
+        public static void obtenerResumen(Context ctx) {
+            long pendientes = TareaService.count(false);
+            long completadas = TareaService.count(true);
+            Map<String, Long> resumen = new LinkedHashMap<>();
+            resumen.put("pendientes", pendientes);
+            resumen.put("completadas", completadas);
+            resumen.put("total", pendientes + completadas);
+            ctx.json(resumen);
         }
         public static void obtenerPorId(Context ctx) {
             Long id = Long.parseLong(ctx.pathParam("id"));
@@ -189,5 +422,183 @@ public class GestionTareasApp {
             Long id = Long.parseLong(ctx.pathParam("id"));
             ctx.json(TareaService.markAsCompleted(id));
         }
+
+        /**
+         * Varias operaciones en una petición, en orden:
+         * {"atomica":false,"operaciones":[{"op":"crear","tarea":{...}},{"op":"actualizar","id":3,"tarea":{...}},
+         *  {"op":"completar","id":4},{"op":"eliminar","id":5}]}
+         * Cada operación tiene su resultado, como en /api/productos/_bulk:
+         * {"resultados":[{"indice":0,"estado":201,"id":9,"tarea":{...}},{"indice":1,"estado":404,"error":"..."}],
+         *  "aplicadas":1,"fallidas":1}
+         *
+         * Con "atomica":true, un error de forma rechaza el lote antes de tocar ninguna tarea y la
+         * primera operación que falla revierte las anteriores en orden inverso. La respuesta es
+         * 409, y las demás operaciones llevan estado 424. Es todo o nada, pero no aislado: otras
+         * peticiones pueden ver los cambios intermedios antes de revertirlos.
+         */
+        public static void ejecutarLote(Context ctx) {
+            LoteTareas lote = ctx.bodyAsClass(LoteTareas.class);
+            List<OperacionTarea> operaciones = lote.getOperaciones();
+            if (operaciones == null || operaciones.isEmpty()) {
+                throw new IllegalArgumentException("El lote no tiene operaciones");
+            }
+            if (operaciones.size() > OPERACIONES_MAXIMAS) {
+                throw new IllegalArgumentException("El lote admite como mucho " + OPERACIONES_MAXIMAS + " operaciones");
+            }
+            Deque<Runnable> deshacer = lote.isAtomica() ? new ArrayDeque<>() : null;
+            List<Map<String, Object>> resultados = new ArrayList<>(operaciones.size());
+            Map<String, Object> fallo = null;
+            if (lote.isAtomica()) {
+                for (int i = 0; i < operaciones.size() && fallo == null; i++) {
+                    String error = validar(operaciones.get(i));
+                    if (error != null) fallo = resultado(i, 400, null, null, error);
+                }
+            }
+            int fallidas = 0;
+            try {
+                for (int i = 0; i < operaciones.size() && fallo == null; i++) {
+                    Map<String, Object> r = ejecutar(i, operaciones.get(i), deshacer);
+                    resultados.add(r);
+                    if ((int) r.get("estado") >= 400) {
+                        fallidas++;
+                        if (lote.isAtomica()) fallo = r;
+                    }
+                }
+            } catch (RuntimeException | Error e) {
+                // Un error inesperado (500) tampoco puede dejar aplicada la mitad de un lote atómico
+                if (deshacer != null) {
+                    try {
+                        revertir(deshacer);
+                    } catch (RuntimeException r) {
+                        e.addSuppressed(r);
+                    }
+                }
+                throw e;
+            }
+
+            Map<String, Object> respuesta = new LinkedHashMap<>();
+            if (fallo != null) {
+                revertir(deshacer);
+                int indice = (int) fallo.get("indice");
+                int ejecutadas = resultados.size();
+                resultados.clear();
+                for (int i = 0; i < operaciones.size(); i++) {
+                    resultados.add(i == indice ? fallo : resultado(i, 424, null, null,
+                        (i < ejecutadas ? "Revertida" : "No ejecutada") + ": falló la operación " + indice));
+                }
+                respuesta.put("resultados", resultados);
+                respuesta.put("aplicadas", 0);
+                respuesta.put("fallidas", operaciones.size());
+                ctx.status(HttpStatus.CONFLICT).json(respuesta);
+                return;
+            }
+            respuesta.put("resultados", resultados);
+            respuesta.put("aplicadas", operaciones.size() - fallidas);
+            respuesta.put("fallidas", fallidas);
+            ctx.json(respuesta);
+        }
+
+        /**
+         * Deshace en orden inverso; si una reversión falla sigue con las demás y lanza la primera al final.
+         */
+        private static void revertir(Deque<Runnable> deshacer) {
+            RuntimeException primera = null;
+            while (!deshacer.isEmpty()) {
+                try {
+                    deshacer.pop().run();
+                } catch (RuntimeException e) {
+                    if (primera == null) primera = e;
+                    else primera.addSuppressed(e);
+                }
+            }
+            if (primera != null) throw primera;
+        }
+
+        /**
+         * Ejecuta una operación contra TareaService; si "deshacer" no es null apila cómo revertirla.
+         */
+        private static Map<String, Object> ejecutar(int indice, OperacionTarea op, Deque<Runnable> deshacer) {
+            String error = validar(op);
+            if (error != null) return resultado(indice, 400, null, null, error);
+            Long id = op.getId();
+            try {
+                switch (op.getOp()) {
+                    case "crear": {
+                        Tarea t = TareaService.save(op.getTarea());
+                        Tarea original = new Tarea(t.getId(), t.getTitulo(), t.getDescripcion());
+                        if (deshacer != null) deshacer.push(() -> TareaService.discard(t, original));
+                        return resultado(indice, 201, t.getId(), t, null);
+                    }
+                    case "actualizar": {
+                        Tarea t = TareaService.findById(id);
+                        Tarea previa = TareaService.replace(id, t, op.getTarea());
+                        Tarea escrita = new Tarea(id, op.getTarea().getTitulo(), op.getTarea().getDescripcion());
+                        if (deshacer != null) deshacer.push(() -> TareaService.revert(id, escrita, previa));
+                        return resultado(indice, 200, id, t, null);
+                    }
+                    case "completar": {
+                        Tarea t = TareaService.findById(id);
+                        boolean cambiada = TareaService.complete(id, t);
+                        if (deshacer != null && cambiada) deshacer.push(() -> TareaService.reopen(id));
+                        return resultado(indice, 200, id, t, null);
+                    }
+                    default: {
+                        Tarea t = TareaService.delete(id);
+                        if (deshacer != null) deshacer.push(() -> TareaService.restore(t));
+                        return resultado(indice, 204, id, null, null);
+                    }
+                }
+            } catch (NoSuchElementException e) {
+                return resultado(indice, 404, id, null, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                return resultado(indice, 400, id, null, e.getMessage());
+            }
+        }
+
+        /**
+         * Errores de forma de una operación, sin consultar las tareas.
+         *
+         * @return Mensaje de error o null si la operación se puede ejecutar.
+         */
+        private static String validar(OperacionTarea op) {
+            if (op == null || op.getOp() == null) return "Falta el campo op";
+            switch (op.getOp()) {
+                case "crear":
+                    if (op.getTarea() == null) return "Falta la tarea";
+                    if (op.getTarea().getTitulo() == null || op.getTarea().getTitulo().isEmpty()) {
+                        return "El título es obligatorio";
+                    }
+                    return null;
+                case "actualizar":
+                    if (op.getTarea() == null) return "Falta la tarea";
+                    return op.getId() == null ? "Falta el id" : null;
+                case "completar":
+                case "eliminar":
+                    return op.getId() == null ? "Falta el id" : null;
+                default:
+                    return "Operación desconocida: " + op.getOp() + " (crear, actualizar, completar o eliminar)";
+            }
+        }
+
+        private static Map<String, Object> resultado(int indice, int estado, Long id, Tarea tarea, String error) {
+            Map<String, Object> r = new LinkedHashMap<>();
+            r.put("indice", indice);
+            r.put("estado", estado);
+            if (id != null) r.put("id", id);
+            if (tarea != null) r.put("tarea", copia(tarea));
+            if (error != null) r.put("error", error);
+            return r;
+        }
+
+        /** La tarea tal como queda tras su operación; las siguientes del lote pueden cambiarla. */
+        private static Tarea copia(Tarea t) {
+            Tarea c = new Tarea();
+            c.setId(t.getId());
+            c.setTitulo(t.getTitulo());
+            c.setDescripcion(t.getDescripcion());
+            c.setCompletada(t.isCompletada());
+            c.setFechaCreacion(t.getFechaCreacion());
+            return c;
+        }
     }
 }
\ No newline at end of file
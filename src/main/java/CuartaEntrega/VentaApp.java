@@ -1,15 +1,48 @@
 package CuartaEntrega;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.javalin.Javalin;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 import io.javalin.http.HttpStatus;
+import metricas.Metricas;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import registro.RegistroAccesos;
 
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 /**
@@ -19,32 +52,59 @@ import java.util.stream.Collectors;
 public class VentaApp {
 
     public static void main(String[] args) {
+        crearApp().start(7070);
+
+        // --- Datos iniciales ---
+        seedData();
+
+        System.out.println("Servidor de Estadísticas activo en http://localhost:7070");
+    }
+
+    /**
+     * Crea la aplicación con todas sus rutas, sin arrancar el servidor.
+     */
+    public static Javalin crearApp() {
+        // Registro de accesos asíncrono: los hilos de Jetty no esperan a la E/S del log
+        RegistroAccesos accesos = RegistroAccesos.desdePropiedades("ventas");
         Javalin app = Javalin.create(config -> {
             config.requestLogger.http((ctx, ms) -> {
-                System.out.println(ctx.method() + " " + ctx.path() + " - " + ctx.status());
+                Metricas.registrar(ctx, ms);
+                accesos.registrar(ctx, ms);
             });
-        }).start(7070);
+        });
+        app.events(eventos -> eventos.serverStopped(accesos::close));
 
-        // --- Datos iniciales ---
-        seedData();
+        // --- Métricas (GET /metrics) ---
+        Metricas metricas = Metricas.instalar(app);
+        accesos.publicarMetricas(metricas);
+        VentaService.cacheEstadisticas.publicarMetricas(metricas);
+        VentaService.difusor.publicarMetricas(metricas);
 
         // --- Interfaz Web ---
         app.get("/", VentaApp::servirInterfaz);
 
         // --- Endpoints de Ventas ---
         app.get("/ventas", VentaController::obtenerTodas);
+        app.get("/ventas/query", VentaController::consultar);
         app.get("/ventas/{id}", VentaController::obtenerUna);
         app.post("/ventas", VentaController::crear);
+        app.post("/ventas/import", VentaController::importar);
 
         // --- Endpoint de Estadísticas ---
         app.get("/estadisticas", VentaController::obtenerEstadisticas);
+        app.get("/estadisticas/stream", ctx -> VentaService.difusor.suscribir(ctx));
+        app.get("/estadisticas/aprox", VentaController::obtenerAproximadas);
+        app.get("/estadisticas/productos", VentaController::obtenerTotalesProductos);
+        app.get("/estadisticas/productos/{producto}", VentaController::obtenerTotalesProducto);
 
         // --- Manejo de Errores ---
         app.exception(NoSuchElementException.class, (e, ctx) -> {
             ctx.status(404).json(Map.of("error", e.getMessage()));
         });
-        
-        System.out.println("Servidor de Estadísticas activo en http://localhost:7070");
+        app.exception(IllegalArgumentException.class, (e, ctx) -> {
+            ctx.status(400).json(Map.of("error", e.getMessage()));
+        });
+        return app;
     }
 
     private static void seedData() {
@@ -62,7 +122,8 @@ public class VentaApp {
         public int cantidad;
         public double precioUnitario;
         public double total;
-        public String fecha; // YYYY-MM-DD para filtrado fácil
+        public String fecha; // YYYY-MM-DD
+        int dia; // fecha como epoch-day, calculada una vez al registrar (no se serializa)
 
         public Venta() {}
         public Venta(String producto, int cantidad, double precioUnitario) {
@@ -88,29 +149,230 @@ public class VentaApp {
         }
     }
 
+    static class TotalesProducto {
+        public String producto;
+        public long numeroTransacciones;
+        public long unidades;
+        public double totalVentas;
+        public double ventaPromedio;
+
+        public TotalesProducto(String producto, long numeroTransacciones, long unidades, double totalVentas) {
+            this.producto = producto;
+            this.numeroTransacciones = numeroTransacciones;
+            this.unidades = unidades;
+            this.totalVentas = totalVentas;
+            this.ventaPromedio = numeroTransacciones == 0 ? 0.0 : totalVentas / numeroTransacciones;
+        }
+    }
+
     // ==========================================
     // SERVICIO (Lógica de Agregación)
     // ==========================================
     static class VentaService {
         private static final Map<Long, Venta> ventas = new ConcurrentHashMap<>();
         private static final AtomicLong idGenerator = new AtomicLong(1);
+        // Índice temporal: epoch-day -> ventas y agregados de ese día, en orden cronológico
+        private static final ConcurrentSkipListMap<Integer, GrupoVentas> porDia = new ConcurrentSkipListMap<>();
+        // Índice de productos: nombre en minúsculas -> ventas y agregados de ese producto
+        private static final Map<String, GrupoVentas> porProducto = new ConcurrentHashMap<>();
+        private static final Agregado global = new Agregado();
+        // Bocetos aproximados por día y globales (GET /estadisticas/aprox)
+        private static final ConcurrentSkipListMap<Integer, Bocetos> bocetosPorDia = new ConcurrentSkipListMap<>();
+        private static final Bocetos bocetosGlobales = new Bocetos();
+        // Copia columnar para GET /ventas/query
+        static final TablaVentas tabla = new TablaVentas();
+        // Estadísticas en vivo: registrar solo avisa, el difusor calcula una vez por intervalo
+        static final DifusorEstadisticas difusor = DifusorEstadisticas.desdePropiedades(() -> calcularEstadisticas(null, null));
+        // Estadísticas por rango de fechas ya calculadas; cada venta invalida los rangos de su día
+        static final CacheEstadisticas cacheEstadisticas = CacheEstadisticas.desdePropiedades(VentaService::calcularRango);
 
         public static Venta registrar(Venta v) {
+            // La fecha se valida y se convierte una sola vez; las consultas comparan enteros
+            if (v.fecha == null) {
+                LocalDate hoy = LocalDate.now();
+                v.fecha = hoy.toString();
+                v.dia = (int) hoy.toEpochDay();
+            } else {
+                v.dia = diaDe(v.fecha, "fecha");
+            }
             v.id = idGenerator.getAndIncrement();
             v.total = v.cantidad * v.precioUnitario;
-            if (v.fecha == null) v.fecha = LocalDate.now().toString();
             ventas.put(v.id, v);
+            porDia.computeIfAbsent(v.dia, d -> new GrupoVentas()).registrar(v);
+            cacheEstadisticas.invalidar(v.dia);
+            porProducto.computeIfAbsent(claveProducto(v.producto), p -> new GrupoVentas()).registrar(v);
+            global.sumar(v);
+            bocetosPorDia.computeIfAbsent(v.dia, d -> new Bocetos()).sumar(v);
+            bocetosGlobales.sumar(v);
+            tabla.agregar(v);
+            difusor.publicar();
             return v;
         }
 
+        /**
+         * Registra un lote de ventas con la fecha ya validada (fecha y dia asignados): los ids
+         * se reservan en un bloque con una sola operación atómica y cada día, producto, el
+         * agregado global y la tabla columnar se actualizan con un cerrojo por lote.
+         */
+        static void registrarLote(List<Venta> lote) {
+            if (lote.isEmpty()) return;
+            long id = idGenerator.getAndAdd(lote.size());
+            Map<Integer, List<Venta>> dias = new HashMap<>();
+            Map<String, List<Venta>> productos = new HashMap<>();
+            for (Venta v : lote) {
+                v.id = id++;
+                v.total = v.cantidad * v.precioUnitario;
+                ventas.put(v.id, v);
+                dias.computeIfAbsent(v.dia, d -> new ArrayList<>()).add(v);
+                productos.computeIfAbsent(claveProducto(v.producto), p -> new ArrayList<>()).add(v);
+            }
+            dias.forEach((dia, delDia) -> {
+                porDia.computeIfAbsent(dia, d -> new GrupoVentas()).registrarTodas(delDia);
+                bocetosPorDia.computeIfAbsent(dia, d -> new Bocetos()).sumarTodas(delDia);
+            });
+            cacheEstadisticas.invalidar(dias.keySet());
+            productos.forEach((clave, delProducto) -> porProducto.computeIfAbsent(clave, p -> new GrupoVentas()).registrarTodas(delProducto));
+            global.sumarTodas(lote);
+            bocetosGlobales.sumarTodas(lote);
+            tabla.agregarTodas(lote);
+            difusor.publicar();
+        }
+
+        public static ResultadoConsulta consultar(Consulta consulta) {
+            return tabla.consultar(consulta);
+        }
+
         public static List<Venta> obtenerTodas() {
             return new ArrayList<>(ventas.values());
         }
 
+        /**
+         * Ventas de [inicio, fin] (ambos opcionales) en orden cronológico; solo recorre esos días.
+         */
+        public static List<Venta> obtenerRango(String inicio, String fin) {
+            List<Venta> resultado = new ArrayList<>();
+            for (GrupoVentas dia : dias(inicio, fin)) dia.copiarEn(resultado);
+            return resultado;
+        }
+
+        /**
+         * Ventas de un producto (sin distinguir mayúsculas), opcionalmente dentro de [inicio, fin].
+         */
+        public static List<Venta> obtenerPorProducto(String producto, String inicio, String fin) {
+            GrupoVentas grupo = porProducto.get(claveProducto(producto));
+            Integer desde = inicio == null ? null : diaDe(inicio, "fecha_inicio");
+            Integer hasta = fin == null ? null : diaDe(fin, "fecha_fin");
+            List<Venta> resultado = new ArrayList<>();
+            if (grupo != null) grupo.copiarEn(resultado, desde, hasta);
+            return resultado;
+        }
+
+        /** Página de las ventas de un producto a partir de la posición "despuesDe". */
+        public static List<Venta> paginaPorProducto(String producto, int despuesDe, int limite) {
+            GrupoVentas grupo = porProducto.get(claveProducto(producto));
+            return grupo == null ? List.of() : grupo.pagina(despuesDe, limite);
+        }
+
+        /** Totales de un producto leídos de su agregado, sin recorrer ventas. */
+        public static TotalesProducto totalesProducto(String producto) {
+            GrupoVentas grupo = porProducto.get(claveProducto(producto));
+            if (grupo == null) throw new NoSuchElementException("Producto sin ventas");
+            return grupo.agregado.totalesProducto();
+        }
+
+        public static List<TotalesProducto> totalesPorProducto() {
+            List<TotalesProducto> totales = new ArrayList<>();
+            for (GrupoVentas grupo : porProducto.values()) totales.add(grupo.agregado.totalesProducto());
+            totales.sort(Comparator.comparing((TotalesProducto t) -> t.totalVentas).reversed());
+            return totales;
+        }
+
+        static String claveProducto(String producto) {
+            return producto == null ? "" : producto.toLowerCase(Locale.ROOT);
+        }
+
+        /**
+         * Estadísticas del rango [inicio, fin] (ambos opcionales). Sin fechas se lee el agregado
+         * global, que ya está calculado y que cualquier venta invalidaría; con fechas se pasa
+         * por la caché de rangos.
+         */
         public static Estadisticas calcularEstadisticas(String inicio, String fin) {
+            if (inicio == null && fin == null) {
+                return global.estadisticas();
+            }
+            int desde = inicio == null ? Integer.MIN_VALUE : diaDe(inicio, "fecha_inicio");
+            int hasta = fin == null ? Integer.MAX_VALUE : diaDe(fin, "fecha_fin");
+            return cacheEstadisticas.obtener(desde, hasta);
+        }
+
+        /**
+         * Estadísticas de los epoch-days [desde, hasta] a partir de los agregados:
+         * O(días del rango x productos por día), sin recorrer las ventas.
+         */
+        static Estadisticas calcularRango(int desde, int hasta) {
+            Agregado rango = new Agregado();
+            if (desde <= hasta) {
+                for (GrupoVentas dia : porDia.subMap(desde, true, hasta, true).values()) dia.agregado.acumularEn(rango);
+            }
+            return rango.estadisticas();
+        }
+
+        /**
+         * Estadísticas aproximadas de [inicio, fin]: sin fechas se leen los bocetos globales;
+         * con fechas se funden los bocetos de los días del rango.
+         */
+        public static EstadisticasAproximadas calcularAproximadas(String inicio, String fin, int top) {
+            if (inicio == null && fin == null) {
+                return bocetosGlobales.estadisticas(top);
+            }
+            Bocetos rango = new Bocetos();
+            Map<String, Candidatos.Candidato> candidatos = new HashMap<>();
+            for (Bocetos dia : tramo(bocetosPorDia, inicio, fin)) dia.acumularEn(rango, candidatos);
+            return rango.estadisticas(top, candidatos.values());
+        }
+
+        /** Días con ventas dentro de [inicio, fin]; las fechas son AAAA-MM-DD. */
+        static Collection<GrupoVentas> dias(String inicio, String fin) {
+            return tramo(porDia, inicio, fin);
+        }
+
+        private static <T> Collection<T> tramo(ConcurrentSkipListMap<Integer, T> mapa, String inicio, String fin) {
+            Integer desde = inicio == null ? null : diaDe(inicio, "fecha_inicio");
+            Integer hasta = fin == null ? null : diaDe(fin, "fecha_fin");
+            if (desde != null && hasta != null) {
+                if (desde > hasta) return List.of();
+                return mapa.subMap(desde, true, hasta, true).values();
+            }
+            if (desde != null) return mapa.tailMap(desde, true).values();
+            if (hasta != null) return mapa.headMap(hasta, true).values();
+            return mapa.values();
+        }
+
+        static int diaDe(String fecha, String campo) {
+            LocalDate dia;
+            try {
+                dia = LocalDate.parse(fecha);
+            } catch (DateTimeParseException e) {
+                throw new IllegalArgumentException("El campo " + campo + " debe ser una fecha AAAA-MM-DD");
+            }
+            // ISO admite años extendidos (+9999999-01-01) cuyo epoch-day no cabe en un int:
+            // se rechazan en lugar de archivar la venta en otro día
+            if (dia.getYear() < 0 || dia.getYear() > 9999) {
+                throw new IllegalArgumentException("El campo " + campo + " debe ser una fecha AAAA-MM-DD");
+            }
+            return (int) dia.toEpochDay();
+        }
+
+        /**
+         * Cálculo original recorriendo todas las ventas; se conserva como referencia
+         * para comprobar los agregados.
+         */
+        static Estadisticas calcularEstadisticasRecorriendo(String inicio, String fin) {
+            Integer desde = inicio == null ? null : diaDe(inicio, "fecha_inicio");
+            Integer hasta = fin == null ? null : diaDe(fin, "fecha_fin");
             List<Venta> filtradas = ventas.values().stream()
-                .filter(v -> (inicio == null || v.fecha.compareTo(inicio) >= 0))
-                .filter(v -> (fin == null || v.fecha.compareTo(fin) <= 0))
+                .filter(v -> (desde == null || v.dia >= desde))
+                .filter(v -> (hasta == null || v.dia <= hasta))
                 .collect(Collectors.toList());
 
             if (filtradas.isEmpty()) {
@@ -133,21 +395,1720 @@ public class VentaApp {
         }
     }
 
+    // ==========================================
+    // AGREGADOS (mantenidos en cada registrar)
+    // ==========================================
+
+    /**
+     * Ventas de un día o de un producto, en orden de llegada, con su agregado.
+     * La posición de una venta en el grupo no cambia y sirve de cursor de paginación.
+     */
+    static final class GrupoVentas {
+        final Agregado agregado = new Agregado();
+        private final List<Venta> ventas = new ArrayList<>();
+
+        synchronized void registrar(Venta v) {
+            ventas.add(v);
+            agregado.sumar(v);
+        }
+
+        synchronized void registrarTodas(List<Venta> lote) {
+            ventas.addAll(lote);
+            agregado.sumarTodas(lote);
+        }
+
+        synchronized void copiarEn(List<Venta> destino) {
+            destino.addAll(ventas);
+        }
+
+        /** Ventas con epoch-day en [desde, hasta]; null = sin límite. */
+        synchronized void copiarEn(List<Venta> destino, Integer desde, Integer hasta) {
+            for (Venta v : ventas) {
+                if ((desde == null || v.dia >= desde) && (hasta == null || v.dia <= hasta)) destino.add(v);
+            }
+        }
+
+        synchronized List<Venta> pagina(int despuesDe, int limite) {
+            int hasta = (int) Math.min((long) despuesDe + limite, ventas.size());
+            return despuesDe >= hasta ? List.of() : new ArrayList<>(ventas.subList(despuesDe, hasta));
+        }
+    }
+
+    /**
+     * Totales de un conjunto de ventas (un día, un producto o todas): transacciones, importe
+     * y cantidad por producto. Cada venta se suma bajo el cerrojo del agregado, así que un
+     * lector ve siempre el número de transacciones, el importe y las cantidades de las mismas ventas.
+     *
+     * El importe es una suma compensada (Neumaier): no depende del orden en que lleguen
+     * las ventas y coincide con la suma exacta salvo en el último decimal.
+     */
+    static final class Agregado {
+        private long transacciones;
+        private double total;
+        private double compensacion;
+        private final Map<String, Long> cantidadPorProducto = new HashMap<>();
+
+        synchronized void sumar(Venta v) {
+            transacciones++;
+            sumarImporte(v.total);
+            cantidadPorProducto.merge(v.producto, (long) v.cantidad, Long::sum);
+        }
+
+        synchronized void sumarTodas(List<Venta> lote) {
+            for (Venta v : lote) sumar(v);
+        }
+
+        /** Añade este agregado a otro (el acumulador de un rango, sin compartir). */
+        synchronized void acumularEn(Agregado destino) {
+            destino.transacciones += transacciones;
+            destino.sumarImporte(total);
+            destino.sumarImporte(compensacion);
+            cantidadPorProducto.forEach((producto, cantidad) -> destino.cantidadPorProducto.merge(producto, cantidad, Long::sum));
+        }
+
+        private void sumarImporte(double x) {
+            double t = total + x;
+            if (Math.abs(total) >= Math.abs(x)) compensacion += (total - t) + x;
+            else compensacion += (x - t) + total;
+            total = t;
+        }
+
+        synchronized Estadisticas estadisticas() {
+            if (transacciones == 0) {
+                return new Estadisticas(0.0, 0, "N/A", 0.0);
+            }
+            double importe = total + compensacion;
+            // Misma regla que el recorrido: el máximo de un HashMap por cantidad acumulada
+            String top = cantidadPorProducto.entrySet().stream()
+                .max(Map.Entry.comparingByValue())
+                .map(Map.Entry::getKey)
+                .orElse("N/A");
+            return new Estadisticas(importe, transacciones, top, importe / transacciones);
+        }
+
+        /**
+         * Totales del agregado de un producto; el nombre es la variante de mayúsculas más vendida.
+         */
+        synchronized TotalesProducto totalesProducto() {
+            long unidades = 0;
+            String nombre = null;
+            long maximo = -1;
+            for (Map.Entry<String, Long> e : cantidadPorProducto.entrySet()) {
+                unidades += e.getValue();
+                if (e.getValue() > maximo) {
+                    maximo = e.getValue();
+                    nombre = e.getKey();
+                }
+            }
+            return new TotalesProducto(nombre, transacciones, unidades, total + compensacion);
+        }
+    }
+
+    // ==========================================
+    // CACHÉ DE ESTADÍSTICAS (GET /estadisticas con fechas)
+    // ==========================================
+
+    /**
+     * Estadísticas ya calculadas por rango [desde, hasta] de epoch-days, en orden LRU y con un
+     * máximo de entradas (-Dventas.estadisticas.cache=256; 0 la desactiva).
+     *
+     * Una venta del día D solo invalida las entradas cuyo rango contiene D: los rangos de
+     * otros meses se siguen sirviendo. La venta no toca las entradas ni el cerrojo de la caché:
+     * suma uno a los contadores de los bloques diádicos de días que contienen D (días de 1,
+     * 2, 4, ... 2^32 días; 33 contadores). La versión de un rango es la suma de los contadores
+     * de los bloques en que se parte (como mucho 64); cada entrada guarda la versión leída
+     * antes de calcular y, si al pedirla la versión actual es mayor, se recalcula. Los
+     * contadores solo crecen y la venta los incrementa después de sumarse a los agregados, así
+     * que una entrada que no incluye una venta de su rango nunca se da por buena.
+     *
+     * Cada entrada es el futuro del cálculo y se guarda ANTES de calcular, así que las
+     * peticiones simultáneas del mismo rango esperan a un único cálculo. Si llega una venta
+     * del rango mientras tanto, quien ya esperaba recibe el resultado sin esa venta (como si
+     * hubiera preguntado antes) y la siguiente petición recalcula.
+     *
+     * Aciertos (incluidas las esperas a un cálculo en curso), fallos, expulsiones por tamaño
+     * e invalidaciones se publican en /metrics.
+     */
+    static final class CacheEstadisticas {
+        private static final int NIVELES = 33;
+
+        private final int capacidad;
+        private final BiFunction<Integer, Integer, Estadisticas> calcular;
+        private final LinkedHashMap<Long, Entrada> entradas;
+        // Ventas por bloque diádico: clave (nivel, índice del bloque)
+        private final ConcurrentHashMap<Long, LongAdder> ventasPorBloque = new ConcurrentHashMap<>();
+        private final LongAdder aciertos = new LongAdder();
+        private final LongAdder fallos = new LongAdder();
+        private final LongAdder expulsiones = new LongAdder();
+        private final LongAdder invalidaciones = new LongAdder();
+
+        private static final class Entrada {
+            final CompletableFuture<Estadisticas> futuro = new CompletableFuture<>();
+            final long version;
+
+            Entrada(long version) {
+                this.version = version;
+            }
+        }
+
+        CacheEstadisticas(int capacidad, BiFunction<Integer, Integer, Estadisticas> calcular) {
+            this.capacidad = capacidad;
+            this.calcular = calcular;
+            this.entradas = new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Entrada> mayor) {
+                    if (size() <= CacheEstadisticas.this.capacidad) return false;
+                    expulsiones.increment();
+                    return true;
+                }
+            };
+        }
+
+        /** Publica aciertos, fallos, expulsiones, invalidaciones y tamaño en las métricas de una aplicación. */
+        void publicarMetricas(Metricas metricas) {
+            metricas.registrarContador("cache_hits_total", "cache=\"estadisticas\"",
+                    "Consultas de /estadisticas servidas desde la caché o esperando un cálculo en curso.", aciertos::sum);
+            metricas.registrarContador("cache_misses_total", "cache=\"estadisticas\"",
+                    "Consultas de /estadisticas que calcularon el rango.", fallos::sum);
+            metricas.registrarContador("cache_evictions_total", "cache=\"estadisticas\"",
+                    "Rangos expulsados por tamaño (el menos usado recientemente).", expulsiones::sum);
+            metricas.registrarContador("cache_invalidations_total", "cache=\"estadisticas\"",
+                    "Rangos recalculados porque una venta con fecha dentro del rango los dejó obsoletos.", invalidaciones::sum);
+            metricas.registrarIndicador("cache_entries", "cache=\"estadisticas\"",
+                    "Rangos guardados en la caché de /estadisticas.", this::tamano);
+        }
+
+        static CacheEstadisticas desdePropiedades(BiFunction<Integer, Integer, Estadisticas> calcular) {
+            return new CacheEstadisticas(Integer.getInteger("ventas.estadisticas.cache", 256), calcular);
+        }
+
+        /** Estadísticas de [desde, hasta]: de la caché, del cálculo en curso o calculadas ahora. */
+        Estadisticas obtener(int desde, int hasta) {
+            if (capacidad <= 0) return calcular.apply(desde, hasta);
+            long clave = clave(desde, hasta);
+            // Se lee antes de calcular: una venta posterior sube la versión y obliga a recalcular
+            long version = version(desde, hasta);
+            Entrada entrada;
+            boolean propia = false;
+            synchronized (this) {
+                entrada = entradas.get(clave);
+                if (entrada == null || entrada.version < version) {
+                    if (entrada != null) invalidaciones.increment();
+                    entrada = new Entrada(version);
+                    entradas.put(clave, entrada);
+                    propia = true;
+                }
+            }
+            if (!propia) {
+                aciertos.increment();
+                try {
+                    return entrada.futuro.join();
+                } catch (CompletionException e) {
+                    Throwable causa = e.getCause();
+                    if (causa instanceof RuntimeException) throw (RuntimeException) causa;
+                    if (causa instanceof Error) throw (Error) causa;
+                    throw e;
+                }
+            }
+            fallos.increment();
+            try {
+                Estadisticas resultado = calcular.apply(desde, hasta);
+                entrada.futuro.complete(resultado);
+                return resultado;
+            } catch (RuntimeException | Error e) {
+                // Sin completar el futuro, quien espera a este cálculo no despertaría nunca
+                synchronized (this) {
+                    entradas.remove(clave, entrada);
+                }
+                entrada.futuro.completeExceptionally(e);
+                throw e;
+            }
+        }
+
+        /** Anota una venta del día; se llama después de sumarla. O(33), sin cerrojos. */
+        void invalidar(int dia) {
+            if (capacidad <= 0) return;
+            long posicion = posicion(dia);
+            for (int nivel = 0; nivel < NIVELES; nivel++) {
+                ventasPorBloque.computeIfAbsent(bloque(nivel, posicion >>> nivel), b -> new LongAdder()).increment();
+            }
+        }
+
+        /** Anota las ventas de un lote de importación (una vez por día). */
+        void invalidar(Collection<Integer> dias) {
+            for (int dia : dias) invalidar(dia);
+        }
+
+        /** Ventas anotadas en [desde, hasta], sumando los bloques diádicos que lo cubren. */
+        private long version(int desde, int hasta) {
+            long version = 0;
+            long inicio = posicion(desde);
+            long fin = posicion(hasta) + 1;
+            while (inicio < fin) {
+                // El mayor bloque alineado en "inicio" que no se pasa de "fin"
+                int nivel = inicio == 0 ? NIVELES - 1 : Long.numberOfTrailingZeros(inicio);
+                while (inicio + (1L << nivel) > fin) nivel--;
+                LongAdder ventas = ventasPorBloque.get(bloque(nivel, inicio >>> nivel));
+                if (ventas != null) version += ventas.sum();
+                inicio += 1L << nivel;
+            }
+            return version;
+        }
+
+        synchronized int tamano() {
+            return entradas.size();
+        }
+
+        /** Día como posición sin signo en [0, 2^32). */
+        private static long posicion(int dia) {
+            return (long) dia - Integer.MIN_VALUE;
+        }
+
+        private static long bloque(int nivel, long indice) {
+            return ((long) nivel << 32) | indice;
+        }
+
+        private static long clave(int desde, int hasta) {
+            return ((long) desde << 32) | (hasta & 0xffffffffL);
+        }
+    }
+
+    // ==========================================
+    // BOCETOS APROXIMADOS (GET /estadisticas/aprox)
+    // ==========================================
+
+    /**
+     * Bocetos de un día (o globales): se actualizan en cada registrar con memoria fija
+     * (~26 KB) y se funden para responder sobre un rango de fechas.
+     *
+     *  - Productos distintos: HyperLogLog con 2^12 registros. Error relativo típico
+     *    1,04/sqrt(4096) = 1,6 % (una desviación; 3,3 % con ~95 % de confianza).
+     *  - Productos más vendidos (por unidades): Count-Min de 4 x 512 más un montículo con los
+     *    32 candidatos de mayor estimación. Count-Min nunca subestima: las unidades reales están
+     *    en [estimación - e/512 * N, estimación] con probabilidad 1 - e^-4 (98 %), siendo N las
+     *    unidades del rango. Al fundir días, un producto que no fue candidato en ningún día puede
+     *    faltar del top.
+     *  - Cuantiles del importe por venta: KLL con k = 200; error de rango ~1,65 % (99 %):
+     *    la mediana devuelta está entre los percentiles 48,35 y 51,65 reales.
+     *
+     * Los productos se comparan sin distinguir mayúsculas, como en el índice de productos.
+     */
+    static final class Bocetos {
+        long transacciones;
+        final HyperLogLog distintos = new HyperLogLog();
+        final CountMin unidades = new CountMin();
+        final Candidatos frecuentes = new Candidatos();
+        final Kll importes = new Kll();
+
+        synchronized void sumar(Venta v) {
+            sumarSinCerrojo(v);
+        }
+
+        synchronized void sumarTodas(List<Venta> lote) {
+            for (Venta v : lote) sumarSinCerrojo(v);
+        }
+
+        private void sumarSinCerrojo(Venta v) {
+            String clave = VentaService.claveProducto(v.producto);
+            long hash = hash64(clave);
+            transacciones++;
+            distintos.añadir(hash);
+            long estimacion = unidades.sumar(hash, v.cantidad);
+            frecuentes.actualizar(clave, v.producto, hash, estimacion);
+            importes.añadir(v.total);
+        }
+
+        /** Funde este día en el acumulador de un rango y aporta sus candidatos al top. */
+        synchronized void acumularEn(Bocetos destino, Map<String, Candidatos.Candidato> candidatos) {
+            destino.transacciones += transacciones;
+            destino.distintos.fusionar(distintos);
+            destino.unidades.fusionar(unidades);
+            destino.importes.fusionar(importes);
+            frecuentes.aportarA(candidatos);
+        }
+
+        /** Estadísticas de un boceto global, con sus propios candidatos. */
+        synchronized EstadisticasAproximadas estadisticas(int top) {
+            Map<String, Candidatos.Candidato> candidatos = new HashMap<>();
+            frecuentes.aportarA(candidatos);
+            return estadisticas(top, candidatos.values());
+        }
+
+        EstadisticasAproximadas estadisticas(int top, Collection<Candidatos.Candidato> candidatos) {
+            EstadisticasAproximadas e = new EstadisticasAproximadas();
+            e.transacciones = transacciones;
+            e.unidades = unidades.total;
+            e.productosDistintos = distintos.estimar();
+            e.errorProductosDistintos = HyperLogLog.ERROR_RELATIVO;
+            List<ProductoFrecuente> lista = new ArrayList<>();
+            for (Candidatos.Candidato c : candidatos) lista.add(new ProductoFrecuente(c.nombre, unidades.estimar(c.hash)));
+            lista.sort(Comparator.comparingLong((ProductoFrecuente p) -> p.unidadesEstimadas).reversed());
+            e.topProductos = lista.size() > top ? new ArrayList<>(lista.subList(0, top)) : lista;
+            e.errorUnidades = unidades.cotaError();
+            e.medianaImporte = importes.cuantil(0.5);
+            e.p95Importe = importes.cuantil(0.95);
+            e.p99Importe = importes.cuantil(0.99);
+            e.errorRangoCuantiles = Kll.ERROR_RANGO;
+            return e;
+        }
+
+        /** FNV-1a de 64 bits con la mezcla final de MurmurHash3: bits bien repartidos para HLL y Count-Min. */
+        static long hash64(String s) {
+            long h = 0xcbf29ce484222325L;
+            for (int i = 0; i < s.length(); i++) {
+                h ^= s.charAt(i);
+                h *= 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb93fe53ec2cbL;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+
+    /** HyperLogLog (Flajolet et al.) con corrección de rango pequeño por conteo lineal. */
+    static final class HyperLogLog {
+        static final int P = 12;
+        static final int M = 1 << P;
+        static final double ERROR_RELATIVO = 1.04 / Math.sqrt(M);
+        private static final double ALFA = 0.7213 / (1 + 1.079 / M);
+
+        private final byte[] registros = new byte[M];
+
+        void añadir(long hash) {
+            int i = (int) (hash >>> (64 - P));
+            // Posición del primer 1 en los bits restantes; el bit centinela la acota a 64 - P + 1
+            int rango = Long.numberOfLeadingZeros((hash << P) | (1L << (P - 1))) + 1;
+            if (rango > registros[i]) registros[i] = (byte) rango;
+        }
+
+        void fusionar(HyperLogLog otro) {
+            for (int i = 0; i < M; i++) {
+                if (otro.registros[i] > registros[i]) registros[i] = otro.registros[i];
+            }
+        }
+
+        long estimar() {
+            double suma = 0;
+            int ceros = 0;
+            for (byte r : registros) {
+                suma += Math.scalb(1.0, -r);
+                if (r == 0) ceros++;
+            }
+            double estimacion = ALFA * M * M / suma;
+            if (estimacion <= 2.5 * M && ceros > 0) estimacion = M * Math.log((double) M / ceros);
+            return Math.round(estimacion);
+        }
+    }
+
+    /**
+     * Count-Min de PROFUNDIDAD x ANCHO. Cada fila usa sus propios 9 bits del hash de 64: con
+     * doble hash módulo 512 dos productos que coinciden en dos filas coinciden en todas.
+     */
+    static final class CountMin {
+        static final int PROFUNDIDAD = 4;
+        static final int BITS_ANCHO = 9;
+        static final int ANCHO = 1 << BITS_ANCHO;
+
+        private final long[] celdas = new long[PROFUNDIDAD * ANCHO];
+        long total;
+
+        /** Suma y devuelve la nueva estimación. */
+        long sumar(long hash, long cantidad) {
+            total += cantidad;
+            long minimo = Long.MAX_VALUE;
+            for (int fila = 0; fila < PROFUNDIDAD; fila++) {
+                int celda = celda(hash, fila);
+                celdas[celda] += cantidad;
+                minimo = Math.min(minimo, celdas[celda]);
+            }
+            return minimo;
+        }
+
+        long estimar(long hash) {
+            long minimo = Long.MAX_VALUE;
+            for (int fila = 0; fila < PROFUNDIDAD; fila++) minimo = Math.min(minimo, celdas[celda(hash, fila)]);
+            return minimo;
+        }
+
+        void fusionar(CountMin otro) {
+            total += otro.total;
+            for (int i = 0; i < celdas.length; i++) celdas[i] += otro.celdas[i];
+        }
+
+        /** Sobreestimación máxima (e/ANCHO * N) con probabilidad 1 - e^-PROFUNDIDAD. */
+        long cotaError() {
+            return (long) Math.ceil(Math.E / ANCHO * total);
+        }
+
+        private static int celda(long hash, int fila) {
+            return fila * ANCHO + ((int) (hash >>> (fila * BITS_ANCHO)) & (ANCHO - 1));
+        }
+    }
+
+    /**
+     * Montículo de mínimos con los CAPACIDAD productos de mayor estimación: un producto nuevo
+     * entra si supera al menor. Las estimaciones solo crecen, así que al actualizar se hunde.
+     */
+    static final class Candidatos {
+        static final int CAPACIDAD = 32;
+
+        static final class Candidato {
+            final String clave;
+            final String nombre;
+            final long hash;
+
+            Candidato(String clave, String nombre, long hash) {
+                this.clave = clave;
+                this.nombre = nombre;
+                this.hash = hash;
+            }
+        }
+
+        private final Candidato[] monticulo = new Candidato[CAPACIDAD];
+        private final long[] estimaciones = new long[CAPACIDAD];
+        private final Map<String, Integer> posiciones = new HashMap<>();
+        private int tamaño;
+
+        void actualizar(String clave, String nombre, long hash, long estimacion) {
+            Integer i = posiciones.get(clave);
+            if (i != null) {
+                estimaciones[i] = estimacion;
+                hundir(i);
+            } else if (tamaño < CAPACIDAD) {
+                colocar(tamaño, new Candidato(clave, nombre, hash), estimacion);
+                flotar(tamaño++);
+            } else if (estimacion > estimaciones[0]) {
+                posiciones.remove(monticulo[0].clave);
+                colocar(0, new Candidato(clave, nombre, hash), estimacion);
+                hundir(0);
+            }
+        }
+
+        void aportarA(Map<String, Candidato> destino) {
+            for (int i = 0; i < tamaño; i++) destino.putIfAbsent(monticulo[i].clave, monticulo[i]);
+        }
+
+        private void colocar(int i, Candidato c, long estimacion) {
+            monticulo[i] = c;
+            estimaciones[i] = estimacion;
+            posiciones.put(c.clave, i);
+        }
+
+        private void flotar(int i) {
+            while (i > 0) {
+                int padre = (i - 1) / 2;
+                if (estimaciones[padre] <= estimaciones[i]) return;
+                intercambiar(i, padre);
+                i = padre;
+            }
+        }
+
+        private void hundir(int i) {
+            while (true) {
+                int menor = i;
+                int izquierdo = 2 * i + 1;
+                int derecho = izquierdo + 1;
+                if (izquierdo < tamaño && estimaciones[izquierdo] < estimaciones[menor]) menor = izquierdo;
+                if (derecho < tamaño && estimaciones[derecho] < estimaciones[menor]) menor = derecho;
+                if (menor == i) return;
+                intercambiar(i, menor);
+                i = menor;
+            }
+        }
+
+        private void intercambiar(int a, int b) {
+            Candidato c = monticulo[a];
+            long e = estimaciones[a];
+            colocar(a, monticulo[b], estimaciones[b]);
+            colocar(b, c, e);
+        }
+    }
+
+    /**
+     * Boceto de cuantiles KLL (Karnin, Lang y Liberty): niveles de compactadores cuya capacidad
+     * decrece en 2/3 hacia los niveles bajos. Compactar ordena un nivel y sube uno de cada dos
+     * elementos (pares o impares al azar) con el doble de peso, así que el peso total es
+     * siempre el número de valores vistos. Fundir es concatenar los niveles y compactar.
+     */
+    static final class Kll {
+        static final int K = 200;
+        static final double ERROR_RANGO = 0.0165;
+        private static final double C = 2.0 / 3.0;
+
+        private double[][] niveles = new double[0][];
+        private int[] llenos = new int[0];
+        private int tamaño;
+        private int maximo;
+
+        Kll() {
+            crecer();
+        }
+
+        void añadir(double x) {
+            agregarEn(0, x);
+            if (++tamaño >= maximo) comprimir();
+        }
+
+        void fusionar(Kll otro) {
+            while (niveles.length < otro.niveles.length) crecer();
+            for (int h = 0; h < otro.niveles.length; h++) {
+                for (int i = 0; i < otro.llenos[h]; i++) agregarEn(h, otro.niveles[h][i]);
+            }
+            tamaño += otro.tamaño;
+            while (tamaño >= maximo) comprimir();
+        }
+
+        /** Valor cuyo rango aproximado es q (0..1); null si no hay valores. */
+        Double cuantil(double q) {
+            if (tamaño == 0) return null;
+            double[] valores = new double[tamaño];
+            long[] pesos = new long[tamaño];
+            Integer[] orden = new Integer[tamaño];
+            int n = 0;
+            long total = 0;
+            for (int h = 0; h < niveles.length; h++) {
+                for (int i = 0; i < llenos[h]; i++) {
+                    valores[n] = niveles[h][i];
+                    pesos[n] = 1L << h;
+                    orden[n] = n;
+                    total += pesos[n++];
+                }
+            }
+            Arrays.sort(orden, Comparator.comparingDouble(i -> valores[i]));
+            double objetivo = q * total;
+            long acumulado = 0;
+            for (int i : orden) {
+                acumulado += pesos[i];
+                if (acumulado >= objetivo) return valores[i];
+            }
+            return valores[orden[n - 1]];
+        }
+
+        private int capacidad(int nivel) {
+            int profundidad = niveles.length - nivel - 1;
+            return (int) Math.ceil(Math.pow(C, profundidad) * K) + 1;
+        }
+
+        private void crecer() {
+            int h = niveles.length;
+            niveles = Arrays.copyOf(niveles, h + 1);
+            llenos = Arrays.copyOf(llenos, h + 1);
+            niveles[h] = new double[16];
+            maximo = 0;
+            for (int i = 0; i <= h; i++) maximo += capacidad(i);
+        }
+
+        private void agregarEn(int nivel, double x) {
+            if (llenos[nivel] == niveles[nivel].length) niveles[nivel] = Arrays.copyOf(niveles[nivel], llenos[nivel] * 2);
+            niveles[nivel][llenos[nivel]++] = x;
+        }
+
+        private void comprimir() {
+            for (int h = 0; h < niveles.length; h++) {
+                if (llenos[h] >= capacidad(h)) {
+                    if (h + 1 >= niveles.length) crecer();
+                    compactar(h);
+                    if (tamaño < maximo) return;
+                }
+            }
+        }
+
+        private void compactar(int h) {
+            double[] nivel = niveles[h];
+            int m = llenos[h];
+            Arrays.sort(nivel, 0, m);
+            // Con un número impar de elementos, el mayor se queda en el nivel
+            int pares = m & ~1;
+            for (int i = ThreadLocalRandom.current().nextInt(2); i < pares; i += 2) agregarEn(h + 1, nivel[i]);
+            if ((m & 1) == 1) {
+                nivel[0] = nivel[m - 1];
+                llenos[h] = 1;
+            } else {
+                llenos[h] = 0;
+            }
+            tamaño -= pares / 2;
+        }
+    }
+
+    static class EstadisticasAproximadas {
+        public long transacciones;
+        public long unidades;
+        public long productosDistintos;
+        public double errorProductosDistintos;   // error relativo típico
+        public List<ProductoFrecuente> topProductos;
+        public long errorUnidades;               // sobreestimación máxima de cada producto (98 %)
+        public Double medianaImporte;
+        public Double p95Importe;
+        public Double p99Importe;
+        public double errorRangoCuantiles;       // error de rango de los cuantiles (99 %)
+    }
+
+    static class ProductoFrecuente {
+        public String producto;
+        public long unidadesEstimadas;
+
+        public ProductoFrecuente(String producto, long unidadesEstimadas) {
+            this.producto = producto;
+            this.unidadesEstimadas = unidadesEstimadas;
+        }
+    }
+
+    // ==========================================
+    // COPIA COLUMNAR (GET /ventas/query)
+    // ==========================================
+
+    /**
+     * Copia columnar de las ventas para las consultas de análisis: un array primitivo por
+     * columna (cantidad, precio unitario, total y epoch-day) y el producto codificado con un
+     * diccionario. Las filas viven en segmentos de 64K que, una vez creados, no se mueven.
+     *
+     * Las escrituras van bajo el cerrojo de la tabla y "filas" (volátil) se publica al final:
+     * un lector que lee primero "filas" y después "segmentos" ve completas todas esas filas
+     * sin bloquear a los que registran.
+     *
+     * Las consultas recorren los segmentos en paralelo con fork-join (el pool común): cada
+     * tarea hoja agrega su tramo en arrays densos por grupo y los resultados se funden al volver.
+     * Cada hoja reserva un Parcial por periodo, así que el número de hojas se reduce para que
+     * hojas x celdas (grupos de todos los periodos) no pase de PRESUPUESTO_CELDAS.
+     */
+    static final class TablaVentas {
+        static final int BITS_SEGMENTO = 16;
+        static final int SEGMENTO = 1 << BITS_SEGMENTO;
+        // Tope de celdas (grupos de todos los periodos) de una consulta y de todas sus hojas
+        // a la vez: ~40 bytes por celda, unos 40 MB (p. ej. agrupar por día miles de años)
+        static final int PRESUPUESTO_CELDAS = 1 << 20;
+        private static final int SIN_FILTRO = -1;
+        private static final int NINGUNO = -2;
+
+        static final class Segmento {
+            final int[] cantidad = new int[SEGMENTO];
+            final double[] precioUnitario = new double[SEGMENTO];
+            final double[] total = new double[SEGMENTO];
+            final int[] dia = new int[SEGMENTO];
+            final int[] producto = new int[SEGMENTO];
+        }
+
+        private volatile Segmento[] segmentos = new Segmento[0];
+        private volatile String[] diccionario = new String[16];
+        private volatile int diaMinimo = Integer.MAX_VALUE;
+        private volatile int diaMaximo = Integer.MIN_VALUE;
+        private volatile int filas;
+        // producto -> código; solo se usa bajo el cerrojo
+        private final Map<String, Integer> codigos = new HashMap<>();
+
+        synchronized void agregar(Venta v) {
+            int fila = filas;
+            escribir(fila, v);
+            filas = fila + 1;
+        }
+
+        synchronized void agregarTodas(List<Venta> lote) {
+            int fila = filas;
+            for (Venta v : lote) escribir(fila++, v);
+            filas = fila;
+        }
+
+        int filas() {
+            return filas;
+        }
+
+        /** Escribe una fila sin publicarla; se llama con el cerrojo tomado. */
+        private void escribir(int fila, Venta v) {
+            int s = fila >>> BITS_SEGMENTO;
+            Segmento[] segs = segmentos;
+            if (s == segs.length) {
+                segs = Arrays.copyOf(segs, s + 1);
+                segs[s] = new Segmento();
+                segmentos = segs;
+            }
+            Segmento seg = segs[s];
+            int i = fila & (SEGMENTO - 1);
+            seg.cantidad[i] = v.cantidad;
+            seg.precioUnitario[i] = v.precioUnitario;
+            seg.total[i] = v.total;
+            seg.dia[i] = v.dia;
+            seg.producto[i] = codificar(v.producto);
+            if (v.dia < diaMinimo) diaMinimo = v.dia;
+            if (v.dia > diaMaximo) diaMaximo = v.dia;
+        }
+
+        private int codificar(String producto) {
+            Integer codigo = codigos.get(producto);
+            if (codigo != null) return codigo;
+            int nuevo = codigos.size();
+            String[] nombres = diccionario;
+            if (nuevo == nombres.length) nombres = Arrays.copyOf(nombres, nuevo * 2);
+            nombres[nuevo] = producto;
+            diccionario = nombres;
+            codigos.put(producto, nuevo);
+            return nuevo;
+        }
+
+        private synchronized int codigoDe(String producto) {
+            Integer codigo = codigos.get(producto);
+            return codigo == null ? NINGUNO : codigo;
+        }
+
+        /** Rango de grupos de un periodo ya acotado a los días con ventas. */
+        static final class Tramo {
+            final int desde, hasta, base, grupos;
+
+            Tramo(int desde, int hasta, int base, int grupos) {
+                this.desde = desde;
+                this.hasta = hasta;
+                this.base = base;
+                this.grupos = grupos;
+            }
+        }
+
+        ResultadoConsulta consultar(Consulta c) {
+            // Orden de lectura: primero filas, después lo que se escribió antes de publicarlas
+            int n = filas;
+            Segmento[] segs = segmentos;
+            String[] nombres = diccionario;
+            int minimo = diaMinimo;
+            int maximo = diaMaximo;
+            int filtro = c.producto == null ? SIN_FILTRO : codigoDe(c.producto);
+
+            Tramo[] tramos = new Tramo[c.periodos.size()];
+            long celdas = 0;
+            for (int p = 0; p < tramos.length; p++) {
+                Consulta.Periodo periodo = c.periodos.get(p);
+                int desde = periodo.desde == null ? minimo : Math.max(periodo.desde, minimo);
+                int hasta = periodo.hasta == null ? maximo : Math.min(periodo.hasta, maximo);
+                if (n == 0 || desde > hasta) {
+                    tramos[p] = new Tramo(1, 0, 0, 0);
+                    continue;
+                }
+                int base = c.agrupar == Consulta.Dimension.producto ? 0 : clave(c.agrupar, desde);
+                long grupos = c.agrupar == Consulta.Dimension.producto
+                        ? nombres.length : (long) clave(c.agrupar, hasta) - base + 1;
+                celdas += grupos;
+                if (celdas > PRESUPUESTO_CELDAS) {
+                    throw new IllegalArgumentException("Los periodos tienen demasiados grupos por " + c.agrupar
+                            + " (máximo " + PRESUPUESTO_CELDAS + " entre todos); acótalos con fechas");
+                }
+                tramos[p] = new Tramo(desde, hasta, base, (int) grupos);
+            }
+
+            Parcial[] total;
+            int numSegmentos = (n + SEGMENTO - 1) >>> BITS_SEGMENTO;
+            if (numSegmentos == 0) {
+                total = Escaneo.vacios(tramos);
+            } else {
+                // Unas cuatro hojas por núcleo, pero sin pasar del presupuesto de celdas: partir
+                // por la mitad hasta "hoja" segmentos deja como mucho el doble de hojas
+                long porCeldas = PRESUPUESTO_CELDAS / Math.max(1, celdas) / 2;
+                int hojas = (int) Math.max(1, Math.min(4L * ForkJoinPool.getCommonPoolParallelism(), porCeldas));
+                int hoja = Math.max(1, (numSegmentos + hojas - 1) / hojas);
+                total = ForkJoinPool.commonPool().invoke(
+                        new Escaneo(segs, n, 0, numSegmentos, hoja, c, tramos, filtro));
+            }
+
+            ResultadoConsulta r = new ResultadoConsulta(c.agrupar.name(), c.medida.name(), n);
+            for (int p = 0; p < tramos.length; p++) {
+                r.periodos.add(resultado(c, c.periodos.get(p), tramos[p], total[p], nombres));
+            }
+            return r;
+        }
+
+        private static ResultadoPeriodo resultado(Consulta c, Consulta.Periodo periodo, Tramo t, Parcial parcial, String[] nombres) {
+            List<Integer> grupos = new ArrayList<>();
+            long transacciones = 0;
+            for (int g = 0; g < t.grupos; g++) {
+                if (parcial.cuenta[g] == 0) continue;
+                grupos.add(g);
+                transacciones += parcial.cuenta[g];
+            }
+            if (c.top > 0) {
+                grupos.sort(Comparator.comparingDouble((Integer g) -> parcial.valor(c.orden, g)).reversed());
+                if (grupos.size() > c.top) grupos = grupos.subList(0, c.top);
+            } else if (c.agrupar == Consulta.Dimension.producto) {
+                // Una venta sin producto se agrupa bajo null y va primero
+                grupos.sort(Comparator.comparing((Integer g) -> nombres[g], Comparator.nullsFirst(Comparator.naturalOrder())));
+            }
+            ResultadoPeriodo r = new ResultadoPeriodo(periodo.nombre, transacciones);
+            for (int g : grupos) {
+                Map<String, Object> fila = new LinkedHashMap<>();
+                fila.put("clave", etiqueta(c.agrupar, t.base + g, nombres));
+                for (Consulta.Metrica m : c.metricas) {
+                    if (m == Consulta.Metrica.cuenta) fila.put(m.name(), parcial.cuenta[g]);
+                    else fila.put(m.name(), parcial.valor(m, g));
+                }
+                r.grupos.add(fila);
+            }
+            return r;
+        }
+
+        /** Clave de grupo de un día: el propio día, la semana (lunes a domingo) o el mes. */
+        static int clave(Consulta.Dimension d, int dia) {
+            switch (d) {
+                case dia: return dia;
+                case semana: return Math.floorDiv(dia + 3, 7); // el epoch-day 0 fue jueves
+                case mes: return mes(dia);
+                default: return 0;
+            }
+        }
+
+        private static String etiqueta(Consulta.Dimension d, int clave, String[] nombres) {
+            switch (d) {
+                case producto: return nombres[clave];
+                case dia: return LocalDate.ofEpochDay(clave).toString();
+                case semana: return LocalDate.ofEpochDay(clave * 7L - 3).toString();
+                case mes: return String.format("%04d-%02d", Math.floorDiv(clave, 12), Math.floorMod(clave, 12) + 1);
+                default: return "total";
+            }
+        }
+
+        /** Año * 12 + (mes - 1) de un epoch-day, con aritmética de enteros (calendario gregoriano). */
+        static int mes(int dia) {
+            int z = dia + 719468;
+            int era = Math.floorDiv(z, 146097);
+            int diaDeEra = z - era * 146097;
+            int añoDeEra = (diaDeEra - diaDeEra / 1460 + diaDeEra / 36524 - diaDeEra / 146096) / 365;
+            int diaDelAño = diaDeEra - (365 * añoDeEra + añoDeEra / 4 - añoDeEra / 100);
+            int m = (5 * diaDelAño + 2) / 153; // 0 = marzo
+            int mes = m < 10 ? m + 3 : m - 9;
+            int año = añoDeEra + era * 400 + (mes <= 2 ? 1 : 0);
+            return año * 12 + mes - 1;
+        }
+
+        /**
+         * Agregados de un tramo de segmentos para cada periodo, en arrays densos indexados
+         * por grupo. El importe se suma con compensación, como en Agregado.
+         */
+        static final class Parcial {
+            final long[] cuenta;
+            final double[] suma;
+            final double[] compensacion;
+            final double[] minimo;
+            final double[] maximo;
+
+            Parcial(int grupos) {
+                cuenta = new long[grupos];
+                suma = new double[grupos];
+                compensacion = new double[grupos];
+                minimo = new double[grupos];
+                maximo = new double[grupos];
+                Arrays.fill(minimo, Double.POSITIVE_INFINITY);
+                Arrays.fill(maximo, Double.NEGATIVE_INFINITY);
+            }
+
+            void sumar(int g, double x) {
+                cuenta[g]++;
+                sumarEn(g, x);
+                if (x < minimo[g]) minimo[g] = x;
+                if (x > maximo[g]) maximo[g] = x;
+            }
+
+            private void sumarEn(int g, double x) {
+                double s = suma[g];
+                double t = s + x;
+                if (Math.abs(s) >= Math.abs(x)) compensacion[g] += (s - t) + x;
+                else compensacion[g] += (x - t) + s;
+                suma[g] = t;
+            }
+
+            void fusionar(Parcial otro) {
+                for (int g = 0; g < cuenta.length; g++) {
+                    if (otro.cuenta[g] == 0) continue;
+                    cuenta[g] += otro.cuenta[g];
+                    sumarEn(g, otro.suma[g]);
+                    sumarEn(g, otro.compensacion[g]);
+                    minimo[g] = Math.min(minimo[g], otro.minimo[g]);
+                    maximo[g] = Math.max(maximo[g], otro.maximo[g]);
+                }
+            }
+
+            double valor(Consulta.Metrica m, int g) {
+                switch (m) {
+                    case suma: return suma[g] + compensacion[g];
+                    case cuenta: return cuenta[g];
+                    case media: return (suma[g] + compensacion[g]) / cuenta[g];
+                    case min: return minimo[g];
+                    default: return maximo[g];
+                }
+            }
+        }
+
+        /** Recorrido fork-join de los segmentos [desde, hasta). */
+        static final class Escaneo extends RecursiveTask<Parcial[]> {
+            private static final long serialVersionUID = 1L;
+
+            private final Segmento[] segmentos;
+            private final int filas, desde, hasta, hoja, filtro;
+            private final Consulta consulta;
+            private final Tramo[] tramos;
+
+            Escaneo(Segmento[] segmentos, int filas, int desde, int hasta, int hoja, Consulta consulta, Tramo[] tramos, int filtro) {
+                this.segmentos = segmentos;
+                this.filas = filas;
+                this.desde = desde;
+                this.hasta = hasta;
+                this.hoja = hoja;
+                this.consulta = consulta;
+                this.tramos = tramos;
+                this.filtro = filtro;
+            }
+
+            static Parcial[] vacios(Tramo[] tramos) {
+                Parcial[] parciales = new Parcial[tramos.length];
+                for (int p = 0; p < tramos.length; p++) parciales[p] = new Parcial(tramos[p].grupos);
+                return parciales;
+            }
+
+            @Override
+            protected Parcial[] compute() {
+                if (hasta - desde > hoja) {
+                    int medio = (desde + hasta) >>> 1;
+                    Escaneo derecha = new Escaneo(segmentos, filas, medio, hasta, hoja, consulta, tramos, filtro);
+                    derecha.fork();
+                    Parcial[] izquierda = new Escaneo(segmentos, filas, desde, medio, hoja, consulta, tramos, filtro).compute();
+                    Parcial[] otra = derecha.join();
+                    for (int p = 0; p < izquierda.length; p++) izquierda[p].fusionar(otra[p]);
+                    return izquierda;
+                }
+                Parcial[] parciales = vacios(tramos);
+                if (filtro == NINGUNO) return parciales;
+                for (int s = desde; s < hasta; s++) recorrer(segmentos[s], Math.min(SEGMENTO, filas - s * SEGMENTO), parciales);
+                return parciales;
+            }
+
+            private void recorrer(Segmento seg, int longitud, Parcial[] parciales) {
+                Consulta.Dimension dimension = consulta.agrupar;
+                int[] enteros = consulta.medida == Consulta.Medida.cantidad ? seg.cantidad : null;
+                double[] reales = consulta.medida == Consulta.Medida.precioUnitario ? seg.precioUnitario : seg.total;
+                int[] dias = seg.dia;
+                int[] productos = seg.producto;
+                // Las ventas llegan casi en orden de fecha: la clave del día anterior suele servir
+                int ultimoDia = Integer.MIN_VALUE;
+                int ultimaClave = 0;
+                for (int i = 0; i < longitud; i++) {
+                    if (filtro != SIN_FILTRO && productos[i] != filtro) continue;
+                    int d = dias[i];
+                    int clave;
+                    if (dimension == Consulta.Dimension.producto) {
+                        clave = productos[i];
+                    } else {
+                        if (d != ultimoDia) {
+                            ultimoDia = d;
+                            ultimaClave = clave(dimension, d);
+                        }
+                        clave = ultimaClave;
+                    }
+                    double x = enteros != null ? enteros[i] : reales[i];
+                    for (int p = 0; p < tramos.length; p++) {
+                        Tramo t = tramos[p];
+                        if (d < t.desde || d > t.hasta) continue;
+                        parciales[p].sumar(clave - t.base, x);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Consulta de análisis: dimensión de agrupación, columna medida, métricas y uno o varios
+     * periodos que se calculan en el mismo recorrido para compararlos.
+     */
+    static final class Consulta {
+        enum Dimension { ninguna, producto, dia, semana, mes }
+        enum Medida { total, cantidad, precioUnitario }
+        enum Metrica { suma, cuenta, media, min, max }
+
+        static final int MAXIMO_PERIODOS = 12;
+
+        /** [desde, hasta] en epoch-days; null = sin límite. */
+        static final class Periodo {
+            final String nombre;
+            final Integer desde, hasta;
+
+            Periodo(String nombre, Integer desde, Integer hasta) {
+                this.nombre = nombre;
+                this.desde = desde;
+                this.hasta = hasta;
+            }
+        }
+
+        Dimension agrupar = Dimension.ninguna;
+        Medida medida = Medida.total;
+        Set<Metrica> metricas = EnumSet.allOf(Metrica.class);
+        Metrica orden = Metrica.suma;
+        int top; // 0 = todos los grupos
+        String producto;
+        List<Periodo> periodos = List.of(new Periodo("..", null, null));
+
+        /**
+         * Interpreta los parámetros; todos son opcionales. "periodos" es una lista separada por
+         * comas de tramos inicio..fin (AAAA-MM-DD) en los que cualquiera de los extremos puede faltar.
+         */
+        static Consulta desdeParametros(String agrupar, String medida, String metricas, String periodos, String orden, String producto) {
+            Consulta c = new Consulta();
+            if (agrupar != null) c.agrupar = valor(Dimension.class, agrupar, "agrupar");
+            if (medida != null) c.medida = valor(Medida.class, medida, "medida");
+            if (orden != null) c.orden = valor(Metrica.class, orden, "orden");
+            if (metricas != null) {
+                Set<Metrica> elegidas = new LinkedHashSet<>();
+                for (String m : metricas.split(",")) {
+                    if (!m.isBlank()) elegidas.add(valor(Metrica.class, m.trim(), "metricas"));
+                }
+                if (elegidas.isEmpty()) throw new IllegalArgumentException("El parámetro metricas no puede estar vacío");
+                c.metricas = elegidas;
+            }
+            if (periodos != null) {
+                List<Periodo> lista = new ArrayList<>();
+                for (String tramo : periodos.split(",")) {
+                    tramo = tramo.trim();
+                    int separador = tramo.indexOf("..");
+                    if (separador < 0) {
+                        throw new IllegalArgumentException("Cada periodo debe tener la forma inicio..fin (AAAA-MM-DD, extremos opcionales)");
+                    }
+                    String inicio = tramo.substring(0, separador).trim();
+                    String fin = tramo.substring(separador + 2).trim();
+                    lista.add(new Periodo(tramo,
+                            inicio.isEmpty() ? null : VentaService.diaDe(inicio, "periodos"),
+                            fin.isEmpty() ? null : VentaService.diaDe(fin, "periodos")));
+                }
+                if (lista.size() > MAXIMO_PERIODOS) {
+                    throw new IllegalArgumentException("Como máximo se pueden comparar " + MAXIMO_PERIODOS + " periodos");
+                }
+                c.periodos = lista;
+            }
+            c.producto = producto;
+            return c;
+        }
+
+        private static <E extends Enum<E>> E valor(Class<E> tipo, String texto, String parametro) {
+            for (E e : tipo.getEnumConstants()) {
+                if (e.name().equalsIgnoreCase(texto)) return e;
+            }
+            throw new IllegalArgumentException("Valor no válido para " + parametro + ": " + texto
+                    + " (admite " + Arrays.toString(tipo.getEnumConstants()) + ")");
+        }
+    }
+
+    static class ResultadoConsulta {
+        public String agrupar;
+        public String medida;
+        public long filas;
+        public List<ResultadoPeriodo> periodos = new ArrayList<>();
+
+        public ResultadoConsulta(String agrupar, String medida, long filas) {
+            this.agrupar = agrupar;
+            this.medida = medida;
+            this.filas = filas;
+        }
+    }
+
+    static class ResultadoPeriodo {
+        public String periodo;
+        public long transacciones;
+        public List<Map<String, Object>> grupos = new ArrayList<>();
+
+        public ResultadoPeriodo(String periodo, long transacciones) {
+            this.periodo = periodo;
+            this.transacciones = transacciones;
+        }
+    }
+
+    // ==========================================
+    // IMPORTACIÓN MASIVA (POST /ventas/import)
+    // ==========================================
+
+    /**
+     * Importa ventas desde CSV o NDJSON leyendo la entrada en streaming, sin cargarla en
+     * memoria. Cada fila se valida por separado: una fila mal formada solo rechaza esa fila.
+     * Las válidas se acumulan hasta TAMANO_LOTE y se entregan juntas al destino
+     * (VentaService::registrarLote en la API).
+     *
+     * CSV: con cabecera (columnas producto, cantidad, precioUnitario y opcionalmente fecha, en
+     * cualquier orden; las demás se ignoran) o sin ella, en ese orden. Los campos pueden ir
+     * entre comillas dobles ("" escapa una comilla), pero no pueden contener saltos de línea.
+     * NDJSON: un objeto por línea con los mismos campos. Sin fecha, la venta es de hoy.
+     */
+    static final class ImportadorVentas {
+        enum Formato { csv, ndjson }
+
+        static final int TAMANO_LOTE = 4096;
+        static final int MAXIMO_RECHAZOS_DETALLADOS = 1000;
+        // Tope de las cachés de fechas y nombres de producto de una importación
+        private static final int MAXIMO_CACHE = 100_000;
+        private static final JsonFactory JSON = new JsonFactory();
+
+        /** Fecha ya validada; las filas con el mismo texto comparten la cadena y el epoch-day. */
+        private static final class Fecha {
+            final String texto;
+            final int dia;
+
+            Fecha(String texto, int dia) {
+                this.texto = texto;
+                this.dia = dia;
+            }
+        }
+
+        private final Consumer<List<Venta>> destino;
+        private final List<Venta> lote = new ArrayList<>(TAMANO_LOTE);
+        private final Map<String, Fecha> fechas = new HashMap<>();
+        private final Map<String, String> productos = new HashMap<>();
+        private final Fecha hoy;
+        final ResultadoImportacion resultado = new ResultadoImportacion();
+        // Líneas ya consumidas antes de la entrada (en blanco): los rechazos cuentan desde ahí
+        private long lineasPrevias;
+
+        ImportadorVentas(Consumer<List<Venta>> destino) {
+            this.destino = destino;
+            LocalDate fecha = LocalDate.now();
+            this.hoy = new Fecha(fecha.toString(), (int) fecha.toEpochDay());
+        }
+
+        ResultadoImportacion importar(InputStream entrada, Formato formato) throws IOException {
+            return importar(entrada, formato, 0);
+        }
+
+        ResultadoImportacion importar(InputStream entrada, Formato formato, long lineasPrevias) throws IOException {
+            this.lineasPrevias = lineasPrevias;
+            BufferedReader lector = new BufferedReader(new InputStreamReader(entrada, StandardCharsets.UTF_8), 1 << 16);
+            if (formato == Formato.csv) leerCsv(lector);
+            else leerNdjson(lector);
+            vaciar();
+            return resultado;
+        }
+
+        /** Formato de ?formato=, si no del Content-Type y, en último caso, del primer carácter. */
+        static Formato formato(String parametro, String contentType, int primero) {
+            if (parametro != null) {
+                for (Formato f : Formato.values()) {
+                    if (f.name().equalsIgnoreCase(parametro)) return f;
+                }
+                throw new IllegalArgumentException("El parámetro formato debe ser csv o ndjson");
+            }
+            if (contentType != null) {
+                String tipo = contentType.toLowerCase(Locale.ROOT);
+                if (tipo.contains("csv")) return Formato.csv;
+                if (tipo.contains("ndjson") || tipo.contains("json")) return Formato.ndjson;
+            }
+            return primero == '{' ? Formato.ndjson : Formato.csv;
+        }
+
+        private void leerCsv(BufferedReader lector) throws IOException {
+            String linea;
+            long numero = lineasPrevias;
+            // Posiciones de producto, cantidad, precioUnitario y fecha (-1 si no hay columna)
+            int[] columnas = null;
+            String[] campos = new String[4];
+            while ((linea = lector.readLine()) != null) {
+                numero++;
+                if (numero == lineasPrevias + 1 && !linea.isEmpty() && linea.charAt(0) == '\uFEFF') linea = linea.substring(1);
+                if (linea.isBlank()) continue;
+                if (columnas == null) {
+                    // La primera línea decide: cabecera (una cabecera incompleta es un 400) o datos en orden
+                    columnas = new int[] {0, 1, 2, 3};
+                    int n = -1;
+                    try {
+                        n = dividir(linea, campos);
+                        if (n > campos.length) n = dividir(linea, campos = new String[n]);
+                    } catch (IllegalArgumentException e) {
+                        // Línea de datos mal formada: se rechaza abajo como cualquier otra
+                    }
+                    int[] nombradas = n < 0 ? null : cabecera(campos, n);
+                    if (nombradas != null) {
+                        columnas = nombradas;
+                        continue;
+                    }
+                }
+                try {
+                    int n = dividir(linea, campos);
+                    String producto = campo(campos, n, columnas[0]);
+                    String cantidad = campo(campos, n, columnas[1]);
+                    String precio = campo(campos, n, columnas[2]);
+                    if (producto == null || cantidad == null || precio == null) {
+                        throw new IllegalArgumentException("Faltan columnas: se esperan producto, cantidad y precioUnitario");
+                    }
+                    agregar(venta(producto, entero(cantidad), real(precio), campo(campos, n, columnas[3])));
+                } catch (IllegalArgumentException e) {
+                    rechazar(numero, e.getMessage());
+                }
+            }
+        }
+
+        /** Índices de las columnas si la línea es una cabecera; null si es una fila de datos. */
+        private static int[] cabecera(String[] campos, int n) {
+            int[] columnas = {-1, -1, -1, -1};
+            boolean esCabecera = false;
+            for (int i = 0; i < Math.min(n, campos.length); i++) {
+                switch (campos[i].trim().toLowerCase(Locale.ROOT)) {
+                    case "producto": columnas[0] = i; esCabecera = true; break;
+                    case "cantidad": columnas[1] = i; break;
+                    case "preciounitario": columnas[2] = i; break;
+                    case "fecha": columnas[3] = i; break;
+                    default: break;
+                }
+            }
+            if (!esCabecera) return null;
+            if (columnas[1] < 0 || columnas[2] < 0) {
+                throw new IllegalArgumentException("La cabecera CSV debe incluir producto, cantidad y precioUnitario");
+            }
+            return columnas;
+        }
+
+        private static String campo(String[] campos, int n, int columna) {
+            return columna < 0 || columna >= n || columna >= campos.length ? null : campos[columna];
+        }
+
+        /**
+         * Divide una línea CSV en "campos" (los que no caben se cuentan pero no se guardan)
+         * y devuelve el número de campos de la línea.
+         */
+        static int dividir(String linea, String[] campos) {
+            int n = 0;
+            int i = 0;
+            int longitud = linea.length();
+            while (true) {
+                String valor;
+                if (i < longitud && linea.charAt(i) == '"') {
+                    StringBuilder sb = new StringBuilder();
+                    i++;
+                    while (true) {
+                        if (i >= longitud) throw new IllegalArgumentException("Comillas sin cerrar");
+                        char c = linea.charAt(i++);
+                        if (c != '"') {
+                            sb.append(c);
+                        } else if (i < longitud && linea.charAt(i) == '"') {
+                            sb.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                    valor = sb.toString();
+                    if (i < longitud && linea.charAt(i) != ',') {
+                        throw new IllegalArgumentException("Carácter inesperado tras las comillas en la columna " + (n + 1));
+                    }
+                } else {
+                    int coma = linea.indexOf(',', i);
+                    int fin = coma < 0 ? longitud : coma;
+                    valor = linea.substring(i, fin);
+                    i = fin;
+                }
+                if (n < campos.length) campos[n] = valor;
+                n++;
+                if (i >= longitud) return n;
+                i++; // la coma
+            }
+        }
+
+        private static int entero(String texto) {
+            try {
+                return Integer.parseInt(texto.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("La cantidad debe ser un número entero: " + texto);
+            }
+        }
+
+        private static double real(String texto) {
+            try {
+                return Double.parseDouble(texto.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("El precio unitario debe ser un número: " + texto);
+            }
+        }
+
+        private void leerNdjson(BufferedReader lector) throws IOException {
+            String linea;
+            long numero = lineasPrevias;
+            while ((linea = lector.readLine()) != null) {
+                numero++;
+                if (linea.isBlank()) continue;
+                try {
+                    agregar(leerObjeto(linea));
+                } catch (JsonProcessingException e) {
+                    rechazar(numero, "JSON inválido: " + e.getOriginalMessage());
+                } catch (IllegalArgumentException e) {
+                    rechazar(numero, e.getMessage());
+                }
+            }
+        }
+
+        /** Lee los campos con el parser de streaming de Jackson, sin mapear a un objeto intermedio. */
+        private Venta leerObjeto(String linea) throws IOException {
+            try (JsonParser p = JSON.createParser(linea)) {
+                if (p.nextToken() != JsonToken.START_OBJECT) {
+                    throw new IllegalArgumentException("Cada línea debe ser un objeto JSON");
+                }
+                String producto = null;
+                String fecha = null;
+                Integer cantidad = null;
+                Double precio = null;
+                for (JsonToken t = p.nextToken(); t == JsonToken.FIELD_NAME; t = p.nextToken()) {
+                    String nombre = p.getCurrentName();
+                    JsonToken valor = p.nextToken();
+                    switch (nombre) {
+                        case "producto":
+                            producto = valor == JsonToken.VALUE_NULL ? null : texto(p, valor, nombre);
+                            break;
+                        case "cantidad":
+                            if (valor != JsonToken.VALUE_NUMBER_INT) {
+                                throw new IllegalArgumentException("La cantidad debe ser un número entero");
+                            }
+                            cantidad = p.getIntValue();
+                            break;
+                        case "precioUnitario":
+                            if (!valor.isNumeric()) throw new IllegalArgumentException("El precio unitario debe ser un número");
+                            precio = p.getDoubleValue();
+                            break;
+                        case "fecha":
+                            fecha = valor == JsonToken.VALUE_NULL ? null : texto(p, valor, nombre);
+                            break;
+                        default:
+                            p.skipChildren();
+                    }
+                }
+                if (p.nextToken() != null) throw new IllegalArgumentException("Contenido sobrante tras el objeto JSON");
+                if (cantidad == null || precio == null) {
+                    throw new IllegalArgumentException("Faltan campos: se esperan producto, cantidad y precioUnitario");
+                }
+                return venta(producto, cantidad, precio, fecha);
+            }
+        }
+
+        private static String texto(JsonParser p, JsonToken valor, String nombre) throws IOException {
+            if (valor != JsonToken.VALUE_STRING) throw new IllegalArgumentException("El campo " + nombre + " debe ser un texto");
+            return p.getText();
+        }
+
+        private Venta venta(String producto, int cantidad, double precioUnitario, String fecha) {
+            if (producto == null || producto.isBlank()) throw new IllegalArgumentException("Falta el producto");
+            if (cantidad <= 0) throw new IllegalArgumentException("La cantidad debe ser mayor que 0");
+            if (!(precioUnitario >= 0) || Double.isInfinite(precioUnitario)) {
+                throw new IllegalArgumentException("El precio unitario debe ser un número no negativo");
+            }
+            Fecha f = fecha(fecha);
+            Venta v = new Venta();
+            v.producto = compartido(productos, producto);
+            v.cantidad = cantidad;
+            v.precioUnitario = precioUnitario;
+            v.fecha = f.texto;
+            v.dia = f.dia;
+            return v;
+        }
+
+        private Fecha fecha(String texto) {
+            if (texto == null || texto.isBlank()) return hoy;
+            Fecha f = fechas.get(texto);
+            if (f == null) {
+                f = new Fecha(texto, VentaService.diaDe(texto.trim(), "fecha"));
+                if (fechas.size() >= MAXIMO_CACHE) fechas.clear();
+                fechas.put(texto, f);
+            }
+            return f;
+        }
+
+        /** Un solo String por nombre de producto en lugar de uno por fila. */
+        private static String compartido(Map<String, String> cache, String texto) {
+            String previo = cache.get(texto);
+            if (previo != null) return previo;
+            if (cache.size() >= MAXIMO_CACHE) cache.clear();
+            cache.put(texto, texto);
+            return texto;
+        }
+
+        private void agregar(Venta v) {
+            lote.add(v);
+            if (lote.size() >= TAMANO_LOTE) vaciar();
+        }
+
+        private void rechazar(long linea, String error) {
+            resultado.rechazadas++;
+            if (resultado.rechazos.size() < MAXIMO_RECHAZOS_DETALLADOS) resultado.rechazos.add(new Rechazo(linea, error));
+        }
+
+        private void vaciar() {
+            if (lote.isEmpty()) return;
+            destino.accept(lote);
+            resultado.aceptadas += lote.size();
+            lote.clear();
+        }
+    }
+
+    /** Totales de una importación; "rechazos" detalla como máximo los primeros 1000. */
+    static class ResultadoImportacion {
+        public long aceptadas;
+        public long rechazadas;
+        public List<Rechazo> rechazos = new ArrayList<>();
+    }
+
+    static class Rechazo {
+        public long linea;
+        public String error;
+
+        public Rechazo(long linea, String error) {
+            this.linea = linea;
+            this.error = error;
+        }
+    }
+
+    // ==========================================
+    // ESTADÍSTICAS EN VIVO (GET /estadisticas/stream)
+    // ==========================================
+
+    /**
+     * Difusión de las estadísticas globales por Server-Sent Events.
+     *
+     * registrar solo marca que hubo cambios. Un único hilo revisa la marca cada intervalo y,
+     * si hubo ventas, calcula las estadísticas y serializa el evento UNA vez para todos los
+     * suscriptores: como mucho un envío por intervalo, lleguen las ventas que lleguen.
+     *
+     * Cada conexión escribe con E/S no bloqueante (WriteListener) y guarda como mucho un
+     * evento pendiente. Cada evento es la foto completa, así que con un cliente lento el nuevo
+     * sustituye al pendiente y el cliente salta directamente al último estado: ningún hilo
+     * espera a un cliente lento y la memoria por conexión está acotada.
+     *
+     * Configuración (propiedades del sistema):
+     *  -Dventas.sse.intervaloMs=1000   mínimo entre dos envíos
+     *  -Dventas.sse.latidoMs=15000     comentario de latido sin cambios (detecta conexiones muertas)
+     *
+     * Suscriptores, eventos enviados y eventos saltados por clientes lentos se publican en /metrics.
+     */
+    static final class DifusorEstadisticas {
+        private static final ObjectMapper mapper = new ObjectMapper();
+        private static final byte[] LATIDO = ": latido\n\n".getBytes(StandardCharsets.UTF_8);
+
+        private final long intervaloMs;
+        private final long latidoMs;
+        private final Supplier<Estadisticas> calcular;
+        private final Set<Suscriptor> suscriptores = ConcurrentHashMap.newKeySet();
+        private final AtomicBoolean cambios = new AtomicBoolean(true);
+        private final LongAdder enviados = new LongAdder();
+        private final LongAdder saltados = new LongAdder();
+        private volatile byte[] ultimo; // último evento, para quien se suscribe
+        private long secuencia;
+        private long ultimoEnvio;
+        private ScheduledExecutorService reloj;
+
+        DifusorEstadisticas(long intervaloMs, long latidoMs, Supplier<Estadisticas> calcular) {
+            this.intervaloMs = intervaloMs;
+            this.latidoMs = latidoMs;
+            this.calcular = calcular;
+        }
+
+        /** Publica suscriptores, eventos enviados y eventos saltados en las métricas de una aplicación. */
+        void publicarMetricas(Metricas metricas) {
+            metricas.registrarIndicador("sse_subscribers", "stream=\"estadisticas\"",
+                    "Conexiones abiertas a /estadisticas/stream.", suscriptores::size);
+            metricas.registrarContador("sse_events_total", "stream=\"estadisticas\"",
+                    "Eventos entregados a las conexiones de /estadisticas/stream.", enviados::sum);
+            metricas.registrarContador("sse_events_skipped_total", "stream=\"estadisticas\"",
+                    "Eventos sustituidos por otro más reciente antes de llegar a un cliente lento.", saltados::sum);
+        }
+
+        static DifusorEstadisticas desdePropiedades(Supplier<Estadisticas> calcular) {
+            return new DifusorEstadisticas(Long.getLong("ventas.sse.intervaloMs", 1000),
+                    Long.getLong("ventas.sse.latidoMs", 15000), calcular);
+        }
+
+        /** Llamado en cada registrar: una lectura volátil salvo en la primera venta del intervalo. */
+        void publicar() {
+            if (!cambios.get()) cambios.set(true);
+        }
+
+        /**
+         * Atiende una conexión: cabeceras SSE y escritura asíncrona hasta que el cliente se va.
+         * Jetty no retiene ningún hilo mientras la conexión está abierta.
+         */
+        void suscribir(Context ctx) throws IOException {
+            HttpServletResponse res = ctx.res();
+            res.setStatus(200);
+            res.setCharacterEncoding("UTF-8");
+            res.setContentType("text/event-stream");
+            res.setHeader(Header.CACHE_CONTROL, "no-cache");
+            res.setHeader("X-Accel-Buffering", "no");
+            CompletableFuture<Void> fin = new CompletableFuture<>();
+            ctx.future(() -> {
+                try {
+                    conectar(res.getOutputStream(), fin);
+                } catch (IOException e) {
+                    fin.complete(null);
+                }
+                return fin;
+            });
+        }
+
+        /** Da de alta una salida ya asíncrona; "fin" se completa cuando la conexión se cierra. */
+        Suscriptor conectar(ServletOutputStream salida, CompletableFuture<Void> fin) {
+            // El listener va antes de entrar en el conjunto: el reloj solo escribe en modo no bloqueante
+            Suscriptor s = new Suscriptor(salida, fin);
+            salida.setWriteListener(s);
+            suscriptores.add(s);
+            iniciar();
+            byte[] evento = ultimo;
+            if (evento != null) s.ofrecer(evento);
+            return s;
+        }
+
+        private synchronized void iniciar() {
+            if (reloj != null) return;
+            reloj = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "difusor-estadisticas");
+                t.setDaemon(true);
+                return t;
+            });
+            reloj.scheduleWithFixedDelay(this::difundir, intervaloMs, intervaloMs, TimeUnit.MILLISECONDS);
+        }
+
+        /** Un ciclo del reloj: calcula y reparte si hubo cambios, o envía un latido. */
+        void difundir() {
+            try {
+                long ahora = System.currentTimeMillis();
+                if (suscriptores.isEmpty()) return; // la marca sigue puesta para el próximo
+                if (cambios.getAndSet(false)) {
+                    byte[] evento = evento(calcular.get());
+                    ultimo = evento;
+                    ultimoEnvio = ahora;
+                    for (Suscriptor s : suscriptores) s.ofrecer(evento);
+                } else if (ahora - ultimoEnvio >= latidoMs) {
+                    ultimoEnvio = ahora;
+                    for (Suscriptor s : suscriptores) s.ofrecerSiLibre(LATIDO);
+                }
+            } catch (RuntimeException e) {
+                // Un fallo puntual no debe parar el reloj
+                cambios.set(true);
+            }
+        }
+
+        private byte[] evento(Estadisticas e) {
+            try {
+                String datos = mapper.writeValueAsString(e);
+                return ("id: " + (++secuencia) + "\nevent: estadisticas\ndata: " + datos + "\n\n").getBytes(StandardCharsets.UTF_8);
+            } catch (JsonProcessingException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+
+        int suscriptores() {
+            return suscriptores.size();
+        }
+
+        /**
+         * Una conexión: el evento pendiente (como mucho uno) y la escritura no bloqueante.
+         * escribir() lo llaman el hilo del reloj y Jetty (onWritePossible), de ahí el cerrojo.
+         */
+        final class Suscriptor implements WriteListener {
+            private final ServletOutputStream salida;
+            private final CompletableFuture<Void> fin;
+            private final AtomicReference<byte[]> pendiente = new AtomicReference<>();
+            private boolean porVaciar;
+
+            Suscriptor(ServletOutputStream salida, CompletableFuture<Void> fin) {
+                this.salida = salida;
+                this.fin = fin;
+            }
+
+            void ofrecer(byte[] evento) {
+                byte[] anterior = pendiente.getAndSet(evento);
+                if (anterior != null && anterior != LATIDO) saltados.increment();
+                escribir();
+            }
+
+            void ofrecerSiLibre(byte[] latido) {
+                if (pendiente.compareAndSet(null, latido)) escribir();
+            }
+
+            @Override
+            public void onWritePossible() {
+                escribir();
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                cerrar();
+            }
+
+            private synchronized void escribir() {
+                if (fin.isDone()) return;
+                try {
+                    while (salida.isReady()) {
+                        if (porVaciar) {
+                            porVaciar = false;
+                            salida.flush();
+                            continue;
+                        }
+                        byte[] evento = pendiente.getAndSet(null);
+                        if (evento == null) return;
+                        salida.write(evento);
+                        porVaciar = true;
+                        if (evento != LATIDO) enviados.increment();
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    cerrar();
+                }
+            }
+
+            private void cerrar() {
+                suscriptores.remove(this);
+                fin.complete(null);
+            }
+        }
+    }
+
     // ==========================================
     // CONTROLADORES
     // ==========================================
     static class VentaController {
+        private static final int LIMITE_POR_DEFECTO = 100;
+        private static final int LIMITE_MAXIMO = 1000;
+
+        /**
+         * ?fecha_inicio= y/o ?fecha_fin= (AAAA-MM-DD) devuelven solo ese tramo, en orden cronológico.
+         * ?producto= se resuelve con el índice de productos (sin distinguir mayúsculas); con
+         * ?limit= y/o ?after= devuelve {"ventas":[...],"siguiente":n}, donde "siguiente" es la
+         * posición tras la última venta devuelta.
+         */
         public static void obtenerTodas(Context ctx) {
             String p = ctx.queryParam("producto");
-            if (p != null) {
-                ctx.json(VentaService.obtenerTodas().stream()
-                    .filter(v -> v.producto.equalsIgnoreCase(p))
-                    .collect(Collectors.toList()));
+            String inicio = ctx.queryParam("fecha_inicio");
+            String fin = ctx.queryParam("fecha_fin");
+            if (p != null && (ctx.queryParam("limit") != null || ctx.queryParam("after") != null)) {
+                if (inicio != null || fin != null) {
+                    throw new IllegalArgumentException("La paginación por producto no admite fecha_inicio ni fecha_fin");
+                }
+                int limite = ctx.queryParamAsClass("limit", Integer.class)
+                    .check(l -> l >= 1 && l <= LIMITE_MAXIMO, "El parámetro limit debe estar entre 1 y " + LIMITE_MAXIMO)
+                    .getOrDefault(LIMITE_POR_DEFECTO);
+                int despuesDe = ctx.queryParamAsClass("after", Integer.class)
+                    .check(a -> a >= 0, "El parámetro after no puede ser negativo")
+                    .getOrDefault(0);
+                List<Venta> pagina = VentaService.paginaPorProducto(p, despuesDe, limite);
+                Map<String, Object> respuesta = new LinkedHashMap<>();
+                respuesta.put("ventas", pagina);
+                respuesta.put("siguiente", despuesDe + pagina.size());
+                ctx.json(respuesta);
+            } else if (p != null) {
+                ctx.json(VentaService.obtenerPorProducto(p, inicio, fin));
+            } else if (inicio != null || fin != null) {
+                ctx.json(VentaService.obtenerRango(inicio, fin));
             } else {
                 ctx.json(VentaService.obtenerTodas());
             }
         }
 
+        /**
+         * Agregación por ?agrupar=producto|dia|semana|mes de la ?medida=total|cantidad|precioUnitario
+         * con las ?metricas=suma,cuenta,media,min,max pedidas, para cada uno de los
+         * ?periodos=2024-01-01..2024-03-31,2025-01-01..2025-03-31. ?top=N deja los N grupos con
+         * mayor ?orden= (suma por defecto); ?producto= filtra por nombre exacto.
+         */
+        public static void consultar(Context ctx) {
+            Consulta consulta = Consulta.desdeParametros(ctx.queryParam("agrupar"), ctx.queryParam("medida"),
+                ctx.queryParam("metricas"), ctx.queryParam("periodos"), ctx.queryParam("orden"), ctx.queryParam("producto"));
+            consulta.top = ctx.queryParamAsClass("top", Integer.class)
+                .check(t -> t >= 1 && t <= LIMITE_MAXIMO, "El parámetro top debe estar entre 1 y " + LIMITE_MAXIMO)
+                .getOrDefault(0);
+            ctx.json(VentaService.consultar(consulta));
+        }
+
         public static void obtenerUna(Context ctx) {
             Long id = Long.parseLong(ctx.pathParam("id"));
             Venta v = VentaService.ventas.get(id);
@@ -160,11 +2121,48 @@ public class VentaApp {
             ctx.status(201).json(VentaService.registrar(nueva));
         }
 
+        /**
+         * Importación masiva en CSV o NDJSON (?formato=, si no el Content-Type o el primer
+         * carácter). Responde {"aceptadas":n,"rechazadas":m,"rechazos":[{"linea":3,"error":"..."}]}.
+         */
+        public static void importar(Context ctx) throws IOException {
+            PushbackInputStream cuerpo = new PushbackInputStream(ctx.req().getInputStream(), 1);
+            int primero = cuerpo.read();
+            // Las líneas en blanco iniciales se consumen aquí, pero siguen contando en los rechazos
+            long lineasEnBlanco = 0;
+            while (primero != -1 && Character.isWhitespace(primero)) {
+                if (primero == '\n') lineasEnBlanco++;
+                primero = cuerpo.read();
+            }
+            if (primero != -1) cuerpo.unread(primero);
+            ImportadorVentas.Formato formato = ImportadorVentas.formato(ctx.queryParam("formato"), ctx.contentType(), primero);
+            ctx.json(new ImportadorVentas(VentaService::registrarLote).importar(cuerpo, formato, lineasEnBlanco));
+        }
+
         public static void obtenerEstadisticas(Context ctx) {
             String inicio = ctx.queryParam("fecha_inicio");
             String fin = ctx.queryParam("fecha_fin");
             ctx.json(VentaService.calcularEstadisticas(inicio, fin));
         }
+
+        /**
+         * Productos distintos, top-?k (1-32, 10 por defecto) de productos por unidades y
+         * mediana/p95/p99 del importe por venta, a partir de bocetos; cada cifra lleva su cota de error.
+         */
+        public static void obtenerAproximadas(Context ctx) {
+            int top = ctx.queryParamAsClass("k", Integer.class)
+                .check(k -> k >= 1 && k <= Candidatos.CAPACIDAD, "El parámetro k debe estar entre 1 y " + Candidatos.CAPACIDAD)
+                .getOrDefault(10);
+            ctx.json(VentaService.calcularAproximadas(ctx.queryParam("fecha_inicio"), ctx.queryParam("fecha_fin"), top));
+        }
+
+        public static void obtenerTotalesProductos(Context ctx) {
+            ctx.json(VentaService.totalesPorProducto());
+        }
+
+        public static void obtenerTotalesProducto(Context ctx) {
+            ctx.json(VentaService.totalesProducto(ctx.pathParam("producto")));
+        }
     }
 
     private static void servirInterfaz(Context ctx) {
@@ -193,12 +2191,13 @@ public class VentaApp {
             "<table><thead><tr><th>ID</th><th>Producto</th><th>Cant.</th><th>Total</th><th>Fecha</th></tr></thead>" +
             "<tbody id='tabla'></tbody></table>" +
             "<script>" +
-            "async function actualizar(){" +
-            "  const rS = await fetch('/estadisticas'); const s = await rS.json();" +
+            "function pintar(s){" +
             "  document.getElementById('total').innerText = '$' + s.totalVentas.toFixed(2);" +
             "  document.getElementById('count').innerText = s.numeroTransacciones;" +
             "  document.getElementById('top').innerText = s.productoMasVendido;" +
             "  document.getElementById('avg').innerText = '$' + s.ventaPromedio.toFixed(2);" +
+            "}" +
+            "async function actualizar(){" +
             "  const rV = await fetch('/ventas'); const ventas = await rV.json();" +
             "  document.getElementById('tabla').innerHTML = ventas.map(v => `<tr>" +
             "    <td>${v.id}</td><td>${v.producto}</td><td>${v.cantidad}</td><td>$${v.total.toFixed(2)}</td><td>${v.fecha}</td>" +
@@ -209,6 +2208,9 @@ public class VentaApp {
             "  await fetch('/ventas', {method:'POST', body:JSON.stringify(body), headers:{'Content-Type':'application/json'}});" +
             "  actualizar();" +
             "}" +
+            // Las estadísticas llegan por SSE (como mucho una vez por intervalo); no hay sondeo
+            "const fuente = new EventSource('/estadisticas/stream');" +
+            "fuente.addEventListener('estadisticas', e => pintar(JSON.parse(e.data)));" +
             "actualizar();" +
             "</script></body></html>");
     }
@@ -1,4 +1,6 @@
+import estaticos.RecursosEstaticos;
 import io.javalin.Javalin;
+import metricas.Metricas;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -12,13 +14,30 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class MainEjemplo5Javalin {
 
     public static void main(String[] args) {
+        crearApp().start(7070);
 
+        // Logs de inicio
+        System.out.println("\n" + "=".repeat(40));
+        System.out.println("SERVIDOR PRODUCTOS INICIADO");
+        System.out.println("URL: http://localhost:7070/api/productos");
+        System.out.println("=".repeat(40));
+    }
+
+    /**
+     * Crea la aplicación con todas sus rutas, sin arrancar el servidor.
+     */
+    public static Javalin crearApp() {
         // 1. Configuración de Javalin
         Javalin app = Javalin.create(config -> {
             config.http.defaultContentType = "application/json";
-            // Asegúrate de que la carpeta src/main/resources/public exista si usas esto
-            config.staticFiles.add("/public");
-        }).start(7070);
+            config.requestLogger.http(Metricas::registrar);
+        });
+
+        // Métricas por ruta en GET /metrics
+        Metricas.instalar(app);
+
+        // Recursos de src/main/resources/public: precomprimidos, con huella y servidos desde memoria
+        RecursosEstaticos.desdeClasspath("/public").registrar(app);
 
         // 2. Registro de Rutas (Llamando al controlador que definimos abajo)
         ProductoController.registrarRutas(app);
@@ -32,12 +51,7 @@ public class MainEjemplo5Javalin {
             ctx.status(500).json(Map.of("error", "Error interno", "detalle", e.getMessage()));
             e.printStackTrace();
         });
-
-        // Logs de inicio
-        System.out.println("\n" + "=".repeat(40));
-        System.out.println("SERVIDOR PRODUCTOS INICIADO");
-        System.out.println("URL: http://localhost:7070/api/productos");
-        System.out.println("=".repeat(40));
+        return app;
     }
 
     /**
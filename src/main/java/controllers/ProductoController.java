@@ -1,10 +1,32 @@
 package controllers;
 
 import models.Producto;
+import services.ConflictoVersionException;
 import services.ProductoService;
 import io.javalin.Javalin;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletionException;
+import java.util.stream.Stream;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.DatabindException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.javalin.http.ContentType;
 import io.javalin.http.Context;
+import io.javalin.http.Header;
 
 /**
  * Controlador para endpoints de productos.
@@ -13,6 +35,15 @@ import io.javalin.http.Context;
 public class ProductoController {
     private static final ProductoService servicio = new ProductoService();
 
+    // Límites de la paginación por cursor
+    private static final int LIMITE_POR_DEFECTO = 100;
+    private static final int LIMITE_MAXIMO = 1000;
+
+    // Ingesta masiva: lectura en streaming e inserción por lotes
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final ObjectReader lectorProducto = mapper.readerFor(Producto.class);
+    private static final int TAMANO_LOTE = 1000;
+
     /**
      * Registro de todas las rutas de productos en la aplicación.
      */
@@ -21,15 +52,131 @@ public class ProductoController {
         app.get("/api/productos", ProductoController::obtenerTodos);
         app.get("/api/productos/{id}", ProductoController::obtenerPorId);
         app.post("/api/productos", ProductoController::crear);
+        app.post("/api/productos/_bulk", ProductoController::crearBulk);
         app.put("/api/productos/{id}", ProductoController::actualizar);
         app.delete("/api/productos/{id}", ProductoController::eliminar);
     }
 
     /**
-     * Obtener todos los productos.
+     * Obtener productos.
+     * Con ?precioMin=, ?precioMax=, ?nombrePrefix= o ?sort= consulta los índices secundarios
+     * (admite ?limit=, no ?after=).
+     * Con ?limit= y/o ?after= devuelve una página ordenada por ID y el cursor siguiente.
+     * Sin parámetros escribe el array JSON en streaming mientras recorre el almacén.
+     * Los listados se forman concatenando el JSON pre-serializado de cada producto.
+     */
+    private static void obtenerTodos(Context ctx) throws IOException {
+        // El ETag del listado es la versión del catálogo: cualquier escritura lo cambia. Se lee
+        // antes que los datos (como mucho el cliente revalida de más), pero solo se envía con
+        // la respuesta 200, después de validar los parámetros.
+        String etag = "\"c" + servicio.versionCatalogo() + "\"";
+
+        String limitParam = ctx.queryParam("limit");
+        String afterParam = ctx.queryParam("after");
+
+        if (ctx.queryParam("precioMin") != null || ctx.queryParam("precioMax") != null
+                || ctx.queryParam("nombrePrefix") != null || ctx.queryParam("sort") != null) {
+            if (afterParam != null) {
+                // El cursor es un ID y solo ordena la paginación por ID
+                ctx.status(400).json(Map.of("error", "El parámetro after no se puede combinar con precioMin, precioMax, nombrePrefix ni sort"));
+                return;
+            }
+            buscar(ctx, limitParam, etag);
+            return;
+        }
+
+        if (limitParam == null && afterParam == null) {
+            if (!noModificado(ctx, etag)) escribirArray(ctx, servicio.streamTodos());
+            return;
+        }
+
+        int limite;
+        int despuesDe;
+        try {
+            limite = limitParam != null ? Integer.parseInt(limitParam) : LIMITE_POR_DEFECTO;
+            despuesDe = afterParam != null ? Integer.parseInt(afterParam) : 0;
+        } catch (NumberFormatException e) {
+            ctx.status(400).json(Map.of("error", "Los parámetros limit y after deben ser números válidos"));
+            return;
+        }
+
+        if (limite <= 0 || limite > LIMITE_MAXIMO) {
+            ctx.status(400).json(Map.of("error", "El parámetro limit debe estar entre 1 y " + LIMITE_MAXIMO));
+            return;
+        }
+
+        if (noModificado(ctx, etag)) {
+            return;
+        }
+
+        List<Producto> pagina = servicio.obtenerPagina(despuesDe, limite);
+        // Si la página viene llena puede haber más: el cursor es el último ID devuelto
+        String siguiente = pagina.size() == limite ? String.valueOf(pagina.get(pagina.size() - 1).getId()) : "null";
+
+        // {"productos":[...],"siguiente":n}
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        OutputStream salida = new BufferedOutputStream(ctx.outputStream(), 1 << 13);
+        salida.write("{\"productos\":".getBytes(StandardCharsets.UTF_8));
+        servicio.escribirArrayJson(pagina.stream(), salida);
+        salida.write((",\"siguiente\":" + siguiente + "}").getBytes(StandardCharsets.UTF_8));
+        salida.flush();
+    }
+
+    /**
+     * Escribe un array JSON con los fragmentos pre-serializados de los productos.
+     */
+    private static void escribirArray(Context ctx, Stream<Producto> productos) throws IOException {
+        ctx.contentType(ContentType.APPLICATION_JSON);
+        OutputStream salida = new BufferedOutputStream(ctx.outputStream(), 1 << 13);
+        servicio.escribirArrayJson(productos, salida);
+        salida.flush();
+    }
+
+    /**
+     * Responde con el JSON pre-serializado de un producto.
      */
-    private static void obtenerTodos(Context ctx) {
-        ctx.json(servicio.obtenerTodos());
+    private static void responder(Context ctx, Producto producto) {
+        ctx.contentType(ContentType.APPLICATION_JSON).result(servicio.json(producto));
+    }
+
+    /**
+     * Consulta indexada por precio, prefijo de nombre y orden.
+     * El resultado se escribe en streaming; ?limit= opcional corta la respuesta.
+     */
+    private static void buscar(Context ctx, String limitParam, String etag) throws IOException {
+        Double precioMin;
+        Double precioMax;
+        Integer limite;
+        try {
+            precioMin = ctx.queryParam("precioMin") != null ? Double.valueOf(ctx.queryParam("precioMin")) : null;
+            precioMax = ctx.queryParam("precioMax") != null ? Double.valueOf(ctx.queryParam("precioMax")) : null;
+            limite = limitParam != null ? Integer.valueOf(limitParam) : null;
+        } catch (NumberFormatException e) {
+            ctx.status(400).json(Map.of("error", "Los parámetros precioMin, precioMax y limit deben ser números válidos"));
+            return;
+        }
+
+        if ((precioMin != null && !Double.isFinite(precioMin)) || (precioMax != null && !Double.isFinite(precioMax))) {
+            ctx.status(400).json(Map.of("error", "Los parámetros precioMin y precioMax deben ser números finitos"));
+            return;
+        }
+
+        if (limite != null && (limite <= 0 || limite > LIMITE_MAXIMO)) {
+            ctx.status(400).json(Map.of("error", "El parámetro limit debe estar entre 1 y " + LIMITE_MAXIMO));
+            return;
+        }
+
+        Stream<Producto> resultado;
+        try {
+            resultado = servicio.buscar(precioMin, precioMax, ctx.queryParam("nombrePrefix"), ctx.queryParam("sort"));
+        } catch (IllegalArgumentException e) {
+            ctx.status(400).json(Map.of("error", e.getMessage()));
+            return;
+        }
+        if (noModificado(ctx, etag)) {
+            return;
+        }
+        escribirArray(ctx, limite != null ? resultado.limit(limite) : resultado);
     }
 
     /**
@@ -41,7 +188,9 @@ public class ProductoController {
             Producto producto = servicio.obtenerPorId(id);
 
             if (producto != null) {
-                ctx.json(producto);
+                if (!noModificado(ctx, etag(producto))) {
+                    responder(ctx, producto);
+                }
             } else {
                 ctx.status(404).json(Map.of("error", "Producto no encontrado"));
             }
@@ -57,18 +206,226 @@ public class ProductoController {
         Producto producto = ctx.bodyAsClass(Producto.class);
 
         // Validaciones básicas
-        if (producto.getNombre() == null || producto.getNombre().trim().isEmpty()) {
-            ctx.status(400).json(Map.of("error", "El nombre no puede estar vacío"));
+        String error = validar(producto);
+        if (error != null) {
+            ctx.status(400).json(Map.of("error", error));
             return;
         }
 
+        Producto creado = servicio.crear(producto);
+        ctx.header(Header.ETAG, etag(creado));
+        ctx.status(201);
+        responder(ctx, creado);
+    }
+
+    /**
+     * Validaciones comunes de los datos de un producto.
+     *
+     * @return Mensaje de error o null si el producto es válido.
+     */
+    private static String validar(Producto producto) {
+        if (producto == null || producto.getNombre() == null || producto.getNombre().trim().isEmpty()) {
+            return "El nombre no puede estar vacío";
+        }
         if (producto.getPrecio() <= 0) {
-            ctx.status(400).json(Map.of("error", "El precio debe ser mayor a 0"));
+            return "El precio debe ser mayor a 0";
+        }
+        return null;
+    }
+
+    /**
+     * Crear productos en bloque.
+     * Acepta NDJSON (un producto por línea) o un array JSON, y lo lee en streaming sin
+     * cargar el cuerpo en memoria. Cada elemento se valida como en crear() y los válidos
+     * se insertan por lotes. La respuesta también se escribe en streaming:
+     * {"resultados":[{"linea":1,"estado":201,"id":7},{"linea":2,"estado":400,"error":"..."}],
+     *  "creados":1,"rechazados":1}
+     *
+     * Si el catálogo ya no admite escrituras (WAL cerrado o detenido) se responde 503 sin
+     * leer el cuerpo. Si deja de admitirlas a mitad, el 200 ya está enviado: las líneas del
+     * lote en curso se marcan con estado 503, la lectura se detiene y el objeto termina con
+     * "error"; sin ese campo la respuesta está completa.
+     */
+    private static void crearBulk(Context ctx) throws IOException {
+        try {
+            ProductoService.comprobarEscritura();
+        } catch (IllegalStateException e) {
+            ctx.status(503).json(Map.of("error", e.getMessage()));
             return;
         }
 
-        Producto creado = servicio.crear(producto);
-        ctx.status(201).json(creado);
+        PushbackInputStream cuerpo = new PushbackInputStream(ctx.req().getInputStream(), 1);
+        int primero = cuerpo.read();
+        // Las líneas en blanco iniciales se consumen aquí, pero siguen contando para "linea"
+        int lineasEnBlanco = 0;
+        while (primero != -1 && Character.isWhitespace(primero)) {
+            if (primero == '\n') lineasEnBlanco++;
+            primero = cuerpo.read();
+        }
+        if (primero != -1) cuerpo.unread(primero);
+
+        ctx.status(200).contentType(ContentType.APPLICATION_JSON);
+        try (JsonGenerator salida = mapper.getFactory().createGenerator(ctx.outputStream())) {
+            LoteBulk lote = new LoteBulk(salida);
+            salida.writeStartObject();
+            salida.writeArrayFieldStart("resultados");
+
+            String error = null;
+            try {
+                if (primero == '[') {
+                    leerArray(cuerpo, lote);
+                } else {
+                    leerNdjson(cuerpo, lote, lineasEnBlanco);
+                }
+                lote.vaciar();
+            } catch (EscrituraInterrumpida e) {
+                error = e.getMessage();
+            }
+
+            salida.writeEndArray();
+            if (error != null) salida.writeStringField("error", error);
+            salida.writeNumberField("creados", lote.creados);
+            salida.writeNumberField("rechazados", lote.rechazados);
+            salida.writeEndObject();
+        }
+    }
+
+    /**
+     * NDJSON: cada línea se parsea por separado, así que una línea mal formada
+     * solo rechaza esa línea. "lineasPrevias" son las líneas en blanco ya consumidas.
+     */
+    private static void leerNdjson(PushbackInputStream cuerpo, LoteBulk lote, int lineasPrevias) throws IOException {
+        BufferedReader lector = new BufferedReader(new InputStreamReader(cuerpo, StandardCharsets.UTF_8), 1 << 16);
+        String linea;
+        int numero = lineasPrevias;
+        while ((linea = lector.readLine()) != null) {
+            numero++;
+            if (linea.isBlank()) continue;
+            try {
+                lote.agregar(numero, lectorProducto.readValue(linea));
+            } catch (JsonProcessingException e) {
+                lote.rechazar(numero, "JSON inválido: " + e.getOriginalMessage());
+            }
+        }
+    }
+
+    /**
+     * Array JSON: se recorre elemento a elemento con el parser de streaming de Jackson.
+     * Un elemento bien formado que no encaja en Producto (tipo incorrecto, propiedad
+     * desconocida) se rechaza y el iterador salta al siguiente. Un error de sintaxis deja el
+     * parser en un estado irrecuperable, así que termina la lectura.
+     */
+    private static void leerArray(PushbackInputStream cuerpo, LoteBulk lote) throws IOException {
+        // readValues(InputStream) desenvuelve el array raíz y devuelve sus elementos de uno en uno
+        try (MappingIterator<Producto> elementos = lectorProducto.readValues(cuerpo)) {
+            int numero = 0;
+            while (true) {
+                numero++;
+                try {
+                    if (!elementos.hasNextValue()) break;
+                    lote.agregar(numero, elementos.nextValue());
+                } catch (DatabindException e) {
+                    lote.rechazar(numero, "JSON inválido: " + e.getOriginalMessage());
+                } catch (JsonProcessingException e) {
+                    lote.rechazar(numero, "JSON inválido: " + e.getOriginalMessage());
+                    break;
+                }
+            }
+        }
+    }
+
+    /** El catálogo dejó de admitir escrituras a mitad de un _bulk. */
+    private static final class EscrituraInterrumpida extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        EscrituraInterrumpida(String mensaje) {
+            super(mensaje);
+        }
+    }
+
+    /**
+     * Acumula productos válidos hasta TAMANO_LOTE y los inserta de una vez,
+     * escribiendo los resultados en el mismo orden de entrada. Los rechazos esperan en
+     * el mismo búfer (error != null) para no partir el lote; si se acumulan TAMANO_LOTE
+     * rechazos también se vacía, para acotar la memoria.
+     */
+    private static final class LoteBulk {
+        private final JsonGenerator salida;
+        private final List<Integer> lineas = new ArrayList<>(TAMANO_LOTE);
+        // Error de cada línea pendiente, o null si es un producto aceptado
+        private final List<String> errores = new ArrayList<>(TAMANO_LOTE);
+        private final List<Producto> productos = new ArrayList<>(TAMANO_LOTE);
+        private int rechazosPendientes;
+        private long creados;
+        private long rechazados;
+
+        LoteBulk(JsonGenerator salida) {
+            this.salida = salida;
+        }
+
+        void agregar(int linea, Producto producto) throws IOException {
+            String error = validar(producto);
+            if (error != null) {
+                rechazar(linea, error);
+                return;
+            }
+            lineas.add(linea);
+            errores.add(null);
+            productos.add(producto);
+            if (productos.size() >= TAMANO_LOTE) vaciar();
+        }
+
+        void rechazar(int linea, String error) throws IOException {
+            lineas.add(linea);
+            errores.add(error);
+            if (++rechazosPendientes >= TAMANO_LOTE) vaciar();
+        }
+
+        /**
+         * Inserta los aceptados pendientes y escribe todos los resultados en orden.
+         *
+         * @throws EscrituraInterrumpida si el catálogo dejó de admitir escrituras; las líneas
+         *         aceptadas de este lote se escriben con estado 503.
+         */
+        void vaciar() throws IOException {
+            if (lineas.isEmpty()) return;
+            List<Producto> insertados = null;
+            String fallo = null;
+            if (!productos.isEmpty()) {
+                try {
+                    insertados = servicio.crearLote(productos);
+                } catch (IllegalStateException e) {
+                    fallo = e.getMessage();
+                } catch (CompletionException e) {
+                    // Aplicado en memoria pero sin confirmar en el WAL
+                    fallo = "No se pudo confirmar la escritura: " + e.getCause();
+                }
+            }
+            int siguiente = 0;
+            for (int i = 0; i < lineas.size(); i++) {
+                salida.writeStartObject();
+                salida.writeNumberField("linea", lineas.get(i));
+                String error = errores.get(i);
+                if (error != null) {
+                    salida.writeNumberField("estado", 400);
+                    salida.writeStringField("error", error);
+                    rechazados++;
+                } else if (fallo != null) {
+                    salida.writeNumberField("estado", 503);
+                    salida.writeStringField("error", fallo);
+                } else {
+                    salida.writeNumberField("estado", 201);
+                    salida.writeNumberField("id", insertados.get(siguiente++).getId());
+                    creados++;
+                }
+                salida.writeEndObject();
+            }
+            lineas.clear();
+            errores.clear();
+            productos.clear();
+            rechazosPendientes = 0;
+            if (fallo != null) throw new EscrituraInterrumpida(fallo);
+        }
     }
 
     /**
@@ -86,27 +443,29 @@ public class ProductoController {
             }
 
             // 2. Validar datos del cuerpo
-            if (datosActualizados.getNombre() == null || datosActualizados.getNombre().trim().isEmpty()) {
-                ctx.status(400).json(Map.of("error", "El nombre no puede estar vacío"));
-                return;
-            }
-
-            if (datosActualizados.getPrecio() <= 0) {
-                ctx.status(400).json(Map.of("error", "El precio debe ser mayor a 0"));
+            String error = validar(datosActualizados);
+            if (error != null) {
+                ctx.status(400).json(Map.of("error", error));
                 return;
             }
 
+            // 3. If-Match: la comprobación de versión y la escritura son atómicas en el servicio
             datosActualizados.setId(id);
-            Producto actualizado = servicio.actualizar(datosActualizados);
+            Producto actualizado = servicio.actualizar(datosActualizados, versionIfMatch(ctx));
 
             if (actualizado != null) {
-                ctx.status(200).json(actualizado);
+                ctx.header(Header.ETAG, etag(actualizado));
+                ctx.status(200);
+                responder(ctx, actualizado);
             } else {
-                ctx.status(500).json(Map.of("error", "Error interno al actualizar el producto"));
+                // Eliminado entre la comprobación y la escritura
+                ctx.status(404).json(Map.of("error", "No se puede actualizar: Producto no encontrado"));
             }
 
         } catch (NumberFormatException e) {
             ctx.status(400).json(Map.of("error", "El ID debe ser un número válido"));
+        } catch (ConflictoVersionException e) {
+            ctx.status(412).json(Map.of("error", e.getMessage()));
         }
     }
 
@@ -117,13 +476,71 @@ public class ProductoController {
         try {
             int id = Integer.parseInt(ctx.pathParam("id"));
 
-            if (servicio.eliminar(id)) {
+            if (servicio.eliminar(id, versionIfMatch(ctx))) {
                 ctx.status(204); // No Content
             } else {
                 ctx.status(404).json(Map.of("error", "Producto no encontrado"));
             }
         } catch (NumberFormatException e) {
             ctx.status(400).json(Map.of("error", "El ID debe ser un número válido"));
+        } catch (ConflictoVersionException e) {
+            ctx.status(412).json(Map.of("error", e.getMessage()));
+        }
+    }
+
+    // ==========================================
+    // VERSIONES (ETag / If-None-Match / If-Match)
+    // ==========================================
+
+    private static String etag(Producto producto) {
+        return "\"" + producto.getVersion() + "\"";
+    }
+
+    /**
+     * Añade el ETag a la respuesta y, si el cliente ya tiene esa versión
+     * (If-None-Match), responde 304 sin cuerpo.
+     *
+     * @return true si se ha respondido 304.
+     */
+    private static boolean noModificado(Context ctx, String etag) {
+        ctx.header(Header.ETAG, etag);
+        String cabecera = ctx.header(Header.IF_NONE_MATCH);
+        if (cabecera == null) {
+            return false;
+        }
+        for (String candidato : cabecera.split(",")) {
+            String valor = candidato.trim();
+            if (valor.startsWith("W/")) valor = valor.substring(2);
+            if (valor.equals("*") || valor.equals(etag)) {
+                ctx.status(304);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Versiones aceptadas según If-Match (una lista de ETags separados por comas), o null
+     * si no hay cabecera o incluye "*". If-Match usa la comparación fuerte: un ETag débil
+     * (W/"3") o que no es de un producto no coincide con ninguna versión, y si ninguno
+     * coincide la escritura es un conflicto.
+     */
+    private static Set<Long> versionIfMatch(Context ctx) {
+        String cabecera = ctx.header(Header.IF_MATCH);
+        if (cabecera == null) {
+            return null;
+        }
+        Set<Long> versiones = new HashSet<>();
+        for (String candidato : cabecera.split(",")) {
+            String valor = candidato.trim();
+            if (valor.equals("*")) return null;
+            if (valor.length() < 2 || !valor.startsWith("\"") || !valor.endsWith("\"")) continue;
+            try {
+                versiones.add(Long.parseLong(valor.substring(1, valor.length() - 1)));
+            } catch (NumberFormatException e) {
+                // ETag de otro recurso (p. ej. el del listado): no coincide
+            }
         }
+        return versiones;
     }
 }
\ No newline at end of file
@@ -0,0 +1,284 @@
+package estaticos;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.Header;
+import jakarta.servlet.http.HttpServletResponse;
+import org.eclipse.jetty.server.Response;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Recursos estáticos servidos desde memoria, precomprimidos y con huella de contenido.
+ *
+ * Al arrancar:
+ *  - se leen todos los archivos del directorio del classpath (p. ej. /public)
+ *  - cada recurso que no es HTML recibe un nombre con huella: app.js -> app.1a2b3c4d5e6f.js
+ *  - las referencias en HTML y CSS se reescriben a los nombres con huella
+ *  - los tipos de texto se comprimen una vez con gzip (nivel máximo)
+ *
+ * Al servir:
+ *  - los nombres con huella llevan Cache-Control inmutable de un año
+ *  - el HTML y los nombres originales llevan no-cache + ETag (304 con If-None-Match)
+ *  - se elige gzip o identidad según Accept-Encoding y el cuerpo se entrega a Jetty como
+ *    ByteBuffer directo, sin copiarlo en el búfer de salida
+ */
+public class RecursosEstaticos {
+    private static final String INMUTABLE = "public, max-age=31536000, immutable";
+    private static final String REVALIDAR = "no-cache";
+    private static final int LONGITUD_HUELLA = 12;
+
+    private static final Map<String, String> TIPOS = Map.of(
+        "html", "text/html; charset=utf-8",
+        "css", "text/css; charset=utf-8",
+        "js", "text/javascript; charset=utf-8",
+        "json", "application/json",
+        "svg", "image/svg+xml",
+        "txt", "text/plain; charset=utf-8",
+        "png", "image/png",
+        "jpg", "image/jpeg",
+        "ico", "image/x-icon"
+    );
+
+    /** Una variante ya preparada para enviar. */
+    static final class Recurso {
+        final String tipo;
+        final ByteBuffer identidad;
+        final ByteBuffer gzip; // null si no compensa comprimir
+        final String etag;
+        final String etagGzip;
+        final boolean inmutable;
+
+        Recurso(String tipo, byte[] contenido, String huella, boolean inmutable) {
+            this.tipo = tipo;
+            this.identidad = directo(contenido);
+            byte[] comprimido = comprimible(tipo) ? gzip(contenido) : null;
+            this.gzip = comprimido != null && comprimido.length < contenido.length ? directo(comprimido) : null;
+            this.etag = "\"" + huella + "\"";
+            this.etagGzip = "\"" + huella + "-gz\"";
+            this.inmutable = inmutable;
+        }
+    }
+
+    // ruta pública (/app.1a2b3c4d5e6f.js) -> recurso
+    private final Map<String, Recurso> rutas = new LinkedHashMap<>();
+
+    private RecursosEstaticos() {}
+
+    /**
+     * Carga y prepara todos los archivos de un directorio del classpath.
+     */
+    public static RecursosEstaticos desdeClasspath(String directorio) {
+        URL url = RecursosEstaticos.class.getResource(directorio);
+        if (url == null) {
+            throw new IllegalArgumentException("No existe el directorio de recursos " + directorio);
+        }
+        try {
+            URI uri = url.toURI();
+            if ("jar".equals(uri.getScheme())) {
+                try (FileSystem jar = FileSystems.newFileSystem(uri, Map.of())) {
+                    return desdeDirectorio(jar.getPath(directorio));
+                }
+            }
+            return desdeDirectorio(Paths.get(uri));
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudieron leer los recursos de " + directorio, e);
+        } catch (URISyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    static RecursosEstaticos desdeDirectorio(Path raiz) throws IOException {
+        Map<String, byte[]> archivos = new LinkedHashMap<>();
+        try (Stream<Path> recorrido = Files.walk(raiz)) {
+            for (Path p : recorrido.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                archivos.put(raiz.relativize(p).toString().replace('\\', '/'), Files.readAllBytes(p));
+            }
+        }
+
+        RecursosEstaticos recursos = new RecursosEstaticos();
+        // nombre original -> nombre con huella, para reescribir las referencias
+        Map<String, String> renombrados = new LinkedHashMap<>();
+
+        // 1. Recursos sin referencias a otros (imágenes, JS...), 2. CSS, 3. HTML
+        List<String> orden = new ArrayList<>();
+        archivos.keySet().stream().filter(n -> !n.endsWith(".css") && !n.endsWith(".html")).forEach(orden::add);
+        archivos.keySet().stream().filter(n -> n.endsWith(".css")).forEach(orden::add);
+        archivos.keySet().stream().filter(n -> n.endsWith(".html")).forEach(orden::add);
+
+        for (String nombre : orden) {
+            byte[] contenido = archivos.get(nombre);
+            if (nombre.endsWith(".css") || nombre.endsWith(".html")) {
+                contenido = reescribir(new String(contenido, StandardCharsets.UTF_8), renombrados).getBytes(StandardCharsets.UTF_8);
+            }
+            String tipo = TIPOS.getOrDefault(extension(nombre), "application/octet-stream");
+            String huella = huella(contenido);
+
+            if (nombre.endsWith(".html")) {
+                Recurso r = new Recurso(tipo, contenido, huella, false);
+                recursos.rutas.put("/" + nombre, r);
+                if (nombre.equals("index.html")) recursos.rutas.put("/", r);
+            } else {
+                String conHuella = conHuella(nombre, huella);
+                renombrados.put(nombre, conHuella);
+                recursos.rutas.put("/" + conHuella, new Recurso(tipo, contenido, huella, true));
+                // El nombre original sigue disponible, pero se revalida siempre
+                recursos.rutas.put("/" + nombre, new Recurso(tipo, contenido, huella, false));
+            }
+        }
+        return recursos;
+    }
+
+    /**
+     * Registra las rutas GET y HEAD de cada recurso.
+     */
+    public void registrar(Javalin app) {
+        rutas.forEach((ruta, recurso) -> {
+            app.get(ruta, ctx -> enviar(ctx, recurso, true));
+            app.head(ruta, ctx -> enviar(ctx, recurso, false));
+        });
+    }
+
+    /** Rutas públicas y si son inmutables, para diagnóstico. */
+    public Map<String, Boolean> rutas() {
+        Map<String, Boolean> r = new LinkedHashMap<>();
+        rutas.forEach((ruta, recurso) -> r.put(ruta, recurso.inmutable));
+        return r;
+    }
+
+    private static void enviar(Context ctx, Recurso r, boolean conCuerpo) throws IOException {
+        boolean gzip = r.gzip != null && aceptaGzip(ctx.header(Header.ACCEPT_ENCODING));
+        String etag = gzip ? r.etagGzip : r.etag;
+
+        if (r.gzip != null) ctx.header(Header.VARY, Header.ACCEPT_ENCODING);
+        ctx.header(Header.CACHE_CONTROL, r.inmutable ? INMUTABLE : REVALIDAR);
+        ctx.header(Header.ETAG, etag);
+        String ifNoneMatch = ctx.header(Header.IF_NONE_MATCH);
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            ctx.status(304);
+            return;
+        }
+
+        ctx.contentType(r.tipo);
+        if (gzip) ctx.header(Header.CONTENT_ENCODING, "gzip");
+        ByteBuffer cuerpo = (gzip ? r.gzip : r.identidad).duplicate();
+        HttpServletResponse res = ctx.res();
+        res.setContentLength(cuerpo.remaining());
+        if (!conCuerpo) return;
+        if (res instanceof Response) {
+            // Jetty escribe el búfer directo en el socket sin pasar por el búfer de salida
+            ((Response) res).getHttpOutput().sendContent(cuerpo);
+        } else {
+            byte[] bytes = new byte[cuerpo.remaining()];
+            cuerpo.get(bytes);
+            ctx.result(bytes);
+        }
+    }
+
+    /**
+     * gzip salvo que el cliente lo excluya explícitamente con q=0.
+     */
+    static boolean aceptaGzip(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        for (String parte : acceptEncoding.split(",")) {
+            String[] campos = parte.trim().split(";");
+            String codificacion = campos[0].trim();
+            if (!codificacion.equalsIgnoreCase("gzip") && !codificacion.equals("*")) continue;
+            for (int i = 1; i < campos.length; i++) {
+                String parametro = campos[i].trim();
+                if (parametro.startsWith("q=")) {
+                    try {
+                        return Double.parseDouble(parametro.substring(2)) > 0;
+                    } catch (NumberFormatException e) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sustituye las referencias entre comillas o en url(...) a recursos renombrados.
+     */
+    static String reescribir(String texto, Map<String, String> renombrados) {
+        for (Map.Entry<String, String> e : renombrados.entrySet()) {
+            for (String prefijo : new String[] {"", "/"}) {
+                String original = prefijo + e.getKey();
+                String nuevo = prefijo + e.getValue();
+                texto = texto.replace("\"" + original + "\"", "\"" + nuevo + "\"")
+                             .replace("'" + original + "'", "'" + nuevo + "'")
+                             .replace("url(" + original + ")", "url(" + nuevo + ")");
+            }
+        }
+        return texto;
+    }
+
+    private static String conHuella(String nombre, String huella) {
+        int punto = nombre.lastIndexOf('.');
+        int barra = nombre.lastIndexOf('/');
+        if (punto <= barra) return nombre + "." + huella;
+        return nombre.substring(0, punto) + "." + huella + nombre.substring(punto);
+    }
+
+    private static String extension(String nombre) {
+        int punto = nombre.lastIndexOf('.');
+        return punto < 0 ? "" : nombre.substring(punto + 1).toLowerCase();
+    }
+
+    private static boolean comprimible(String tipo) {
+        return tipo.startsWith("text/") || tipo.startsWith("application/json") || tipo.startsWith("image/svg");
+    }
+
+    private static String huella(byte[] contenido) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(contenido);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; sb.length() < LONGITUD_HUELLA; i++) {
+                sb.append(String.format("%02x", digest[i]));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] contenido) {
+        ByteArrayOutputStream salida = new ByteArrayOutputStream(contenido.length / 2 + 64);
+        try (GZIPOutputStream gz = new GZIPOutputStream(salida) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            gz.write(contenido);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return salida.toByteArray();
+    }
+
+    private static ByteBuffer directo(byte[] contenido) {
+        ByteBuffer b = ByteBuffer.allocateDirect(contenido.length);
+        b.put(contenido).flip();
+        return b.asReadOnlyBuffer();
+    }
+}
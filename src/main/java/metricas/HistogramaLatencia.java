@@ -0,0 +1,52 @@
+package metricas;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histograma de latencias con cubos fijos al estilo Prometheus.
+ * Registrar no bloquea ni reserva memoria: cada cubo es un LongAdder.
+ */
+class HistogramaLatencia {
+    // Límites superiores de los cubos en segundos (el último cubo, +Inf, es implícito)
+    static final double[] LIMITES = {
+        0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10
+    };
+    private static final long[] LIMITES_NANOS = new long[LIMITES.length];
+
+    static {
+        for (int i = 0; i < LIMITES.length; i++) {
+            LIMITES_NANOS[i] = (long) (LIMITES[i] * 1e9);
+        }
+    }
+
+    private final LongAdder[] cubos = new LongAdder[LIMITES.length + 1];
+    private final LongAdder sumaNanos = new LongAdder();
+
+    HistogramaLatencia() {
+        for (int i = 0; i < cubos.length; i++) {
+            cubos[i] = new LongAdder();
+        }
+    }
+
+    void registrar(long nanos) {
+        int i = 0;
+        while (i < LIMITES_NANOS.length && nanos > LIMITES_NANOS[i]) i++;
+        cubos[i].increment();
+        sumaNanos.add(nanos);
+    }
+
+    /** Cuentas acumuladas por cubo (le=...), la última es el total (+Inf). */
+    long[] acumulados() {
+        long[] r = new long[cubos.length];
+        long suma = 0;
+        for (int i = 0; i < cubos.length; i++) {
+            suma += cubos[i].sum();
+            r[i] = suma;
+        }
+        return r;
+    }
+
+    double sumaSegundos() {
+        return sumaNanos.sum() / 1e9;
+    }
+}
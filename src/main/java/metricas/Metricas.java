@@ -0,0 +1,226 @@
+package metricas;
+
+import io.javalin.Javalin;
+import io.javalin.http.Context;
+import io.javalin.http.HandlerType;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.server.Response;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Métricas HTTP por ruta, método y estado, expuestas en /metrics con el formato de texto de Prometheus.
+ *
+ * Uso en una aplicación:
+ *   Metricas metricas = Metricas.instalar(app);              // contador en curso + GET /metrics
+ *   config.requestLogger.http((ctx, ms) -> Metricas.registrar(ctx, ms));
+ *   metricas.registrarContador(...);                         // series de otros componentes
+ *
+ * Cada instancia de Javalin tiene su propio registro, guardado como atributo de la aplicación:
+ * varias aplicaciones en el mismo proceso no mezclan sus rutas ni sus series en /metrics.
+ *
+ * Registrar una petición no toma cerrojos ni reserva memoria: las estructuras de cada
+ * combinación ruta/método/estado se crean la primera vez y después solo se suman LongAdder.
+ */
+public final class Metricas {
+    private static final int ESTADOS = 500; // 100..599
+    private static final int METODOS = HandlerType.values().length;
+    private static final String SIN_RUTA = "sin_ruta";
+    private static final String ATRIBUTO = Metricas.class.getName();
+
+    // ruta (patrón de Javalin, p. ej. /ventas/{id}) -> métricas por método
+    private final Map<String, AtomicReferenceArray<MetricasRuta>> rutas = new ConcurrentHashMap<>();
+    private final LongAdder enCurso = new LongAdder();
+    // Series de otros componentes: nombre -> serie
+    private final Map<String, Serie> series = new ConcurrentHashMap<>();
+
+    private Metricas() {}
+
+    static final class Serie {
+        final String tipo;
+        final String ayuda;
+        // etiquetas ya formateadas (a="x",b="y") -> valor leído al exponer
+        final Map<String, LongSupplier> valores = new ConcurrentHashMap<>();
+
+        Serie(String tipo, String ayuda) {
+            this.tipo = tipo;
+            this.ayuda = ayuda;
+        }
+    }
+
+    static final class MetricasRuta {
+        final String metodo;
+        final String ruta;
+        final AtomicReferenceArray<HistogramaLatencia> porEstado = new AtomicReferenceArray<>(ESTADOS);
+        final LongAdder bytesPeticion = new LongAdder();
+        final LongAdder bytesRespuesta = new LongAdder();
+
+        MetricasRuta(String metodo, String ruta) {
+            this.metodo = metodo;
+            this.ruta = ruta;
+        }
+
+        HistogramaLatencia histograma(int estado) {
+            int i = Math.min(Math.max(estado - 100, 0), ESTADOS - 1);
+            HistogramaLatencia h = porEstado.get(i);
+            if (h == null) {
+                porEstado.compareAndSet(i, null, new HistogramaLatencia());
+                h = porEstado.get(i);
+            }
+            return h;
+        }
+    }
+
+    /**
+     * Crea el registro de la aplicación, cuenta sus peticiones en curso y publica GET /metrics.
+     * Si la aplicación ya lo tenía, devuelve el existente.
+     */
+    public static Metricas instalar(Javalin app) {
+        Metricas existentes = app.attribute(ATRIBUTO);
+        if (existentes != null) return existentes;
+
+        Metricas metricas = new Metricas();
+        app.attribute(ATRIBUTO, metricas);
+        app.before(ctx -> metricas.enCurso.increment());
+        app.get("/metrics", metricas::exponer);
+        return metricas;
+    }
+
+    /**
+     * Registra una petición terminada en el registro de su aplicación. Pensado para llamarse
+     * desde config.requestLogger.http, que Javalin invoca después de escribir la respuesta.
+     * Sin instalar(app) no hace nada.
+     */
+    public static void registrar(Context ctx, Float ms) {
+        Metricas metricas = ctx.appAttribute(ATRIBUTO);
+        if (metricas != null) metricas.registrarPeticion(ctx, ms);
+    }
+
+    private void registrarPeticion(Context ctx, Float ms) {
+        enCurso.decrement();
+
+        // Sin endpoint (404 de Javalin) el contexto sigue en la fase BEFORE
+        String ruta = ctx.handlerType() == HandlerType.BEFORE ? SIN_RUTA : ctx.endpointHandlerPath();
+        MetricasRuta m = metricas(ruta, ctx.method());
+
+        m.histograma(ctx.statusCode()).registrar((long) (ms * 1_000_000));
+        if (ctx.req() instanceof Request) {
+            m.bytesPeticion.add(((Request) ctx.req()).getHttpInput().getContentReceived());
+        } else if (ctx.req().getContentLengthLong() > 0) {
+            m.bytesPeticion.add(ctx.req().getContentLengthLong());
+        }
+        if (ctx.res() instanceof Response) {
+            // Incluye lo que aún está en el búfer de salida de Jetty
+            m.bytesRespuesta.add(((Response) ctx.res()).getHttpOutput().getWritten());
+        }
+    }
+
+    /**
+     * Publica un contador de otro componente; el valor se lee en cada consulta a /metrics.
+     */
+    public void registrarContador(String nombre, String etiquetas, String ayuda, LongSupplier valor) {
+        registrarSerie("counter", nombre, etiquetas, ayuda, valor);
+    }
+
+    /**
+     * Publica un indicador (valor que sube y baja) de otro componente.
+     */
+    public void registrarIndicador(String nombre, String etiquetas, String ayuda, LongSupplier valor) {
+        registrarSerie("gauge", nombre, etiquetas, ayuda, valor);
+    }
+
+    private void registrarSerie(String tipo, String nombre, String etiquetas, String ayuda, LongSupplier valor) {
+        series.computeIfAbsent(nombre, n -> new Serie(tipo, ayuda)).valores.put(etiquetas, valor);
+    }
+
+    private MetricasRuta metricas(String ruta, HandlerType metodo) {
+        AtomicReferenceArray<MetricasRuta> porMetodo = rutas.get(ruta);
+        if (porMetodo == null) {
+            porMetodo = rutas.computeIfAbsent(ruta, r -> new AtomicReferenceArray<>(METODOS));
+        }
+        MetricasRuta m = porMetodo.get(metodo.ordinal());
+        if (m == null) {
+            porMetodo.compareAndSet(metodo.ordinal(), null, new MetricasRuta(metodo.name(), ruta));
+            m = porMetodo.get(metodo.ordinal());
+        }
+        return m;
+    }
+
+    private void exponer(Context ctx) {
+        ctx.contentType("text/plain; version=0.0.4; charset=utf-8").result(texto());
+    }
+
+    /**
+     * Formato de exposición de texto de Prometheus.
+     */
+    String texto() {
+        // Orden estable por ruta y método
+        Map<String, MetricasRuta> ordenadas = new TreeMap<>();
+        rutas.forEach((ruta, porMetodo) -> {
+            for (int i = 0; i < porMetodo.length(); i++) {
+                MetricasRuta m = porMetodo.get(i);
+                if (m != null) ordenadas.put(ruta + " " + m.metodo, m);
+            }
+        });
+
+        StringBuilder sb = new StringBuilder(4096);
+        sb.append("# HELP http_server_requests_seconds Duración de las peticiones HTTP.\n");
+        sb.append("# TYPE http_server_requests_seconds histogram\n");
+        for (MetricasRuta m : ordenadas.values()) {
+            for (int i = 0; i < ESTADOS; i++) {
+                HistogramaLatencia h = m.porEstado.get(i);
+                if (h == null) continue;
+                String etiquetas = "method=\"" + m.metodo + "\",route=\"" + escapar(m.ruta) + "\",status=\"" + (i + 100) + "\"";
+                long[] acumulados = h.acumulados();
+                for (int c = 0; c < HistogramaLatencia.LIMITES.length; c++) {
+                    sb.append("http_server_requests_seconds_bucket{").append(etiquetas)
+                      .append(",le=\"").append(BigDecimal.valueOf(HistogramaLatencia.LIMITES[c]).toPlainString())
+                      .append("\"} ").append(acumulados[c]).append('\n');
+                }
+                long total = acumulados[acumulados.length - 1];
+                sb.append("http_server_requests_seconds_bucket{").append(etiquetas).append(",le=\"+Inf\"} ").append(total).append('\n');
+                sb.append("http_server_requests_seconds_sum{").append(etiquetas).append("} ").append(h.sumaSegundos()).append('\n');
+                sb.append("http_server_requests_seconds_count{").append(etiquetas).append("} ").append(total).append('\n');
+            }
+        }
+
+        sb.append("# HELP http_server_requests_in_flight Peticiones HTTP en curso.\n");
+        sb.append("# TYPE http_server_requests_in_flight gauge\n");
+        sb.append("http_server_requests_in_flight ").append(enCurso.sum()).append('\n');
+
+        sb.append("# HELP http_server_request_bytes_total Bytes recibidos en el cuerpo de las peticiones.\n");
+        sb.append("# TYPE http_server_request_bytes_total counter\n");
+        for (MetricasRuta m : ordenadas.values()) {
+            sb.append("http_server_request_bytes_total{method=\"").append(m.metodo).append("\",route=\"")
+              .append(escapar(m.ruta)).append("\"} ").append(m.bytesPeticion.sum()).append('\n');
+        }
+
+        sb.append("# HELP http_server_response_bytes_total Bytes enviados en el cuerpo de las respuestas.\n");
+        sb.append("# TYPE http_server_response_bytes_total counter\n");
+        for (MetricasRuta m : ordenadas.values()) {
+            sb.append("http_server_response_bytes_total{method=\"").append(m.metodo).append("\",route=\"")
+              .append(escapar(m.ruta)).append("\"} ").append(m.bytesRespuesta.sum()).append('\n');
+        }
+
+        new TreeMap<>(series).forEach((nombre, serie) -> {
+            sb.append("# HELP ").append(nombre).append(' ').append(serie.ayuda).append('\n');
+            sb.append("# TYPE ").append(nombre).append(' ').append(serie.tipo).append('\n');
+            new TreeMap<>(serie.valores).forEach((etiquetas, valor) -> {
+                sb.append(nombre);
+                if (!etiquetas.isEmpty()) sb.append('{').append(etiquetas).append('}');
+                sb.append(' ').append(valor.getAsLong()).append('\n');
+            });
+        });
+        return sb.toString();
+    }
+
+    private static String escapar(String valor) {
+        return valor.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
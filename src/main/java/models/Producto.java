@@ -8,6 +8,8 @@ public class Producto {
     private int id;
     private String nombre;
     private double precio;
+    // Versión monótona: cambia en cada escritura (se usa para ETag e If-Match)
+    private long version;
 
     /**
      * Constructor vacío requerido para la deserialización de JSON (Jackson/Gson).
@@ -52,12 +54,21 @@ public class Producto {
         this.precio = precio;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     @Override
     public String toString() {
         return "Producto{" +
                 "id=" + id +
                 ", nombre='" + nombre + '\'' +
                 ", precio=" + precio +
+                ", version=" + version +
                 '}';
     }
 }
\ No newline at end of file
@@ -0,0 +1,101 @@
+package registro;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Cola circular acotada, sin cerrojos, de muchos productores y un consumidor
+ * (algoritmo de Dmitry Vyukov con un número de secuencia por casilla).
+ *
+ * Las entradas están preasignadas y se reutilizan: encolar copia los campos en la
+ * casilla reservada, así que registrar una petición no reserva memoria.
+ */
+class AnilloAccesos {
+
+    /** Una línea del registro; solo la escribe su productor y solo la lee el consumidor. */
+    static final class Entrada {
+        long instante;
+        String metodo;
+        String ruta;
+        int estado;
+        float ms;
+    }
+
+    private final Entrada[] entradas;
+    private final AtomicLongArray secuencias;
+    private final int mascara;
+    private final AtomicLong cola = new AtomicLong();
+    private volatile long cabeza; // solo la escribe el consumidor
+
+    AnilloAccesos(int capacidad) {
+        int potencia = Integer.highestOneBit(Math.max(2, capacidad - 1)) << 1;
+        entradas = new Entrada[potencia];
+        secuencias = new AtomicLongArray(potencia);
+        mascara = potencia - 1;
+        for (int i = 0; i < potencia; i++) {
+            entradas[i] = new Entrada();
+            secuencias.set(i, i);
+        }
+    }
+
+    int capacidad() {
+        return entradas.length;
+    }
+
+    /**
+     * Intenta encolar; devuelve false si el anillo está lleno.
+     */
+    boolean ofrecer(long instante, String metodo, String ruta, int estado, float ms) {
+        long pos = cola.get();
+        while (true) {
+            int i = (int) (pos & mascara);
+            long diferencia = secuencias.get(i) - pos;
+            if (diferencia == 0) {
+                if (cola.compareAndSet(pos, pos + 1)) {
+                    Entrada e = entradas[i];
+                    e.instante = instante;
+                    e.metodo = metodo;
+                    e.ruta = ruta;
+                    e.estado = estado;
+                    e.ms = ms;
+                    // Publica la casilla al consumidor
+                    secuencias.set(i, pos + 1);
+                    return true;
+                }
+                pos = cola.get();
+            } else if (diferencia < 0) {
+                return false;
+            } else {
+                pos = cola.get();
+            }
+        }
+    }
+
+    interface Consumidor {
+        void aceptar(Entrada e);
+    }
+
+    /**
+     * Consume hasta "maximo" entradas publicadas. Solo desde el hilo consumidor.
+     */
+    int drenar(Consumidor consumidor, int maximo) {
+        int n = 0;
+        while (n < maximo) {
+            int i = (int) (cabeza & mascara);
+            if (secuencias.get(i) != cabeza + 1) break;
+            Entrada e = entradas[i];
+            consumidor.aceptar(e);
+            e.ruta = null;
+            // Libera la casilla para la siguiente vuelta del anillo
+            secuencias.set(i, cabeza + entradas.length);
+            cabeza++;
+            n++;
+        }
+        return n;
+    }
+
+    /** Entradas pendientes (aproximado si hay productores activos). */
+    long pendientes() {
+        return Math.max(0, cola.get() - cabeza);
+    }
+}
@@ -0,0 +1,271 @@
+package registro;
+
+import io.javalin.http.Context;
+import metricas.Metricas;
+
+import java.io.BufferedWriter;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Registro de accesos asíncrono: los hilos de Jetty solo copian la petición en un anillo
+ * sin cerrojos (AnilloAccesos) y un único hilo escritor vuelca las entradas por lotes
+ * a un archivo que rota por tamaño.
+ *
+ * Configuración (propiedades del sistema, ver desdePropiedades):
+ *  -Daccesos.directorio=logs       escribe en &lt;directorio&gt;/&lt;app&gt;-accesos.log; sin ella,
+ *                                  en la salida estándar (como el registro síncrono anterior)
+ *  -Daccesos.consola=true          salida estándar aunque haya directorio
+ *  -Daccesos.capacidad=65536       entradas del anillo
+ *  -Daccesos.politica=descartar    descartar | esperar (contrapresión) con el anillo lleno
+ *  -Daccesos.rotarMB=10            tamaño a partir del cual se rota el archivo
+ *  -Daccesos.archivos=5            archivos rotados que se conservan (.1 ... .N)
+ *
+ * Los contadores (escritas, descartadas, esperas y ocupación) se publican en el /metrics
+ * de la aplicación con publicarMetricas.
+ */
+public class RegistroAccesos implements AutoCloseable {
+
+    public enum Politica { DESCARTAR, ESPERAR }
+
+    private static final int LOTE = 1024;
+    private static final long ESPERA_ESCRITOR_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final long ESPERA_PRODUCTOR_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+    private static final DateTimeFormatter FORMATO_FECHA = DateTimeFormatter.ISO_LOCAL_DATE_TIME;
+
+    private final String nombre;
+    private final AnilloAccesos anillo;
+    private final Politica politica;
+    private final Path archivo; // null = salida estándar
+    private final long bytesRotacion;
+    private final int archivosRotados;
+
+    private final LongAdder descartadas = new LongAdder();
+    private final LongAdder esperas = new LongAdder();
+    private volatile long escritas;
+    private volatile boolean cerrado;
+    // El escritor terminó (cierre o error de E/S): ya nadie libera sitio en el anillo
+    private volatile boolean escritorDetenido;
+    // Vacía el anillo si el proceso termina sin parar el servidor; close() lo retira
+    private final Thread alApagar = new Thread(this::close);
+
+    // Solo el hilo escritor
+    private final Thread escritor;
+    private final StringBuilder linea = new StringBuilder(256);
+    private final AnilloAccesos.Consumidor formatear = this::formatear;
+    private final ZoneId zona = ZoneId.systemDefault();
+    private Writer salida;
+    private long bytesArchivo;
+
+    public RegistroAccesos(String nombre, Path archivo, int capacidad, Politica politica,
+                           long bytesRotacion, int archivosRotados) {
+        this.nombre = nombre;
+        this.anillo = new AnilloAccesos(capacidad);
+        this.politica = politica;
+        this.archivo = archivo;
+        this.bytesRotacion = bytesRotacion;
+        this.archivosRotados = archivosRotados;
+        try {
+            abrir();
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo abrir el registro de accesos " + archivo, e);
+        }
+
+        escritor = new Thread(this::escribir, "registro-accesos-" + nombre);
+        escritor.setDaemon(true);
+        escritor.start();
+        Runtime.getRuntime().addShutdownHook(alApagar);
+    }
+
+    /**
+     * Crea el registro de una aplicación con la configuración de las propiedades del sistema.
+     */
+    public static RegistroAccesos desdePropiedades(String nombre) {
+        String directorio = System.getProperty("accesos.directorio");
+        Path archivo = directorio == null || Boolean.getBoolean("accesos.consola")
+                ? null
+                : Paths.get(directorio, nombre + "-accesos.log");
+        return new RegistroAccesos(nombre, archivo,
+                Integer.getInteger("accesos.capacidad", 65536),
+                Politica.valueOf(System.getProperty("accesos.politica", "descartar").toUpperCase(Locale.ROOT)),
+                Long.getLong("accesos.rotarMB", 10) * 1024 * 1024,
+                Integer.getInteger("accesos.archivos", 5));
+    }
+
+    /**
+     * Publica los contadores del registro en las métricas de la aplicación.
+     */
+    public void publicarMetricas(Metricas metricas) {
+        String etiquetas = "log=\"" + nombre + "\"";
+        metricas.registrarContador("access_log_entries_total", etiquetas,
+                "Entradas escritas en el registro de accesos.", () -> escritas);
+        metricas.registrarContador("access_log_dropped_total", etiquetas,
+                "Entradas descartadas con el anillo del registro de accesos lleno.", descartadas::sum);
+        metricas.registrarContador("access_log_blocked_total", etiquetas,
+                "Peticiones que esperaron a que el registro de accesos tuviera sitio.", esperas::sum);
+        metricas.registrarIndicador("access_log_queue_depth", etiquetas,
+                "Entradas pendientes en el anillo del registro de accesos.", anillo::pendientes);
+    }
+
+    /**
+     * Registra una petición terminada (desde config.requestLogger.http).
+     */
+    public void registrar(Context ctx, Float ms) {
+        registrar(ctx.method().name(), ctx.path(), ctx.statusCode(), ms);
+    }
+
+    public void registrar(String metodo, String ruta, int estado, float ms) {
+        long ahora = System.currentTimeMillis();
+        if (anillo.ofrecer(ahora, metodo, ruta, estado, ms)) return;
+
+        if (politica == Politica.DESCARTAR || escritorDetenido) {
+            descartadas.increment();
+            return;
+        }
+        // Contrapresión: el hilo de la petición espera a que el escritor libere sitio;
+        // si el escritor muere por un error de E/S se vuelve a descartar
+        esperas.increment();
+        while (!cerrado && !escritorDetenido) {
+            LockSupport.parkNanos(ESPERA_PRODUCTOR_NANOS);
+            if (anillo.ofrecer(ahora, metodo, ruta, estado, ms)) return;
+        }
+        descartadas.increment();
+    }
+
+    public long descartadas() {
+        return descartadas.sum();
+    }
+
+    public long escritas() {
+        return escritas;
+    }
+
+    /**
+     * Vacía lo pendiente y detiene el escritor.
+     */
+    @Override
+    public void close() {
+        if (cerrado) return;
+        cerrado = true;
+        if (Thread.currentThread() != alApagar) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(alApagar);
+            } catch (IllegalStateException yaApagando) {
+                // El proceso ya está terminando y el gancho correrá igualmente
+            }
+        }
+        LockSupport.unpark(escritor);
+        try {
+            escritor.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // --- Hilo escritor ---
+
+    private void escribir() {
+        try {
+            while (true) {
+                int n = anillo.drenar(formatear, LOTE);
+                if (n == LOTE) continue;
+                // Anillo vacío: se vuelca el lote y se espera a más entradas
+                salida.flush();
+                if (n > 0) continue;
+                if (cerrado && anillo.pendientes() == 0) break;
+                LockSupport.parkNanos(ESPERA_ESCRITOR_NANOS);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Registro de accesos " + nombre + " detenido: " + e.getMessage());
+        } finally {
+            escritorDetenido = true;
+            try {
+                if (archivo != null) salida.close();
+                else salida.flush();
+            } catch (IOException ignorada) {
+                // El proceso está terminando
+            }
+        }
+    }
+
+    private void formatear(AnilloAccesos.Entrada e) {
+        linea.setLength(0);
+        FORMATO_FECHA.formatTo(LocalDateTime.ofInstant(Instant.ofEpochMilli(e.instante), zona), linea);
+        linea.append(' ').append(e.metodo).append(' ').append(e.ruta)
+             .append(" - ").append(e.estado).append(" (").append(e.ms).append("ms)\n");
+        try {
+            salida.append(linea);
+            bytesArchivo += bytesUtf8(linea);
+            escritas++;
+            if (archivo != null && bytesArchivo >= bytesRotacion) {
+                rotar();
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /** Bytes que ocupa el texto en UTF-8 (rutas y métodos pueden no ser ASCII). */
+    private static int bytesUtf8(CharSequence texto) {
+        int bytes = 0;
+        for (int i = 0; i < texto.length(); i++) {
+            char c = texto.charAt(i);
+            if (c < 0x80) bytes += 1;
+            else if (c < 0x800) bytes += 2;
+            else if (Character.isSurrogate(c)) bytes += 2; // cada mitad de un par: 4 en total
+            else bytes += 3;
+        }
+        return bytes;
+    }
+
+    private void abrir() throws IOException {
+        if (archivo == null) {
+            // Directamente sobre el descriptor: sin el cerrojo de System.out
+            salida = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(FileDescriptor.out), StandardCharsets.UTF_8), 1 << 16);
+            return;
+        }
+        if (archivo.getParent() != null) Files.createDirectories(archivo.getParent());
+        bytesArchivo = Files.exists(archivo) ? Files.size(archivo) : 0;
+        salida = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(archivo.toFile(), true), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    /**
+     * accesos.log -> accesos.log.1 -> ... -> accesos.log.N (el más antiguo se borra).
+     */
+    private void rotar() throws IOException {
+        salida.close();
+        Files.deleteIfExists(rotado(archivosRotados));
+        for (int i = archivosRotados - 1; i >= 1; i--) {
+            if (Files.exists(rotado(i))) {
+                Files.move(rotado(i), rotado(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (archivosRotados > 0) {
+            Files.move(archivo, rotado(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(archivo);
+        }
+        abrir();
+    }
+
+    private Path rotado(int i) {
+        return archivo.resolveSibling(archivo.getFileName() + "." + i);
+    }
+}
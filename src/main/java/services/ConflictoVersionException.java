@@ -0,0 +1,19 @@
+package services;
+
+/**
+ * Se lanza cuando una escritura condicionada (If-Match) no coincide con la versión actual del producto.
+ */
+public class ConflictoVersionException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final long versionActual;
+
+    public ConflictoVersionException(int id, long versionActual) {
+        super("El producto " + id + " ha sido modificado (versión actual " + versionActual + ")");
+        this.versionActual = versionActual;
+    }
+
+    public long getVersionActual() {
+        return versionActual;
+    }
+}
@@ -0,0 +1,42 @@
+package services;
+
+import models.Producto;
+
+import java.util.stream.Stream;
+
+/**
+ * Motor de almacenamiento principal del catálogo de productos.
+ * Todas las implementaciones deben ser seguras para hilos y recorrer los productos en orden de ID.
+ */
+interface ProductoAlmacen {
+
+    Producto obtener(int id);
+
+    boolean contiene(int id);
+
+    /**
+     * Inserta o reemplaza el producto con su ID.
+     *
+     * @return El producto anterior o null si no existía.
+     */
+    Producto guardar(Producto producto);
+
+    /**
+     * @return El producto eliminado o null si no existía.
+     */
+    Producto eliminar(int id);
+
+    /**
+     * Productos con ID estrictamente mayor que despuesDe, en orden ascendente.
+     */
+    Stream<Producto> recorrer(int despuesDe);
+
+    /**
+     * Todos los productos en orden de ID descendente.
+     */
+    Stream<Producto> recorrerDescendente();
+
+    boolean vacio();
+
+    void limpiar();
+}
@@ -0,0 +1,489 @@
+package services;
+
+import models.Producto;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.locks.StampedLock;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Almacén compacto para catálogos muy grandes.
+ * En lugar de un objeto Producto, un Integer y un nodo de mapa por entrada, guarda cada
+ * producto en una "ranura" de arrays primitivos paralelos (id, versión, precio, nombre en UTF-8
+ * dentro de un único byte[]) y localiza la ranura con una tabla hash de claves int
+ * con direccionamiento abierto. Los Producto solo se crean al leer (p. ej. al serializar).
+ *
+ * Las ranuras se mantienen ordenadas por ID, así que los recorridos paginados son una
+ * búsqueda binaria más un avance secuencial. Las lecturas puntuales usan lectura optimista
+ * de StampedLock (sin bloqueo si no hay escrituras concurrentes); las escrituras son exclusivas.
+ */
+class ProductoAlmacenCompacto implements ProductoAlmacen {
+
+    private static final int NOMBRE_NULO = -1;
+    private static final int BORRADO = -2;
+    private static final int VACIO = -1;
+    private static final int TAMANO_BLOQUE_LECTURA = 256;
+    // Tamaño máximo seguro de un array en la JVM
+    private static final int MAXIMO_NOMBRES = Integer.MAX_VALUE - 8;
+    // Bytes abandonados a partir de los cuales se compacta (si además son la mitad del uso)
+    private static final int MINIMO_ABANDONADOS = 1 << 16;
+
+    private final StampedLock cerrojo = new StampedLock();
+
+    // Ranuras (columnas paralelas), ordenadas por ID
+    private int[] ids;
+    private long[] versiones;
+    private double[] precios;
+    private int[] inicioNombre;
+    private int[] longitudNombre;
+    private int[] capacidadNombre;
+    private int ranuras;
+    private int vivas;
+
+    // Nombres en UTF-8 contiguos. Cada ranura tiene su hueco (capacidadNombre) y su longitud
+    // actual: un nombre que cabe reutiliza el hueco y uno más largo se añade al final,
+    // abandonando el anterior. Los bytes abandonados (huecos reemplazados o de ranuras
+    // borradas) se recuperan al compactar, en cuanto son la mitad del uso.
+    private byte[] nombres;
+    private int usoNombres;
+    private long nombresAbandonados;
+
+    // Tabla hash id -> ranura con sondeo lineal (factor de carga <= 0.5)
+    private int[] tablaIds;
+    private int[] tablaRanuras;
+
+    ProductoAlmacenCompacto() {
+        this(1024);
+    }
+
+    ProductoAlmacenCompacto(int capacidadInicial) {
+        inicializar(Math.max(16, capacidadInicial));
+    }
+
+    private void inicializar(int capacidad) {
+        ids = new int[capacidad];
+        versiones = new long[capacidad];
+        precios = new double[capacidad];
+        inicioNombre = new int[capacidad];
+        longitudNombre = new int[capacidad];
+        capacidadNombre = new int[capacidad];
+        nombres = new byte[capacidad * 16];
+        ranuras = 0;
+        vivas = 0;
+        usoNombres = 0;
+        nombresAbandonados = 0;
+        tablaIds = new int[Integer.highestOneBit(capacidad) * 4];
+        tablaRanuras = new int[tablaIds.length];
+        Arrays.fill(tablaRanuras, VACIO);
+    }
+
+    // ==========================================
+    // LECTURAS
+    // ==========================================
+
+    @Override
+    public Producto obtener(int id) {
+        long stamp = cerrojo.tryOptimisticRead();
+        Producto p = null;
+        try {
+            int ranura = buscarRanura(id);
+            p = ranura >= 0 ? materializar(ranura) : null;
+        } catch (RuntimeException e) {
+            // Lectura optimista de un estado a medio escribir: se repite con bloqueo
+            stamp = 0;
+        }
+        if (!cerrojo.validate(stamp)) {
+            stamp = cerrojo.readLock();
+            try {
+                int ranura = buscarRanura(id);
+                p = ranura >= 0 ? materializar(ranura) : null;
+            } finally {
+                cerrojo.unlockRead(stamp);
+            }
+        }
+        return p;
+    }
+
+    @Override
+    public boolean contiene(int id) {
+        long stamp = cerrojo.tryOptimisticRead();
+        boolean existe = false;
+        try {
+            existe = buscarRanura(id) >= 0;
+        } catch (RuntimeException e) {
+            stamp = 0;
+        }
+        if (!cerrojo.validate(stamp)) {
+            stamp = cerrojo.readLock();
+            try {
+                existe = buscarRanura(id) >= 0;
+            } finally {
+                cerrojo.unlockRead(stamp);
+            }
+        }
+        return existe;
+    }
+
+    @Override
+    public boolean vacio() {
+        long stamp = cerrojo.readLock();
+        try {
+            return vivas == 0;
+        } finally {
+            cerrojo.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public Stream<Producto> recorrer(int despuesDe) {
+        return recorrido(despuesDe, false);
+    }
+
+    @Override
+    public Stream<Producto> recorrerDescendente() {
+        return recorrido(Integer.MAX_VALUE, true);
+    }
+
+    /**
+     * Recorre por bloques: en cada bloque toma el cerrojo de lectura, materializa hasta
+     * TAMANO_BLOQUE_LECTURA productos a partir del último ID devuelto y lo suelta.
+     * Así el recorrido no bloquea escrituras durante toda la respuesta y tolera
+     * reorganizaciones (el cursor es el ID, no la posición).
+     */
+    private Stream<Producto> recorrido(int desde, boolean descendente) {
+        Iterator<Producto> it = new Iterator<>() {
+            private final List<Producto> bloque = new ArrayList<>(TAMANO_BLOQUE_LECTURA);
+            private int posicion;
+            private int ultimo = desde;
+            private boolean terminado;
+
+            @Override
+            public boolean hasNext() {
+                if (posicion < bloque.size()) return true;
+                if (terminado) return false;
+                bloque.clear();
+                posicion = 0;
+                long stamp = cerrojo.readLock();
+                try {
+                    if (descendente) {
+                        for (int r = primeraRanuraMayor(ultimo) - 1; r >= 0 && bloque.size() < TAMANO_BLOQUE_LECTURA; r--) {
+                            if (ids[r] >= ultimo) continue;
+                            if (longitudNombre[r] != BORRADO) bloque.add(materializar(r));
+                        }
+                    } else {
+                        for (int r = primeraRanuraMayor(ultimo); r < ranuras && bloque.size() < TAMANO_BLOQUE_LECTURA; r++) {
+                            if (longitudNombre[r] != BORRADO) bloque.add(materializar(r));
+                        }
+                    }
+                } finally {
+                    cerrojo.unlockRead(stamp);
+                }
+                if (bloque.size() < TAMANO_BLOQUE_LECTURA) terminado = true;
+                if (bloque.isEmpty()) return false;
+                ultimo = bloque.get(bloque.size() - 1).getId();
+                return true;
+            }
+
+            @Override
+            public Producto next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                return bloque.get(posicion++);
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(it,
+                Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.DISTINCT), false);
+    }
+
+    // ==========================================
+    // ESCRITURAS
+    // ==========================================
+
+    @Override
+    public Producto guardar(Producto producto) {
+        long stamp = cerrojo.writeLock();
+        try {
+            int id = producto.getId();
+            int ranura = buscarRanura(id);
+            if (ranura >= 0) {
+                Producto anterior = materializar(ranura);
+                versiones[ranura] = producto.getVersion();
+                precios[ranura] = producto.getPrecio();
+                escribirNombre(ranura, producto.getNombre());
+                if (hayQueCompactar()) compactar();
+                return anterior;
+            }
+            insertar(id, producto.getVersion(), producto.getPrecio(), producto.getNombre());
+            return null;
+        } finally {
+            cerrojo.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public Producto eliminar(int id) {
+        long stamp = cerrojo.writeLock();
+        try {
+            int posicion = posicionEnTabla(id);
+            if (posicion < 0) return null;
+            int ranura = tablaRanuras[posicion];
+            Producto anterior = materializar(ranura);
+            longitudNombre[ranura] = BORRADO;
+            nombresAbandonados += capacidadNombre[ranura];
+            quitarDeTabla(posicion);
+            vivas--;
+            if (hayQueCompactar()) compactar();
+            return anterior;
+        } finally {
+            cerrojo.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public void limpiar() {
+        long stamp = cerrojo.writeLock();
+        try {
+            inicializar(1024);
+        } finally {
+            cerrojo.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Inserta una ranura nueva manteniendo el orden por ID. Los IDs llegan casi siempre
+     * en orden creciente; si llega uno fuera de orden (creaciones concurrentes) solo se
+     * desplazan las pocas ranuras finales que lo superan.
+     */
+    private void insertar(int id, long version, double precio, String nombre) {
+        if (ranuras == ids.length) crecerRanuras();
+        int destino = ranuras;
+        if (ranuras > 0 && ids[ranuras - 1] > id) {
+            destino = primeraRanuraMayor(id);
+            int mover = ranuras - destino;
+            System.arraycopy(ids, destino, ids, destino + 1, mover);
+            System.arraycopy(versiones, destino, versiones, destino + 1, mover);
+            System.arraycopy(precios, destino, precios, destino + 1, mover);
+            System.arraycopy(inicioNombre, destino, inicioNombre, destino + 1, mover);
+            System.arraycopy(longitudNombre, destino, longitudNombre, destino + 1, mover);
+            System.arraycopy(capacidadNombre, destino, capacidadNombre, destino + 1, mover);
+            for (int r = destino + 1; r <= ranuras; r++) {
+                if (longitudNombre[r] != BORRADO) tablaRanuras[posicionEnTabla(ids[r])] = r;
+            }
+        }
+        ids[destino] = id;
+        versiones[destino] = version;
+        precios[destino] = precio;
+        longitudNombre[destino] = NOMBRE_NULO;
+        capacidadNombre[destino] = 0;
+        escribirNombre(destino, nombre);
+        ranuras++;
+        vivas++;
+        ponerEnTabla(id, destino);
+        if (vivas * 2 > tablaIds.length) redimensionarTabla(tablaIds.length * 2);
+    }
+
+    private void escribirNombre(int ranura, String nombre) {
+        if (nombre == null) {
+            // El hueco se conserva para un nombre posterior
+            longitudNombre[ranura] = NOMBRE_NULO;
+            return;
+        }
+        byte[] bytes = nombre.getBytes(StandardCharsets.UTF_8);
+        // Si cabe en el hueco de la ranura se reutiliza
+        if (capacidadNombre[ranura] >= bytes.length) {
+            System.arraycopy(bytes, 0, nombres, inicioNombre[ranura], bytes.length);
+        } else {
+            reservarNombres(bytes.length);
+            System.arraycopy(bytes, 0, nombres, usoNombres, bytes.length);
+            nombresAbandonados += capacidadNombre[ranura];
+            inicioNombre[ranura] = usoNombres;
+            capacidadNombre[ranura] = bytes.length;
+            usoNombres += bytes.length;
+        }
+        longitudNombre[ranura] = bytes.length;
+    }
+
+    /**
+     * Garantiza sitio para "bytes" más al final de la arena, duplicándola sin desbordar int.
+     */
+    private void reservarNombres(int bytes) {
+        long necesario = (long) usoNombres + bytes;
+        if (necesario <= nombres.length) return;
+        if (necesario > MAXIMO_NOMBRES) {
+            throw new IllegalStateException("La arena de nombres no admite más de " + MAXIMO_NOMBRES + " bytes");
+        }
+        long capacidad = Math.min(MAXIMO_NOMBRES, Math.max(necesario, (long) nombres.length * 2));
+        nombres = Arrays.copyOf(nombres, (int) capacidad);
+    }
+
+    /**
+     * Se compacta si más de la mitad de las ranuras son huecos o si los bytes de nombres
+     * abandonados son más de la mitad del uso de la arena. Cada compactación cuesta O(n),
+     * pero solo ocurre tras O(n) borrados o bytes abandonados: su coste amortizado es constante.
+     */
+    private boolean hayQueCompactar() {
+        return (ranuras > 1024 && vivas < ranuras / 2)
+            || (nombresAbandonados > MINIMO_ABANDONADOS && nombresAbandonados > usoNombres / 2);
+    }
+
+    private void crecerRanuras() {
+        int capacidad = ids.length * 2;
+        ids = Arrays.copyOf(ids, capacidad);
+        versiones = Arrays.copyOf(versiones, capacidad);
+        precios = Arrays.copyOf(precios, capacidad);
+        inicioNombre = Arrays.copyOf(inicioNombre, capacidad);
+        longitudNombre = Arrays.copyOf(longitudNombre, capacidad);
+        capacidadNombre = Arrays.copyOf(capacidadNombre, capacidad);
+    }
+
+    /**
+     * Elimina los huecos de ranuras borradas y de nombres reemplazados, y reconstruye la tabla.
+     */
+    private void compactar() {
+        int[] nIds = new int[Math.max(16, vivas * 2)];
+        long[] nVersiones = new long[nIds.length];
+        double[] nPrecios = new double[nIds.length];
+        int[] nInicio = new int[nIds.length];
+        int[] nLongitud = new int[nIds.length];
+        int[] nCapacidad = new int[nIds.length];
+        byte[] nNombres = new byte[Math.max(256, usoNombres)];
+        int n = 0;
+        int uso = 0;
+        for (int r = 0; r < ranuras; r++) {
+            if (longitudNombre[r] == BORRADO) continue;
+            nIds[n] = ids[r];
+            nVersiones[n] = versiones[r];
+            nPrecios[n] = precios[r];
+            nLongitud[n] = longitudNombre[r];
+            if (longitudNombre[r] > 0) {
+                System.arraycopy(nombres, inicioNombre[r], nNombres, uso, longitudNombre[r]);
+                nInicio[n] = uso;
+                nCapacidad[n] = longitudNombre[r];
+                uso += longitudNombre[r];
+            }
+            n++;
+        }
+        ids = nIds;
+        versiones = nVersiones;
+        precios = nPrecios;
+        inicioNombre = nInicio;
+        longitudNombre = nLongitud;
+        capacidadNombre = nCapacidad;
+        nombres = nNombres;
+        usoNombres = uso;
+        nombresAbandonados = 0;
+        ranuras = n;
+        redimensionarTabla(Math.max(64, Integer.highestOneBit(Math.max(1, vivas)) * 4));
+    }
+
+    // ==========================================
+    // TABLA HASH (sondeo lineal)
+    // ==========================================
+
+    private static int mezclar(int id) {
+        int h = id * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Posición del ID en la tabla o -1. El número de pasos está acotado para que una
+     * lectura optimista sobre un estado inconsistente no pueda quedarse en bucle.
+     */
+    private int posicionEnTabla(int id) {
+        int[] claves = tablaIds;
+        int[] valores = tablaRanuras;
+        int mascara = claves.length - 1;
+        int i = mezclar(id) & mascara;
+        for (int pasos = 0; pasos < claves.length; pasos++) {
+            if (valores[i] == VACIO) return -1;
+            if (claves[i] == id) return i;
+            i = (i + 1) & mascara;
+        }
+        return -1;
+    }
+
+    private int buscarRanura(int id) {
+        int posicion = posicionEnTabla(id);
+        return posicion >= 0 ? tablaRanuras[posicion] : -1;
+    }
+
+    private void ponerEnTabla(int id, int ranura) {
+        int mascara = tablaIds.length - 1;
+        int i = mezclar(id) & mascara;
+        while (tablaRanuras[i] != VACIO) {
+            i = (i + 1) & mascara;
+        }
+        tablaIds[i] = id;
+        tablaRanuras[i] = ranura;
+    }
+
+    /**
+     * Borrado con desplazamiento hacia atrás: no deja marcas de borrado en la tabla.
+     */
+    private void quitarDeTabla(int posicion) {
+        int mascara = tablaIds.length - 1;
+        int hueco = posicion;
+        int j = posicion;
+        while (true) {
+            j = (j + 1) & mascara;
+            if (tablaRanuras[j] == VACIO) break;
+            int ideal = mezclar(tablaIds[j]) & mascara;
+            // La entrada j puede ocupar el hueco si su posición ideal no está en (hueco, j]
+            boolean quedaEnSuSitio = hueco <= j ? (hueco < ideal && ideal <= j) : (hueco < ideal || ideal <= j);
+            if (quedaEnSuSitio) continue;
+            tablaIds[hueco] = tablaIds[j];
+            tablaRanuras[hueco] = tablaRanuras[j];
+            hueco = j;
+        }
+        tablaRanuras[hueco] = VACIO;
+    }
+
+    private void redimensionarTabla(int capacidad) {
+        int[] nClaves = new int[capacidad];
+        int[] nValores = new int[capacidad];
+        Arrays.fill(nValores, VACIO);
+        int mascara = capacidad - 1;
+        for (int r = 0; r < ranuras; r++) {
+            if (longitudNombre[r] == BORRADO) continue;
+            int i = mezclar(ids[r]) & mascara;
+            while (nValores[i] != VACIO) i = (i + 1) & mascara;
+            nClaves[i] = ids[r];
+            nValores[i] = r;
+        }
+        tablaIds = nClaves;
+        tablaRanuras = nValores;
+    }
+
+    // ==========================================
+    // AUXILIARES
+    // ==========================================
+
+    /**
+     * Primera ranura (viva o borrada) con ID mayor que el dado; las ranuras están ordenadas.
+     */
+    private int primeraRanuraMayor(int id) {
+        int bajo = 0;
+        int alto = ranuras;
+        while (bajo < alto) {
+            int medio = (bajo + alto) >>> 1;
+            if (ids[medio] <= id) bajo = medio + 1;
+            else alto = medio;
+        }
+        return bajo;
+    }
+
+    private Producto materializar(int ranura) {
+        int longitud = longitudNombre[ranura];
+        String nombre = longitud < 0 ? null : new String(nombres, inicioNombre[ranura], longitud, StandardCharsets.UTF_8);
+        Producto p = new Producto(ids[ranura], nombre, precios[ranura]);
+        p.setVersion(versiones[ranura]);
+        return p;
+    }
+}
@@ -0,0 +1,55 @@
+package services;
+
+import models.Producto;
+
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Almacén por defecto: un ConcurrentSkipListMap ordenado por ID.
+ * Seguro para hilos sin bloqueos y con recorridos débilmente consistentes.
+ */
+class ProductoAlmacenMapa implements ProductoAlmacen {
+
+    private final ConcurrentSkipListMap<Integer, Producto> productos = new ConcurrentSkipListMap<>();
+
+    @Override
+    public Producto obtener(int id) {
+        return productos.get(id);
+    }
+
+    @Override
+    public boolean contiene(int id) {
+        return productos.containsKey(id);
+    }
+
+    @Override
+    public Producto guardar(Producto producto) {
+        return productos.put(producto.getId(), producto);
+    }
+
+    @Override
+    public Producto eliminar(int id) {
+        return productos.remove(id);
+    }
+
+    @Override
+    public Stream<Producto> recorrer(int despuesDe) {
+        return productos.tailMap(despuesDe, false).values().stream();
+    }
+
+    @Override
+    public Stream<Producto> recorrerDescendente() {
+        return productos.descendingMap().values().stream();
+    }
+
+    @Override
+    public boolean vacio() {
+        return productos.isEmpty();
+    }
+
+    @Override
+    public void limpiar() {
+        productos.clear();
+    }
+}
@@ -0,0 +1,178 @@
+package services;
+
+import models.Producto;
+
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+
+/**
+ * Índices secundarios concurrentes del catálogo de productos.
+ *  - Precio: mapa ordenado por (precio, id) para consultas por rango.
+ *  - Nombre: mapa ordenado por (nombre en minúsculas, id); un prefijo es un rango
+ *    contiguo de claves, así que cumple la función de un trie con O(log n + k).
+ *
+ * El mantenimiento lo hace ProductoService dentro del cerrojo del ID modificado.
+ * Los índices guardan el mismo objeto Producto que el almacén por defecto.
+ */
+class ProductoIndices {
+
+    private final ConcurrentSkipListMap<ClavePrecio, Producto> porPrecio = new ConcurrentSkipListMap<>();
+    private final ConcurrentSkipListMap<ClaveNombre, Producto> porNombre = new ConcurrentSkipListMap<>();
+
+    // Desactivados con el almacén compacto: los índices guardarían de nuevo un objeto por producto
+    private final boolean activo;
+
+    ProductoIndices(boolean activo) {
+        this.activo = activo;
+    }
+
+    /**
+     * Clave compuesta del índice de precios. El ID desempata precios iguales.
+     */
+    private static final class ClavePrecio implements Comparable<ClavePrecio> {
+        final double precio;
+        final int id;
+
+        ClavePrecio(double precio, int id) {
+            this.precio = precio;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(ClavePrecio o) {
+            int c = Double.compare(precio, o.precio);
+            return c != 0 ? c : Integer.compare(id, o.id);
+        }
+    }
+
+    /**
+     * Clave compuesta del índice de nombres. El ID desempata nombres iguales.
+     */
+    private static final class ClaveNombre implements Comparable<ClaveNombre> {
+        final String nombre;
+        final int id;
+
+        ClaveNombre(String nombre, int id) {
+            this.nombre = nombre;
+            this.id = id;
+        }
+
+        @Override
+        public int compareTo(ClaveNombre o) {
+            int c = nombre.compareTo(o.nombre);
+            return c != 0 ? c : Integer.compare(id, o.id);
+        }
+    }
+
+    static String normalizar(String nombre) {
+        return nombre == null ? "" : nombre.toLowerCase(Locale.ROOT);
+    }
+
+    void indexar(Producto p) {
+        if (!activo) return;
+        porPrecio.put(new ClavePrecio(p.getPrecio(), p.getId()), p);
+        porNombre.put(new ClaveNombre(normalizar(p.getNombre()), p.getId()), p);
+    }
+
+    void desindexar(Producto p) {
+        if (!activo) return;
+        porPrecio.remove(new ClavePrecio(p.getPrecio(), p.getId()));
+        porNombre.remove(new ClaveNombre(normalizar(p.getNombre()), p.getId()));
+    }
+
+    void limpiar() {
+        porPrecio.clear();
+        porNombre.clear();
+    }
+
+    /**
+     * Busca productos usando el índice más adecuado.
+     * Con los índices desactivados (almacén compacto) filtra recorriendo el almacén: O(n).
+     *
+     * @param almacen Almacén principal ordenado por ID (se usa cuando no hay filtros).
+     * @param precioMin Precio mínimo inclusivo o null.
+     * @param precioMax Precio máximo inclusivo o null.
+     * @param nombrePrefix Prefijo del nombre (sin distinguir mayúsculas) o null.
+     * @param orden id, precio o nombre; con "-" delante en orden descendente. Null = orden del índice.
+     * @throws IllegalArgumentException si el orden no es válido.
+     */
+    Stream<Producto> buscar(ProductoAlmacen almacen, Double precioMin, Double precioMax,
+                            String nombrePrefix, String orden) {
+        boolean descendente = orden != null && orden.startsWith("-");
+        String campoOrden = orden == null ? null : (descendente ? orden.substring(1) : orden);
+        if (campoOrden != null && !campoOrden.equals("id") && !campoOrden.equals("precio") && !campoOrden.equals("nombre")) {
+            throw new IllegalArgumentException("Orden no válido: " + orden + " (use id, precio o nombre, con '-' para descendente)");
+        }
+
+        String prefijo = nombrePrefix != null ? normalizar(nombrePrefix) : null;
+        boolean filtroPrecio = precioMin != null || precioMax != null;
+        double minimo = precioMin != null ? precioMin : Double.NEGATIVE_INFINITY;
+        double maximo = precioMax != null ? precioMax : Double.POSITIVE_INFINITY;
+        if (minimo > maximo) return Stream.empty();
+
+        // 1. Elegir la fuente: el rango de precios o de prefijo, el índice del campo de orden o el almacén
+        NavigableMap<?, Producto> vista = null;
+        String campoVista;
+        boolean filtrarPrecio = false;
+        boolean filtrarPrefijo = false;
+        if (!activo) {
+            campoVista = "id";
+            filtrarPrecio = filtroPrecio;
+            filtrarPrefijo = prefijo != null;
+        } else if (filtroPrecio) {
+            vista = porPrecio.subMap(new ClavePrecio(minimo, Integer.MIN_VALUE), true,
+                                     new ClavePrecio(maximo, Integer.MAX_VALUE), true);
+            campoVista = "precio";
+            filtrarPrefijo = prefijo != null;
+        } else if (prefijo != null) {
+            vista = porNombre.subMap(new ClaveNombre(prefijo, Integer.MIN_VALUE), true,
+                                     new ClaveNombre(prefijo + Character.MAX_VALUE, Integer.MIN_VALUE), false);
+            campoVista = "nombre";
+        } else if ("precio".equals(campoOrden)) {
+            vista = porPrecio;
+            campoVista = "precio";
+        } else if ("nombre".equals(campoOrden)) {
+            vista = porNombre;
+            campoVista = "nombre";
+        } else {
+            campoVista = "id";
+        }
+
+        boolean invertir = descendente && campoOrden.equals(campoVista);
+        Stream<Producto> resultado;
+        if (vista != null) {
+            resultado = (invertir ? vista.descendingMap() : vista).values().stream();
+        } else {
+            resultado = invertir ? almacen.recorrerDescendente() : almacen.recorrer(Integer.MIN_VALUE);
+        }
+
+        // 2. Filtros que el índice elegido no resuelve
+        if (filtrarPrecio) {
+            resultado = resultado.filter(p -> p.getPrecio() >= minimo && p.getPrecio() <= maximo);
+        }
+        if (filtrarPrefijo) {
+            resultado = resultado.filter(p -> normalizar(p.getNombre()).startsWith(prefijo));
+        }
+
+        // 3. Solo se ordena en memoria si el orden pedido no coincide con el de la fuente (k elementos)
+        if (campoOrden != null && !campoOrden.equals(campoVista)) {
+            Comparator<Producto> comparador = comparador(campoOrden);
+            resultado = resultado.sorted(descendente ? comparador.reversed() : comparador);
+        }
+        return resultado;
+    }
+
+    private static Comparator<Producto> comparador(String campo) {
+        switch (campo) {
+            case "precio":
+                return Comparator.comparingDouble(Producto::getPrecio).thenComparingInt(Producto::getId);
+            case "nombre":
+                return Comparator.comparing((Producto p) -> normalizar(p.getNombre())).thenComparingInt(Producto::getId);
+            default:
+                return Comparator.comparingInt(Producto::getId);
+        }
+    }
+}
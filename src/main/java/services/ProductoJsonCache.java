@@ -0,0 +1,89 @@
+package services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import models.Producto;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * Caché del JSON ya serializado de cada producto.
+ * El JSON se genera una sola vez en cada escritura (dentro del cerrojo del ID) y las lecturas
+ * escriben los bytes directamente en la respuesta; los listados concatenan los fragmentos.
+ * Cada entrada guarda la versión del producto, así que nunca se sirve un JSON obsoleto:
+ * si la versión no coincide se serializa en el momento.
+ */
+class ProductoJsonCache {
+
+    private static final ObjectWriter escritor = new ObjectMapper().writerFor(Producto.class);
+
+    private final boolean activa;
+    private final Map<Integer, Entrada> entradas = new ConcurrentHashMap<>();
+
+    private static final class Entrada {
+        final long version;
+        final byte[] json;
+
+        Entrada(long version, byte[] json) {
+            this.version = version;
+            this.json = json;
+        }
+    }
+
+    ProductoJsonCache(boolean activa) {
+        this.activa = activa;
+    }
+
+    void actualizar(Producto p) {
+        if (activa) entradas.put(p.getId(), new Entrada(p.getVersion(), serializar(p)));
+    }
+
+    void eliminar(int id) {
+        if (activa) entradas.remove(id);
+    }
+
+    void limpiar() {
+        entradas.clear();
+    }
+
+    /**
+     * JSON del producto: el de la caché si corresponde a la misma versión, si no se serializa.
+     */
+    byte[] json(Producto p) {
+        if (activa) {
+            Entrada e = entradas.get(p.getId());
+            if (e != null && e.version == p.getVersion()) return e.json;
+        }
+        return serializar(p);
+    }
+
+    /**
+     * Escribe un array JSON concatenando los fragmentos de cada producto.
+     */
+    void escribirArray(Stream<Producto> productos, OutputStream salida) throws IOException {
+        salida.write('[');
+        Iterator<Producto> it = productos.iterator();
+        boolean primero = true;
+        while (it.hasNext()) {
+            if (!primero) salida.write(',');
+            salida.write(json(it.next()));
+            primero = false;
+        }
+        salida.write(']');
+    }
+
+    private static byte[] serializar(Producto p) {
+        try {
+            return escritor.writeValueAsBytes(p);
+        } catch (JsonProcessingException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
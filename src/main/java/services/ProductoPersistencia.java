@@ -0,0 +1,522 @@
+package services;
+
+import models.Producto;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Persistencia opcional del catálogo de productos.
+ * Cada escritura se añade a un registro de escritura anticipada (WAL) y un hilo
+ * único hace "group commit": agrupa todas las escrituras pendientes en un solo fsync.
+ * Una instantánea periódica acota el tamaño del WAL y, con él, el tiempo de recuperación.
+ *
+ * Ficheros en el directorio de datos:
+ *  - wal-N.log: segmentos del WAL, registros [longitud][crc32][operación, id, versión, datos]
+ *  - snapshot.dat: estado completo y primer segmento del WAL que hay que reproducir
+ *
+ * Un error de E/S en el WAL detiene la persistencia (fail-stop): las operaciones de ese lote
+ * y todas las posteriores fallan, y ProductoService deja de aceptar escrituras. Las del lote
+ * fallido ya estaban aplicadas en memoria, así que memoria y disco pueden diferir en ellas
+ * hasta reiniciar; al recuperar solo vuelve lo que llegó a ser durable.
+ *
+ * Al recuperar, un registro truncado o con CRC incorrecto solo se acepta como cola rota de
+ * la última escritura: en el último segmento y sin nada más que ceros detrás. El segmento se
+ * trunca ahí. En cualquier otro sitio, reproducir los segmentos posteriores daría un estado
+ * que nunca existió, así que el arranque falla.
+ */
+public class ProductoPersistencia implements AutoCloseable {
+
+    public static final byte CREAR = 1;
+    public static final byte ACTUALIZAR = 2;
+    public static final byte ELIMINAR = 3;
+
+    private static final int MAGIA_SNAPSHOT = 0x50524F44; // "PROD"
+    private static final String SNAPSHOT = "snapshot.dat";
+    // leerRegistro: registro truncado o con CRC incorrecto
+    private static final byte[] CORRUPTO = new byte[0];
+
+    private final Path directorio;
+    private final boolean commitGrupal;
+    private final BlockingQueue<Pendiente> cola = new LinkedBlockingQueue<>();
+    private final Thread hiloCommit;
+    private ScheduledExecutorService hiloSnapshot;
+
+    // Solo los modifica el hilo de commit
+    private FileChannel wal;
+    private long generacion;
+
+    // encolar toma la lectura y close la escritura: tras cerrar no entra nada en la cola
+    private final ReadWriteLock cierre = new ReentrantReadWriteLock();
+    private volatile boolean cerrado;
+    private volatile IOException fallo;
+    // Error de la última instantánea (null si fue bien); el WAL sigue siendo la fuente de verdad
+    private volatile RuntimeException falloSnapshot;
+
+    /**
+     * Operación pendiente de escribir en el WAL (o petición de rotación si registro es null).
+     */
+    private static final class Pendiente {
+        final byte[] registro;
+        final CompletableFuture<Long> hecho = new CompletableFuture<>();
+
+        Pendiente(byte[] registro) {
+            this.registro = registro;
+        }
+    }
+
+    /**
+     * Estado recuperado del disco al arrancar.
+     */
+    public static final class Recuperacion {
+        public final int siguienteId;
+        public final long ultimaVersion;
+        public final long registrosReproducidos;
+
+        Recuperacion(int siguienteId, long ultimaVersion, long registrosReproducidos) {
+            this.siguienteId = siguienteId;
+            this.ultimaVersion = ultimaVersion;
+            this.registrosReproducidos = registrosReproducidos;
+        }
+    }
+
+    /**
+     * @param directorio Directorio de datos (se crea si no existe).
+     * @param commitGrupal true para compartir un fsync entre escritores concurrentes,
+     *                     false para hacer un fsync por operación.
+     */
+    public ProductoPersistencia(Path directorio, boolean commitGrupal) {
+        this.directorio = directorio;
+        this.commitGrupal = commitGrupal;
+        this.hiloCommit = new Thread(this::bucleCommit, "productos-wal");
+        this.hiloCommit.setDaemon(true);
+    }
+
+    /**
+     * Carga la instantánea y reproduce el WAL sobre el almacén indicado.
+     * Después abre un segmento nuevo y arranca el hilo de commit.
+     */
+    public Recuperacion recuperar(ProductoAlmacen destino) {
+        try {
+            Files.createDirectories(directorio);
+            int siguienteId = 1;
+            long ultimaVersion = 0;
+            long primeraGeneracion = 0;
+
+            Path snapshot = directorio.resolve(SNAPSHOT);
+            if (Files.exists(snapshot)) {
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshot), 1 << 16))) {
+                    if (in.readInt() != MAGIA_SNAPSHOT) {
+                        throw new IOException("Instantánea corrupta: " + snapshot);
+                    }
+                    primeraGeneracion = in.readLong();
+                    siguienteId = in.readInt();
+                    ultimaVersion = in.readLong();
+                    int total = in.readInt();
+                    for (int i = 0; i < total; i++) {
+                        int id = in.readInt();
+                        long version = in.readLong();
+                        double precio = in.readDouble();
+                        Producto p = new Producto(id, leerTexto(in), precio);
+                        p.setVersion(version);
+                        destino.guardar(p);
+                        siguienteId = Math.max(siguienteId, id + 1);
+                        ultimaVersion = Math.max(ultimaVersion, version);
+                    }
+                }
+            }
+
+            long reproducidos = 0;
+            long ultimaGeneracion = primeraGeneracion - 1;
+            List<Long> generaciones = new ArrayList<>();
+            for (long gen : generacionesWal()) {
+                // Segmento ya incluido en la instantánea
+                if (gen < primeraGeneracion) Files.deleteIfExists(rutaWal(gen));
+                else generaciones.add(gen);
+            }
+            for (int g = 0; g < generaciones.size(); g++) {
+                long gen = generaciones.get(g);
+                long validos = 0;
+                boolean colaRota = false;
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(rutaWal(gen)), 1 << 16))) {
+                    byte[] registro;
+                    while ((registro = leerRegistro(in)) != null) {
+                        if (registro == CORRUPTO) {
+                            if (g < generaciones.size() - 1 || !soloCeros(in)) {
+                                throw new IOException("Registro corrupto en " + rutaWal(gen) + " (byte " + validos
+                                        + ") con escrituras posteriores; no se reproduce un estado parcial");
+                            }
+                            colaRota = true;
+                            break;
+                        }
+                        Producto aplicado = aplicar(registro, destino);
+                        siguienteId = Math.max(siguienteId, aplicado.getId() + 1);
+                        ultimaVersion = Math.max(ultimaVersion, aplicado.getVersion());
+                        reproducidos++;
+                        validos += 8 + registro.length;
+                    }
+                }
+                if (colaRota) {
+                    // Se descarta la cola para que el segmento no quede corrupto detrás de otros nuevos
+                    try (FileChannel canal = FileChannel.open(rutaWal(gen), StandardOpenOption.WRITE)) {
+                        canal.truncate(validos);
+                        canal.force(true);
+                    }
+                }
+                ultimaGeneracion = gen;
+            }
+
+            this.generacion = ultimaGeneracion + 1;
+            this.wal = abrirWal(generacion);
+            hiloCommit.start();
+            return new Recuperacion(siguienteId, ultimaVersion, reproducidos);
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo recuperar el catálogo de " + directorio, e);
+        }
+    }
+
+    /**
+     * Programa instantáneas periódicas del estado devuelto por el proveedor.
+     */
+    public void programarSnapshots(long intervaloSegundos, Supplier<Stream<Producto>> estado,
+                                   Supplier<Integer> siguienteId, Supplier<Long> version) {
+        hiloSnapshot = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "productos-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        hiloSnapshot.scheduleWithFixedDelay(() -> {
+            try {
+                snapshot(estado.get(), siguienteId.get(), version.get());
+                falloSnapshot = null;
+            } catch (RuntimeException e) {
+                // Se reintenta en el siguiente intervalo; un fallo del WAL ya queda en "fallo"
+                falloSnapshot = e;
+            }
+        }, intervaloSegundos, intervaloSegundos, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Encola una operación en el WAL. El futuro se completa cuando la operación es durable.
+     * Las llamadas deben hacerse en el mismo orden en que se aplican al mapa para cada ID.
+     */
+    public CompletableFuture<Long> registrar(byte tipo, Producto p) {
+        return encolar(codificar(tipo, p));
+    }
+
+    /**
+     * Escribe una instantánea consistente y descarta los segmentos del WAL que ya cubre.
+     * Primero rota el WAL: todo lo encolado antes de la rotación ya está aplicado al mapa,
+     * así que la instantánea lo incluye; lo posterior se reproduce de nuevo al recuperar,
+     * lo cual es idempotente porque cada registro guarda el estado completo del producto.
+     */
+    public void snapshot(Stream<Producto> estado, int siguienteId, long version) {
+        try {
+            long nuevaGeneracion = encolar(null).join();
+            Path tmp = directorio.resolve(SNAPSHOT + ".tmp");
+            List<Producto> copia = estado.collect(Collectors.toList());
+            try (FileChannel canal = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(canal), 1 << 16));
+                out.writeInt(MAGIA_SNAPSHOT);
+                out.writeLong(nuevaGeneracion);
+                out.writeInt(siguienteId);
+                out.writeLong(version);
+                out.writeInt(copia.size());
+                for (Producto p : copia) {
+                    out.writeInt(p.getId());
+                    out.writeLong(p.getVersion());
+                    out.writeDouble(p.getPrecio());
+                    escribirTexto(out, p.getNombre());
+                }
+                out.flush();
+                canal.force(true);
+            }
+            Files.move(tmp, directorio.resolve(SNAPSHOT), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            for (long gen : generacionesWal()) {
+                if (gen < nuevaGeneracion) Files.deleteIfExists(rutaWal(gen));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("No se pudo escribir la instantánea", e);
+        }
+    }
+
+    /**
+     * Comprueba que el WAL sigue admitiendo escrituras; ProductoService lo llama antes de
+     * modificar el catálogo para no aplicar en memoria algo que nunca será durable.
+     *
+     * @throws IllegalStateException si la persistencia está cerrada o detenida por un error de E/S.
+     */
+    public void comprobarEscritura() {
+        IOException error = fallo;
+        if (error != null) {
+            throw new IllegalStateException("El WAL falló y el catálogo está en solo lectura: " + error, error);
+        }
+        if (cerrado) throw new IllegalStateException("Persistencia cerrada");
+    }
+
+    /**
+     * Error de la última instantánea programada, o null si fue bien.
+     */
+    public RuntimeException ultimoFalloSnapshot() {
+        return falloSnapshot;
+    }
+
+    @Override
+    public void close() {
+        cierre.writeLock().lock();
+        try {
+            cerrado = true;
+        } finally {
+            cierre.writeLock().unlock();
+        }
+        if (hiloSnapshot != null) hiloSnapshot.shutdownNow();
+        try {
+            hiloCommit.join();
+            if (wal != null) wal.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // ==========================================
+    // HILO DE COMMIT
+    // ==========================================
+
+    private CompletableFuture<Long> encolar(byte[] registro) {
+        cierre.readLock().lock();
+        try {
+            comprobarEscritura();
+            Pendiente p = new Pendiente(registro);
+            cola.add(p);
+            return p.hecho;
+        } finally {
+            cierre.readLock().unlock();
+        }
+    }
+
+    /**
+     * Saca de la cola todo lo pendiente, lo escribe de una vez y hace un único fsync.
+     * En modo no grupal procesa las operaciones de una en una (un fsync por operación).
+     * Termina cuando, ya cerrado, la cola está vacía: después de cerrado nadie más encola.
+     */
+    private void bucleCommit() {
+        try {
+            procesarCola();
+        } finally {
+            // Red de seguridad: ningún escritor se queda esperando un futuro que nadie completará
+            List<Pendiente> restantes = new ArrayList<>();
+            cola.drainTo(restantes);
+            for (Pendiente p : restantes) p.hecho.completeExceptionally(new IllegalStateException("Persistencia cerrada"));
+        }
+    }
+
+    private void procesarCola() {
+        List<Pendiente> lote = new ArrayList<>();
+        while (true) {
+            // No se interrumpe el hilo: una interrupción durante la E/S cerraría el FileChannel
+            Pendiente primero;
+            try {
+                primero = cola.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                primero = cola.poll();
+            }
+            if (primero == null) {
+                // Lo encolado entre el poll y el cierre se procesa en la siguiente vuelta
+                if (cerrado && cola.isEmpty()) return;
+                continue;
+            }
+            lote.add(primero);
+            if (commitGrupal) cola.drainTo(lote);
+
+            if (fallo != null) {
+                for (Pendiente p : lote) p.hecho.completeExceptionally(new UncheckedIOException(fallo));
+                lote.clear();
+                continue;
+            }
+            try {
+                int i = 0;
+                while (i < lote.size()) {
+                    // Escribe el tramo de registros hasta la siguiente rotación (o el final del lote)
+                    int fin = i;
+                    int bytes = 0;
+                    while (fin < lote.size() && lote.get(fin).registro != null) {
+                        bytes += lote.get(fin).registro.length;
+                        fin++;
+                    }
+                    if (fin > i) {
+                        ByteBuffer buffer = ByteBuffer.allocate(bytes);
+                        for (int j = i; j < fin; j++) buffer.put(lote.get(j).registro);
+                        buffer.flip();
+                        while (buffer.hasRemaining()) wal.write(buffer);
+                        wal.force(false);
+                        for (int j = i; j < fin; j++) lote.get(j).hecho.complete(generacion);
+                    }
+                    if (fin < lote.size()) {
+                        wal.close();
+                        generacion++;
+                        wal = abrirWal(generacion);
+                        lote.get(fin).hecho.complete(generacion);
+                        fin++;
+                    }
+                    i = fin;
+                }
+            } catch (IOException e) {
+                // Fail-stop: nada posterior puede escribirse detrás de un registro perdido
+                fallo = e;
+                for (Pendiente p : lote) {
+                    if (!p.hecho.isDone()) p.hecho.completeExceptionally(new UncheckedIOException(e));
+                }
+            }
+            lote.clear();
+        }
+    }
+
+    // ==========================================
+    // FORMATO
+    // ==========================================
+
+    private static byte[] codificar(byte tipo, Producto p) {
+        try {
+            ByteArrayOutputStream carga = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(carga);
+            out.writeByte(tipo);
+            out.writeInt(p.getId());
+            out.writeLong(p.getVersion());
+            if (tipo != ELIMINAR) {
+                out.writeDouble(p.getPrecio());
+                escribirTexto(out, p.getNombre());
+            }
+            byte[] datos = carga.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(datos);
+            ByteBuffer registro = ByteBuffer.allocate(8 + datos.length);
+            registro.putInt(datos.length).putInt((int) crc.getValue()).put(datos);
+            return registro.array();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Lee el siguiente registro: null si el segmento termina justo antes, CORRUPTO si está
+     * truncado o su longitud o su CRC no cuadran.
+     */
+    private static byte[] leerRegistro(DataInputStream in) throws IOException {
+        int primero = in.read();
+        if (primero == -1) return null;
+        try {
+            int longitud = (primero << 24) | (in.readUnsignedByte() << 16) | (in.readUnsignedByte() << 8) | in.readUnsignedByte();
+            int crcEsperado = in.readInt();
+            if (longitud <= 0 || longitud > (1 << 24)) return CORRUPTO;
+            byte[] datos = new byte[longitud];
+            in.readFully(datos);
+            CRC32 crc = new CRC32();
+            crc.update(datos);
+            return (int) crc.getValue() == crcEsperado ? datos : CORRUPTO;
+        } catch (EOFException e) {
+            return CORRUPTO;
+        }
+    }
+
+    /** true si lo que queda del segmento son ceros (o nada): la cola de una escritura interrumpida. */
+    private static boolean soloCeros(DataInputStream in) throws IOException {
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b != 0) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Aplica un registro del WAL y devuelve el producto decodificado
+     * (en un borrado, solo con ID y versión).
+     */
+    private static Producto aplicar(byte[] registro, ProductoAlmacen destino) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(registro));
+        byte tipo = in.readByte();
+        Producto p = new Producto();
+        p.setId(in.readInt());
+        p.setVersion(in.readLong());
+        if (tipo == ELIMINAR) {
+            destino.eliminar(p.getId());
+        } else {
+            p.setPrecio(in.readDouble());
+            p.setNombre(leerTexto(in));
+            destino.guardar(p);
+        }
+        return p;
+    }
+
+    private static void escribirTexto(DataOutputStream out, String texto) throws IOException {
+        if (texto == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = texto.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String leerTexto(DataInputStream in) throws IOException {
+        int longitud = in.readInt();
+        if (longitud < 0) return null;
+        byte[] bytes = new byte[longitud];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ==========================================
+    // FICHEROS
+    // ==========================================
+
+    private Path rutaWal(long gen) {
+        return directorio.resolve("wal-" + gen + ".log");
+    }
+
+    private FileChannel abrirWal(long gen) throws IOException {
+        return FileChannel.open(rutaWal(gen), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private List<Long> generacionesWal() throws IOException {
+        try (Stream<Path> ficheros = Files.list(directorio)) {
+            return ficheros
+                .map(f -> f.getFileName().toString())
+                .filter(n -> n.startsWith("wal-") && n.endsWith(".log"))
+                .map(n -> Long.parseLong(n.substring(4, n.length() - 4)))
+                .sorted()
+                .collect(Collectors.toList());
+        }
+    }
+}
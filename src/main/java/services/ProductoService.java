@@ -1,11 +1,18 @@
 package services;
 
 import models.Producto;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.Map;
 import java.util.ArrayList;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * Servicio para la lógica de negocio de productos.
@@ -13,17 +20,53 @@ import java.util.concurrent.atomic.AtomicInteger;
  */
 public class ProductoService {
 
-    // ConcurrentHashMap asegura que el mapa sea accesible por múltiples hilos sin errores
-    private static final Map<Integer, Producto> productos = new ConcurrentHashMap<>();
+    // Almacén seguro para hilos que mantiene los IDs ordenados, lo que permite paginar
+    // por cursor sin copiar todo el catálogo. -Dproductos.almacen=compacto usa arrays
+    // primitivos en lugar de un ConcurrentSkipListMap (sin índices secundarios).
+    private static final boolean compacto = "compacto".equals(System.getProperty("productos.almacen"));
+    private static final ProductoAlmacen productos = compacto ? new ProductoAlmacenCompacto() : new ProductoAlmacenMapa();
 
     // AtomicInteger para manejar IDs de forma segura y evitar duplicados
     private static final AtomicInteger siguienteId = new AtomicInteger(1);
 
+    // Versión global del catálogo: cada escritura toma el siguiente valor, que pasa a ser
+    // la versión del producto escrito. También identifica el estado de los listados (ETag).
+    private static final AtomicLong version = new AtomicLong();
+
+    // Se incrementa después de aplicar cada escritura al almacén: un listado que empieza a
+    // generarse tras leer este valor ya contiene todas las escrituras que cuenta
+    private static final AtomicLong versionPublicada = new AtomicLong();
+
+    // Cerrojos por franjas de ID: ordenan la aplicación al mapa y el registro en el WAL
+    // de las escrituras sobre un mismo producto sin serializar todo el servicio
+    private static final Object[] cerrojos = new Object[64];
+
+    // Índices secundarios por precio y por nombre
+    private static final ProductoIndices indices = new ProductoIndices(!compacto);
+
+    // JSON pre-serializado por producto (desactivado con el almacén compacto o con -Dproductos.cacheJson=false)
+    private static final ProductoJsonCache cacheJson = new ProductoJsonCache(
+            !compacto && Boolean.parseBoolean(System.getProperty("productos.cacheJson", "true")));
+
+    // Persistencia opcional (null = solo memoria)
+    private static volatile ProductoPersistencia persistencia;
+
+    static {
+        for (int i = 0; i < cerrojos.length; i++) cerrojos[i] = new Object();
+
+        // -Dproductos.datos=/ruta activa la persistencia al cargar la clase
+        String directorio = System.getProperty("productos.datos");
+        if (directorio != null) {
+            long intervalo = Long.getLong("productos.snapshot.segundos", 300);
+            habilitarPersistencia(Paths.get(directorio), intervalo, true);
+        }
+    }
+
     /**
      * Inicializa el servicio con datos de ejemplo si la lista está vacía.
      */
     public ProductoService() {
-        if (productos.isEmpty()) {
+        if (productos.vacio()) {
             crearEjemplo(new Producto(0, "Portatil", 1000.0));
             crearEjemplo(new Producto(0, "Raton", 20.0));
             crearEjemplo(new Producto(0, "Teclado", 50.0));
@@ -34,23 +77,145 @@ public class ProductoService {
      * Helper para cargar datos iniciales sin saltar IDs.
      */
     private void crearEjemplo(Producto p) {
-        int id = siguienteId.getAndIncrement();
-        p.setId(id);
-        productos.put(id, p);
+        crear(p);
+    }
+
+    /**
+     * Activa la persistencia: recupera el catálogo del disco (instantánea + WAL)
+     * y a partir de ahí registra cada escritura antes de confirmarla.
+     *
+     * @param directorio Directorio de datos.
+     * @param intervaloSnapshotSegundos Cada cuánto se escribe una instantánea completa.
+     * @param commitGrupal true para agrupar escrituras concurrentes en un solo fsync.
+     */
+    public static synchronized ProductoPersistencia.Recuperacion habilitarPersistencia(Path directorio, long intervaloSnapshotSegundos, boolean commitGrupal) {
+        if (persistencia != null) {
+            throw new IllegalStateException("La persistencia ya está activada");
+        }
+        ProductoPersistencia p = new ProductoPersistencia(directorio, commitGrupal);
+        productos.limpiar();
+        ProductoPersistencia.Recuperacion recuperacion = p.recuperar(productos);
+        siguienteId.set(recuperacion.siguienteId);
+        version.set(recuperacion.ultimaVersion);
+        versionPublicada.set(recuperacion.ultimaVersion);
+        indices.limpiar();
+        cacheJson.limpiar();
+        productos.recorrer(Integer.MIN_VALUE).forEach(producto -> {
+            indices.indexar(producto);
+            cacheJson.actualizar(producto);
+        });
+        p.programarSnapshots(intervaloSnapshotSegundos, () -> productos.recorrer(Integer.MIN_VALUE), siguienteId::get, version::get);
+        persistencia = p;
+        return recuperacion;
+    }
+
+    /**
+     * Desactiva la persistencia y cierra los ficheros (las escrituras pendientes se vacían antes).
+     */
+    public static synchronized void deshabilitarPersistencia() {
+        if (persistencia != null) {
+            persistencia.close();
+            persistencia = null;
+        }
+    }
+
+    private static Object cerrojo(int id) {
+        return cerrojos[id & (cerrojos.length - 1)];
+    }
+
+    /**
+     * Registra la operación en el WAL si la persistencia está activa.
+     * Debe llamarse dentro del cerrojo del ID, justo después de modificar el mapa.
+     */
+    private static CompletableFuture<Long> registrar(byte tipo, Producto p) {
+        ProductoPersistencia actual = persistencia;
+        return actual != null ? actual.registrar(tipo, p) : null;
+    }
+
+    /**
+     * Con persistencia activa, rechaza la escritura antes de tocar el mapa si el WAL ya no
+     * la aceptaría (cerrado o detenido por un error de E/S): el catálogo queda en solo lectura.
+     *
+     * @throws IllegalStateException si el catálogo no admite escrituras.
+     */
+    public static void comprobarEscritura() {
+        ProductoPersistencia actual = persistencia;
+        if (actual != null) actual.comprobarEscritura();
+    }
+
+    /**
+     * Espera (fuera del cerrojo) a que la operación sea durable.
+     */
+    private static void esperarDurabilidad(CompletableFuture<Long> durable) {
+        if (durable != null) durable.join();
+    }
+
+    /**
+     * Versión actual del catálogo completo; cambia con cualquier escritura.
+     */
+    public long versionCatalogo() {
+        return versionPublicada.get();
     }
 
     /**
      * Obtener todos los productos.
      */
     public List<Producto> obtenerTodos() {
-        return new ArrayList<>(productos.values());
+        return productos.recorrer(Integer.MIN_VALUE).collect(Collectors.toList());
+    }
+
+    /**
+     * Obtener una página de productos ordenados por ID.
+     * Solo recorre los elementos de la página, no todo el mapa.
+     *
+     * @param despuesDe Cursor: se devuelven los productos con ID estrictamente mayor.
+     * @param limite Número máximo de productos a devolver.
+     */
+    public List<Producto> obtenerPagina(int despuesDe, int limite) {
+        return productos.recorrer(despuesDe).limit(limite).collect(Collectors.toList());
+    }
+
+    /**
+     * Recorre todos los productos en orden de ID sin materializar una lista.
+     * La vista es débilmente consistente: refleja escrituras concurrentes sin bloquearlas.
+     */
+    public Stream<Producto> streamTodos() {
+        return productos.recorrer(Integer.MIN_VALUE);
+    }
+
+    /**
+     * Buscar productos por rango de precio y/o prefijo de nombre usando los índices secundarios.
+     * Cuesta O(log n + k): solo se recorren los productos que cumplen el filtro.
+     *
+     * @param precioMin Precio mínimo inclusivo o null.
+     * @param precioMax Precio máximo inclusivo o null.
+     * @param nombrePrefix Prefijo del nombre, sin distinguir mayúsculas, o null.
+     * @param orden id, precio o nombre ("-" delante para descendente) o null.
+     * @throws IllegalArgumentException si el orden no es válido.
+     */
+    public Stream<Producto> buscar(Double precioMin, Double precioMax, String nombrePrefix, String orden) {
+        return indices.buscar(productos, precioMin, precioMax, nombrePrefix, orden);
+    }
+
+    /**
+     * JSON del producto, servido desde la caché si está al día.
+     */
+    public byte[] json(Producto producto) {
+        return cacheJson.json(producto);
+    }
+
+    /**
+     * Escribe los productos como array JSON concatenando sus fragmentos pre-serializados.
+     */
+    public void escribirArrayJson(Stream<Producto> productos, OutputStream salida) throws IOException {
+        cacheJson.escribirArray(productos, salida);
     }
 
     /**
      * Obtener un producto por su ID.
      */
     public Producto obtenerPorId(int id) {
-        return productos.get(id);
+        return productos.obtener(id);
     }
 
     /**
@@ -58,27 +223,124 @@ public class ProductoService {
      * El ID se genera automáticamente.
      */
     public Producto crear(Producto producto) {
+        comprobarEscritura();
         int id = siguienteId.getAndIncrement();
         producto.setId(id);
-        productos.put(id, producto);
+        CompletableFuture<Long> durable;
+        synchronized (cerrojo(id)) {
+            producto.setVersion(version.incrementAndGet());
+            productos.guardar(producto);
+            indices.indexar(producto);
+            cacheJson.actualizar(producto);
+            versionPublicada.incrementAndGet();
+            durable = registrar(ProductoPersistencia.CREAR, producto);
+        }
+        esperarDurabilidad(durable);
         return producto;
     }
 
+    /**
+     * Crear varios productos de una vez.
+     * Reserva el bloque de IDs con una sola operación atómica y, con persistencia activa,
+     * espera al final a que todo el lote sea durable (un group commit para todo el lote).
+     */
+    public List<Producto> crearLote(List<Producto> nuevos) {
+        comprobarEscritura();
+        int primerId = siguienteId.getAndAdd(nuevos.size());
+        List<CompletableFuture<Long>> pendientes = new ArrayList<>();
+        for (int i = 0; i < nuevos.size(); i++) {
+            Producto producto = nuevos.get(i);
+            int id = primerId + i;
+            producto.setId(id);
+            synchronized (cerrojo(id)) {
+                producto.setVersion(version.incrementAndGet());
+                productos.guardar(producto);
+                indices.indexar(producto);
+                cacheJson.actualizar(producto);
+                versionPublicada.incrementAndGet();
+                CompletableFuture<Long> durable = registrar(ProductoPersistencia.CREAR, producto);
+                if (durable != null) pendientes.add(durable);
+            }
+        }
+        pendientes.forEach(ProductoService::esperarDurabilidad);
+        return new ArrayList<>(nuevos);
+    }
+
     /**
      * Actualizar un producto existente.
      */
     public Producto actualizar(Producto producto) {
-        if (productos.containsKey(producto.getId())) {
-            productos.put(producto.getId(), producto);
-            return producto;
+        return actualizar(producto, null);
+    }
+
+    /**
+     * Actualizar un producto existente si su versión sigue siendo una de las esperadas
+     * (compare-and-set atómico respecto a otras escrituras sobre el mismo ID).
+     *
+     * @param versionesEsperadas Versiones que acepta el cliente (If-Match) o null para no comprobarla.
+     * @return El producto actualizado o null si no existe.
+     * @throws ConflictoVersionException si la versión actual no está entre ellas.
+     */
+    public Producto actualizar(Producto producto, Set<Long> versionesEsperadas) {
+        CompletableFuture<Long> durable;
+        synchronized (cerrojo(producto.getId())) {
+            Producto actual = productos.obtener(producto.getId());
+            if (actual == null) {
+                return null;
+            }
+            if (versionesEsperadas != null && !versionesEsperadas.contains(actual.getVersion())) {
+                throw new ConflictoVersionException(producto.getId(), actual.getVersion());
+            }
+            comprobarEscritura();
+            producto.setVersion(version.incrementAndGet());
+            Producto anterior = productos.guardar(producto);
+            indices.desindexar(anterior);
+            indices.indexar(producto);
+            cacheJson.actualizar(producto);
+            versionPublicada.incrementAndGet();
+            durable = registrar(ProductoPersistencia.ACTUALIZAR, producto);
         }
-        return null;
+        esperarDurabilidad(durable);
+        return producto;
     }
 
     /**
      * Eliminar un producto.
      */
     public boolean eliminar(int id) {
-        return productos.remove(id) != null;
+        return eliminar(id, null);
+    }
+
+    /**
+     * Eliminar un producto si su versión sigue siendo una de las esperadas.
+     *
+     * @param versionesEsperadas Versiones que acepta el cliente (If-Match) o null para no comprobarla.
+     * @return false si no existe.
+     * @throws ConflictoVersionException si la versión actual no está entre ellas.
+     */
+    public boolean eliminar(int id, Set<Long> versionesEsperadas) {
+        CompletableFuture<Long> durable;
+        synchronized (cerrojo(id)) {
+            if (versionesEsperadas != null) {
+                Producto actual = productos.obtener(id);
+                if (actual != null && !versionesEsperadas.contains(actual.getVersion())) {
+                    throw new ConflictoVersionException(id, actual.getVersion());
+                }
+            }
+            comprobarEscritura();
+            Producto eliminado = productos.eliminar(id);
+            if (eliminado == null) {
+                return false;
+            }
+            indices.desindexar(eliminado);
+            cacheJson.eliminar(id);
+            // El borrado también consume una versión para que cambie el ETag de los listados
+            Producto marca = new Producto(id, null, 0);
+            marca.setVersion(version.incrementAndGet());
+            versionPublicada.incrementAndGet();
+            durable = registrar(ProductoPersistencia.ELIMINAR, marca);
+        }
+        esperarDurabilidad(durable);
+        return true;
     }
 }
\ No newline at end of file